@@ -0,0 +1,114 @@
+/**
+ * File: Autopilot.java
+
+ * A paddle controller which plays the game by itself, for demo machines and soak tests.
+ * It does not simulate the ball ahead tick by tick. Where the ball will reach the height of the top
+ * of the paddle is worked out in closed form from the location and velocity of the ball: the path is
+ * unfolded across the side walls into a straight line, and folded back onto the board, so any number
+ * of bounces off the side walls costs the same.
+ * The prediction is only solved again when the velocity of the ball changes, i.e. after a collision.
+ * A bounce off a side wall picks a new random speed, so a prediction across a wall bounce is only a guess
+ * until the bounce happens, and it is solved again then. The paddle moves towards the latest prediction.
+
+ *	NOTES:
+ *	The bricks are not taken into account, a brick hit changes the velocity and the prediction is solved again.
+ *	Each decision is a few arithmetic operations, nothing is allocated, so an autopilot can drive each
+ *	of hundreds of games running together.
+ */
+
+public class Autopilot {
+
+/**	Creates an autopilot
+ * @param paddleSpeed The most pixels the paddle is moved in a tick, Double.POSITIVE_INFINITY to move it straight there
+ */
+	public Autopilot(double paddleSpeed) {
+		if (!(paddleSpeed > 0)) {
+			throw new IllegalArgumentException("Paddle speed must be positive");
+		}
+		this.paddleSpeed = paddleSpeed;
+	}
+
+/**	Returns where to move the paddle to in the next step of the simulation
+ * @param simulation The game being played
+ * @return the paddle location to give to the step
+ */
+	public double getPaddleTargetX(BreakoutSimulation simulation) {
+		BoardConfig config = simulation.getConfig();
+		double vx = simulation.getBallVX(), vy = simulation.getBallVY();
+		if ((vx != solvedVX) || (vy != solvedVY)) {
+			solvedVX = vx;
+			solvedVY = vy;
+			interceptX = predictInterceptX(config, simulation.getBallX(), simulation.getBallY(), vx, vy);
+			predictionsSolved++;
+		}
+		/* The centre of the paddle under the centre of the ball, without running into a wall, which stops the paddle */
+		double target = interceptX + (config.getBallWidth() - config.getPaddleWidth()) / 2.0;
+		target = Math.max(0, Math.min(config.getWidth() - config.getPaddleWidth(), target));
+		double paddleX = simulation.getPaddleX();
+		return paddleX + Math.max(-paddleSpeed, Math.min(paddleSpeed, target - paddleX));
+	}
+
+/**	Predicts the x location of the ball on the normal board, see predictInterceptX(BoardConfig, ...) */
+	public static double predictInterceptX(double x, double y, double vx, double vy) {
+		return predictInterceptX(BoardConfig.DEFAULT, x, y, vx, vy);
+	}
+
+/**	Predicts the x location of the ball when it comes down to the top of the paddle, bouncing off the
+ * 	side walls and (if it is moving up) the upper wall, at the speed it has now.
+ * 	The ball moves in a straight line through mirror images of the board, its location across the
+ * 	walls is a triangle wave of the unfolded location, with a period of twice the width it can move in.
+ * @param config The board
+ * @param x @param y The top left corner of the ball
+ * @param vx @param vy The velocity of the ball
+ * @return the predicted x location of the top left corner of the ball
+ */
+	public static double predictInterceptX(BoardConfig config, double x, double y, double vx, double vy) {
+		/* The height the top left corner of the ball is at when the ball reaches the top of the paddle,
+		 * and the range of its x location between the side walls */
+		double interceptY = config.getPaddleY() - config.getBallWidth();
+		double ballXRange = config.getWidth() - config.getBallWidth();
+		double distanceY;
+		if (vy > 0) {
+			distanceY = interceptY - y;
+			if (distanceY < 0) {
+				/* Already past the paddle */
+				return x;
+			}
+		}
+		else if (vy < 0) {
+			/* Up to the upper wall and back down */
+			distanceY = y + interceptY;
+		}
+		else {
+			return x;
+		}
+		double unfoldedX = x + vx * (distanceY / Math.abs(vy));
+		double period = 2 * ballXRange;
+		double folded = unfoldedX % period;
+		if (folded < 0) {
+			folded += period;
+		}
+		return (folded > ballXRange) ? period - folded : folded;
+	}
+
+/**	@return the number of times the prediction was solved, once per change in the velocity of the ball */
+	public long getPredictionsSolved() {
+		return predictionsSolved;
+	}
+
+
+/**
+ * 	INSTANCE VARIABLES
+ */
+
+/**	The most pixels the paddle is moved in a tick */
+	private final double paddleSpeed;
+
+/**	The velocity of the ball the prediction was solved for, and the prediction */
+	private double solvedVX = Double.NaN, solvedVY = Double.NaN;
+	private double interceptX;
+
+/**	The number of times the prediction was solved */
+	private long predictionsSolved;
+
+}
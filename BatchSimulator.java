@@ -0,0 +1,252 @@
+/**
+ * File: BatchSimulator.java
+
+ * Runs large numbers of complete games of breakout, with no display, to collect statistics 
+ * for balancing the game: the number of turns, how often all the bricks are cleared and how 
+ * long the rallies are, for a given range of the random x velocities of the ball.
+ 
+ * The games are split over the cores with a fork join pool. Each game has its own simulation,
+ * seeded with the base seed plus the number of the game, so a batch gives the same results
+ * however many threads it is run with.
+ * Every task counts into its own local stats and adds them to the shared totals once, when it is done,
+ * the totals are LongAdders so that the tasks finishing at the same time do not contend.
+ 
+ * Run with:  java -cp .:acm.jar BatchSimulator [games] [lower x velocity] [upper x velocity] [threads]
+ */
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class BatchSimulator {
+
+/**	Rallies are counted in power of two buckets, bucket i has the rallies of length 2^(i-1) to 2^i - 1,
+ * 	bucket 0 is the turns where the ball never bounced off the paddle. The last bucket has everything longer.
+ */
+	public static final int RALLY_BUCKETS = 16;
+
+/**	A turn is stopped after these many ticks, in case the ball is stuck bouncing between the same objects */
+	private static final int MAX_TICKS_PER_TURN = 1000000;
+
+/**	A task plays at most these many games, larger ranges of games are split in two */
+	private static final int GAMES_PER_TASK = 64;
+
+/**	The default number of pixels the paddle of the simulated player can move in a tick */
+	private static final double DEFAULT_PADDLE_SPEED = 4.0;
+
+/**	Creates a batch simulator
+ * @param xVelocityLower @param xVelocityUpper The range of the random x velocities of the ball
+ * @param paddleSpeed The number of pixels the simulated player can move the paddle in a tick
+ */
+	public BatchSimulator(double xVelocityLower, double xVelocityUpper, double paddleSpeed) {
+		this.xVelocityLower = xVelocityLower;
+		this.xVelocityUpper = xVelocityUpper;
+		this.paddleSpeed = paddleSpeed;
+	}
+
+/**	Plays a batch of games
+ * @param baseSeed Game i is seeded with baseSeed + i
+ * @param games The number of games to play
+ * @param parallelism The number of threads to play them on
+ * @return The statistics of all the games
+ */
+	public Result run(long baseSeed, int games, int parallelism) {
+		Totals totals = new Totals();
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		long start = System.nanoTime();
+		try {
+			pool.invoke(new GameRange(totals, baseSeed, 0, games));
+		}
+		finally {
+			pool.shutdown();
+		}
+		return new Result(totals, System.nanoTime() - start);
+	}
+
+/**	Plays a single game, with a simulated player who moves the paddle towards the ball 
+ * 	at no more than paddleSpeed pixels a tick.
+ * @param seed The seed of the game
+ * @param stats The stats the game is counted into
+ */
+	private void playGame(long seed, LocalStats stats) {
+		BreakoutSimulation simulation = new BreakoutSimulation(seed);
+		simulation.setXVelocityRange(xVelocityLower, xVelocityUpper);
+		simulation.newGame();
+		while (!simulation.isGameOver()) {
+			simulation.serve();
+			int rally = 0;
+			int ticks = 0;
+			while (true) {
+				int events = simulation.step(getPaddleTargetX(simulation));
+				ticks++;
+				if ((events & BreakoutSimulation.EVENT_PADDLE) != 0) {
+					rally++;
+				}
+				if ((events & BreakoutSimulation.EVENT_TURN_OVER) != 0) {
+					break;
+				}
+				if (ticks >= MAX_TICKS_PER_TURN) {
+					stats.timedOutTurns++;
+					break;
+				}
+			}
+			int bricksLeft = simulation.getNumBricksRemaining();
+			stats.turns++;
+			stats.ticks += ticks;
+			stats.bricksCleared += BreakoutSimulation.NBRICKS - bricksLeft;
+			if (bricksLeft == 0) {
+				stats.clearedTurns++;
+			}
+			stats.rallies[rallyBucket(rally)]++;
+			simulation.endTurn();
+		}
+		stats.games++;
+	}
+
+/**	The simulated player moves the centre of the paddle towards the centre of the ball
+ * @return the location to move the paddle to in the next tick
+ */
+	private double getPaddleTargetX(BreakoutSimulation simulation) {
+		double ballCentre = simulation.getBallX() + BreakoutSimulation.BALL_WIDTH / 2.0;
+		double paddleCentre = simulation.getPaddleX() + BreakoutSimulation.PADDLE_WIDTH / 2.0;
+		double distance = Math.max(-paddleSpeed, Math.min(paddleSpeed, ballCentre - paddleCentre));
+		return simulation.getPaddleX() + distance;
+	}
+
+/**	@return the histogram bucket of a rally length */
+	private static int rallyBucket(int rally) {
+		return Math.min(RALLY_BUCKETS - 1, 32 - Integer.numberOfLeadingZeros(rally));
+	}
+
+/**	A range of games, which is split in half until it is small enough to be played by one task */
+	private class GameRange extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		GameRange(Totals totals, long baseSeed, int from, int to) {
+			this.totals = totals;
+			this.baseSeed = baseSeed;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from > GAMES_PER_TASK) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new GameRange(totals, baseSeed, from, middle), new GameRange(totals, baseSeed, middle, to));
+				return;
+			}
+			LocalStats stats = new LocalStats();
+			for (int i = from; i < to; i++) {
+				playGame(baseSeed + i, stats);
+			}
+			totals.add(stats);
+		}
+
+		private final Totals totals;
+		private final long baseSeed;
+		private final int from, to;
+	}
+
+/**	Counts of the games played by a single task, only used by that task */
+	private static class LocalStats {
+		long games, turns, clearedTurns, bricksCleared, ticks, timedOutTurns;
+		final long[] rallies = new long[RALLY_BUCKETS];
+	}
+
+/**	The counts of all the games of a batch, added to by the tasks as they finish */
+	private static class Totals {
+
+		void add(LocalStats stats) {
+			games.add(stats.games);
+			turns.add(stats.turns);
+			clearedTurns.add(stats.clearedTurns);
+			bricksCleared.add(stats.bricksCleared);
+			ticks.add(stats.ticks);
+			timedOutTurns.add(stats.timedOutTurns);
+			for (int i=0; i < RALLY_BUCKETS; i++) {
+				if (stats.rallies[i] != 0) {
+					rallies.addAndGet(i, stats.rallies[i]);
+				}
+			}
+		}
+
+		final LongAdder games = new LongAdder(), turns = new LongAdder(), clearedTurns = new LongAdder(),
+				bricksCleared = new LongAdder(), ticks = new LongAdder(), timedOutTurns = new LongAdder();
+		final AtomicLongArray rallies = new AtomicLongArray(RALLY_BUCKETS);
+	}
+
+/**	The statistics of a batch of games */
+	public static class Result {
+
+		Result(Totals totals, long elapsedNanos) {
+			games = totals.games.sum();
+			turns = totals.turns.sum();
+			clearedTurns = totals.clearedTurns.sum();
+			bricksCleared = totals.bricksCleared.sum();
+			ticks = totals.ticks.sum();
+			timedOutTurns = totals.timedOutTurns.sum();
+			rallies = new long[RALLY_BUCKETS];
+			for (int i=0; i < RALLY_BUCKETS; i++) {
+				rallies[i] = totals.rallies.get(i);
+			}
+			this.elapsedNanos = elapsedNanos;
+		}
+
+/**	@return the fraction of the turns in which all the bricks were cleared */
+		public double getClearRate() {
+			return (turns == 0) ? 0 : (double) clearedTurns / turns;
+		}
+
+/**	@return the number of ticks simulated each second */
+		public double getTicksPerSecond() {
+			return ticks / (elapsedNanos / 1e9);
+		}
+
+		public String toString() {
+			StringBuilder builder = new StringBuilder();
+			builder.append(String.format("games=%d turns=%d cleared=%.2f%% bricks/turn=%.1f ticks/turn=%.0f timed out=%d%n",
+					games, turns, 100 * getClearRate(), (double) bricksCleared / Math.max(1, turns),
+					(double) ticks / Math.max(1, turns), timedOutTurns));
+			builder.append("rally lengths:");
+			for (int i=0; i < RALLY_BUCKETS; i++) {
+				if (rallies[i] != 0) {
+					int low = (i == 0) ? 0 : 1 << (i - 1);
+					builder.append(String.format(" [%d%s]=%d", low, (i == RALLY_BUCKETS - 1) ? "+" : "-" + ((1 << i) - 1), rallies[i]));
+				}
+			}
+			builder.append(String.format("%n%.1f ms, %.1f million ticks/s", elapsedNanos / 1e6, getTicksPerSecond() / 1e6));
+			return builder.toString();
+		}
+
+		public final long games, turns, clearedTurns, bricksCleared, ticks, timedOutTurns;
+		public final long[] rallies;
+		public final long elapsedNanos;
+	}
+
+	public static void main(String[] args) {
+		int games = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+		double lower = (args.length > 1) ? Double.parseDouble(args[1]) : BreakoutSimulation.BALL_X_LOWER_VELOCITY;
+		double upper = (args.length > 2) ? Double.parseDouble(args[2]) : BreakoutSimulation.BALL_X_UPPER_VELOCITY;
+		int threads = (args.length > 3) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		BatchSimulator simulator = new BatchSimulator(lower, upper, DEFAULT_PADDLE_SPEED);
+		/* Showing how the throughput scales, from one thread up to all of them */
+		for (int parallelism = 1; parallelism <= threads; parallelism *= 2) {
+			System.out.println("threads=" + parallelism);
+			System.out.println(simulator.run(0, games, parallelism));
+		}
+	}
+
+	
+/**
+ * 	INSTANCE VARIABLES
+ */
+	
+/**	The range of the random x velocities of the ball */
+	private final double xVelocityLower, xVelocityUpper;
+
+/**	The number of pixels the simulated player can move the paddle in a tick */
+	private final double paddleSpeed;
+
+}
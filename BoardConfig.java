@@ -0,0 +1,254 @@
+/**
+ * File: BoardConfig.java
+
+ * The geometry of a breakout board: the size of the board, the rows of bricks, the paddle and the ball.
+ * These used to be constants of the game, now a simulation is created with a BoardConfig, so the board
+ * can be changed when the game is started, e.g. a bigger board, more rows of bricks, or a board of a
+ * million bricks to see how the game copes with it.
+ * A config is checked when it is created, everything has to be positive, the bricks have to fit across
+ * the board, and there has to be room for the ball between the bricks and the paddle, otherwise an
+ * IllegalArgumentException says what is wrong. Once created it can not be changed.
+ * The width of a brick is not given, it is worked out from the width of the board, the number of bricks in
+ * a row and the separation, the same way as before.
+
+ *	NOTES:
+ *	DEFAULT is the board the game has always had, BreakoutSimulation keeps its constants for it.
+ *	fromSystemProperties starts from DEFAULT and changes whatever is set in the breakout.board.* properties,
+ *	e.g. -Dbreakout.board.bricksPerRow=20 -Dbreakout.board.width=800
+ *	stress makes a board big enough for a given number of tiny bricks, for measuring large boards.
+ *	The paddle is placed at height - paddleYOffset - paddleWidth from the top, the width of the paddle
+ *	and not its height, which is how the game has always placed it.
+ */
+
+public class BoardConfig {
+
+/**	The board the game has always been played on */
+	public static final BoardConfig DEFAULT = new BoardConfig(BreakoutSimulation.WIDTH, BreakoutSimulation.HEIGHT,
+			BreakoutSimulation.NBRICKS_PER_ROW, BreakoutSimulation.NBRICK_ROWS, BreakoutSimulation.BRICK_SEP,
+			BreakoutSimulation.BRICK_HEIGHT, BreakoutSimulation.BRICK_Y_OFFSET, BreakoutSimulation.PADDLE_WIDTH,
+			BreakoutSimulation.PADDLE_HEIGHT, BreakoutSimulation.PADDLE_Y_OFFSET, BreakoutSimulation.BALL_RADIUS);
+
+/**	The size of a brick and the separation of a stress board, and the room left below its bricks */
+	private static final int STRESS_BRICK_WIDTH = 4;
+	private static final int STRESS_BRICK_HEIGHT = 2;
+	private static final int STRESS_BRICK_SEP = 1;
+	private static final int STRESS_ROOM_BELOW = 200;
+
+/**	Creates a board, checking that it can be played
+ * @param width @param height The size of the board
+ * @param bricksPerRow @param brickRows The number of bricks in a row, and the number of rows
+ * @param brickSep The separation between bricks, in a row and between rows
+ * @param brickHeight The height of a brick
+ * @param brickYOffset The distance of the top row from the top of the board
+ * @param paddleWidth @param paddleHeight The size of the paddle
+ * @param paddleYOffset The offset of the paddle up from the bottom
+ * @param ballRadius The radius of the ball
+ * @throws IllegalArgumentException if the board can not be played
+ */
+	public BoardConfig(int width, int height, int bricksPerRow, int brickRows, int brickSep, int brickHeight,
+			int brickYOffset, int paddleWidth, int paddleHeight, int paddleYOffset, int ballRadius) {
+		requirePositive("width", width);
+		requirePositive("height", height);
+		requirePositive("bricksPerRow", bricksPerRow);
+		requirePositive("brickRows", brickRows);
+		requirePositive("brickHeight", brickHeight);
+		requirePositive("paddleWidth", paddleWidth);
+		requirePositive("paddleHeight", paddleHeight);
+		requirePositive("ballRadius", ballRadius);
+		if ((brickSep < 0) || (brickYOffset < 0) || (paddleYOffset < 0)) {
+			throw new IllegalArgumentException("brickSep, brickYOffset and paddleYOffset can not be negative");
+		}
+		if ((long) bricksPerRow * brickRows > Integer.MAX_VALUE / 8) {
+			throw new IllegalArgumentException("Too many bricks: " + bricksPerRow + "x" + brickRows);
+		}
+		long brickWidth = ((long) width - (long) (bricksPerRow - 1) * brickSep) / bricksPerRow;
+		if (brickWidth < 1) {
+			throw new IllegalArgumentException(bricksPerRow + " bricks with a separation of " + brickSep
+					+ " do not fit across a board " + width + " wide");
+		}
+		if ((paddleWidth > width) || (ballRadius * 2 >= width)) {
+			throw new IllegalArgumentException("The paddle and the ball have to fit across the board");
+		}
+		long bricksBottom = brickYOffset + (long) brickRows * (brickHeight + brickSep);
+		long paddleY = (long) height - paddleYOffset - paddleWidth;
+		long ballStartY = (height / 2) - (ballRadius / 2);
+		if ((paddleY < 0) || (paddleY + paddleHeight > height)) {
+			throw new IllegalArgumentException("The paddle, at " + paddleY + " from the top, is not on the board");
+		}
+		if (ballStartY < bricksBottom) {
+			throw new IllegalArgumentException("The ball would start inside the bricks, the rows reach down to "
+					+ bricksBottom + " and the ball starts at " + ballStartY + ", make the board higher");
+		}
+		if (ballStartY + ballRadius * 2 > paddleY) {
+			throw new IllegalArgumentException("The ball would start at or below the paddle");
+		}
+		this.width = width;
+		this.height = height;
+		this.bricksPerRow = bricksPerRow;
+		this.brickRows = brickRows;
+		this.brickSep = brickSep;
+		this.brickWidth = (int) brickWidth;
+		this.brickHeight = brickHeight;
+		this.brickYOffset = brickYOffset;
+		this.paddleWidth = paddleWidth;
+		this.paddleHeight = paddleHeight;
+		this.paddleYOffset = paddleYOffset;
+		this.ballRadius = ballRadius;
+	}
+
+	private static void requirePositive(String name, int value) {
+		if (value <= 0) {
+			throw new IllegalArgumentException(name + " must be positive, not " + value);
+		}
+	}
+
+/**	Creates the board from the breakout.board.* system properties, anything not set is as in DEFAULT:
+ * 	width, height, bricksPerRow, brickRows, brickSep, brickHeight, brickYOffset, paddleWidth,
+ * 	paddleHeight, paddleYOffset, ballRadius
+ * @throws IllegalArgumentException if a property is not a number, or the board can not be played
+ */
+	public static BoardConfig fromSystemProperties() {
+		BoardConfig d = DEFAULT;
+		return new BoardConfig(property("width", d.width), property("height", d.height),
+				property("bricksPerRow", d.bricksPerRow), property("brickRows", d.brickRows), property("brickSep", d.brickSep),
+				property("brickHeight", d.brickHeight), property("brickYOffset", d.brickYOffset),
+				property("paddleWidth", d.paddleWidth), property("paddleHeight", d.paddleHeight),
+				property("paddleYOffset", d.paddleYOffset), property("ballRadius", d.ballRadius));
+	}
+
+	private static int property(String name, int defaultValue) {
+		String value = System.getProperty("breakout.board." + name);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException("breakout.board." + name + " must be a whole number, not " + value);
+		}
+	}
+
+/**	Creates a board of tiny bricks, as wide as it needs to be for the columns, and high enough for the
+ * 	ball to start below the rows. The paddle and ball are the normal ones.
+ * @param columns @param rows The number of bricks in a row, and the number of rows
+ */
+	public static BoardConfig stress(int columns, int rows) {
+		int sep = STRESS_BRICK_SEP;
+		long width = Math.max(DEFAULT.width, (long) columns * (STRESS_BRICK_WIDTH + sep) - sep);
+		long bricksBottom = DEFAULT.brickYOffset + (long) rows * (STRESS_BRICK_HEIGHT + sep);
+		long height = 2 * (bricksBottom + DEFAULT.ballRadius) + STRESS_ROOM_BELOW;
+		if ((width > Integer.MAX_VALUE) || (height > Integer.MAX_VALUE)) {
+			throw new IllegalArgumentException("A board of " + columns + "x" + rows + " bricks is too big");
+		}
+		return new BoardConfig((int) width, (int) height, columns, rows, sep, STRESS_BRICK_HEIGHT, DEFAULT.brickYOffset,
+				DEFAULT.paddleWidth, DEFAULT.paddleHeight, DEFAULT.paddleYOffset, DEFAULT.ballRadius);
+	}
+
+/**	@return the x location of the first brick of a row, the space left over by a row is divided
+ * 	between its beginning and end
+ */
+	public int getBrickRowStartX() {
+		int spaceRemaining = width - (brickWidth * bricksPerRow + (bricksPerRow - 1) * brickSep);
+		return Math.max(0, spaceRemaining / 2);
+	}
+
+/**	@return the y location of the top of the paddle */
+	public int getPaddleY() {
+		return height - paddleYOffset - paddleWidth;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getBricksPerRow() {
+		return bricksPerRow;
+	}
+
+	public int getBrickRows() {
+		return brickRows;
+	}
+
+/**	@return the number of bricks on the board */
+	public int getBrickCount() {
+		return bricksPerRow * brickRows;
+	}
+
+	public int getBrickSep() {
+		return brickSep;
+	}
+
+	public int getBrickWidth() {
+		return brickWidth;
+	}
+
+	public int getBrickHeight() {
+		return brickHeight;
+	}
+
+	public int getBrickYOffset() {
+		return brickYOffset;
+	}
+
+	public int getPaddleWidth() {
+		return paddleWidth;
+	}
+
+	public int getPaddleHeight() {
+		return paddleHeight;
+	}
+
+	public int getPaddleYOffset() {
+		return paddleYOffset;
+	}
+
+	public int getBallRadius() {
+		return ballRadius;
+	}
+
+/**	@return the width and height of the square the ball is in */
+	public int getBallWidth() {
+		return ballRadius * 2;
+	}
+
+	public boolean equals(Object other) {
+		if (!(other instanceof BoardConfig)) {
+			return false;
+		}
+		BoardConfig o = (BoardConfig) other;
+		return (width == o.width) && (height == o.height) && (bricksPerRow == o.bricksPerRow) && (brickRows == o.brickRows)
+				&& (brickSep == o.brickSep) && (brickHeight == o.brickHeight) && (brickYOffset == o.brickYOffset)
+				&& (paddleWidth == o.paddleWidth) && (paddleHeight == o.paddleHeight) && (paddleYOffset == o.paddleYOffset)
+				&& (ballRadius == o.ballRadius);
+	}
+
+	public int hashCode() {
+		return java.util.Arrays.hashCode(new int[] {width, height, bricksPerRow, brickRows, brickSep, brickHeight,
+				brickYOffset, paddleWidth, paddleHeight, paddleYOffset, ballRadius});
+	}
+
+	public String toString() {
+		return String.format("board %dx%d, %dx%d bricks of %dx%d separated by %d, paddle %dx%d, ball radius %d",
+				width, height, bricksPerRow, brickRows, brickWidth, brickHeight, brickSep, paddleWidth, paddleHeight, ballRadius);
+	}
+
+
+/**
+ * 	INSTANCE VARIABLES
+ */
+
+/**	The size of the board */
+	private final int width, height;
+
+/**	The rows of bricks */
+	private final int bricksPerRow, brickRows, brickSep, brickWidth, brickHeight, brickYOffset;
+
+/**	The paddle and the ball */
+	private final int paddleWidth, paddleHeight, paddleYOffset, ballRadius;
+
+}
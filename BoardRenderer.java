@@ -0,0 +1,334 @@
+/**
+ * File: BoardRenderer.java
+
+ * Draws the breakout board with an offscreen buffer, repainting only the parts of the screen 
+ * which changed in a frame.
+ * The bricks are drawn once a turn into their own image, since they do not move. When a brick
+ * is removed only its rectangle is cleared from that image. Each frame, the rectangles under the 
+ * ball and paddle (where they were and where they are now) and those of removed bricks are 
+ * copied from the brick image into the frame image, the ball and paddle are drawn over them, 
+ * and only those rectangles are repainted on the screen.
+ 
+ *	NOTES:
+ *	render is called by the game thread and paintComponent by the Swing thread, 
+ *	they are synchronized on the renderer so a frame is never painted half drawn.
+ *	The number of pixels repainted in each frame is counted, to compare with repainting the whole board.
+ *	The particles of a ParticleSystem, if one is set, are drawn straight into the pixels of the frame,
+ *	after the bricks and under the ball and paddle. The box around them, where they were and where they
+ *	are, is redrawn while there are any.
+ */
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import javax.swing.JComponent;
+
+public class BoardRenderer extends JComponent {
+
+	private static final long serialVersionUID = 1L;
+
+/**	Color of the board behind the bricks */
+	private static final Color BACKGROUND_COLOR = Color.WHITE;
+
+/**	Color of the outline of the objects, same as the acm objects */
+	private static final Color OUTLINE_COLOR = Color.BLACK;
+
+/**	The number of brick colors kept, as a power of 2 */
+	private static final int COLOR_CACHE_BITS = 6;
+	private static final int COLOR_CACHE_SIZE = 1 << COLOR_CACHE_BITS;
+
+/**	The most rectangles kept for a frame, if more change the whole board is repainted */
+	private static final int MAX_DIRTY_RECTS = 32;
+
+/**	Creates a renderer for a board of the given size
+ * @param width @param height The size of the board in pixels
+ * @param ballSize The width and height of the drawn ball
+ * @param paddleWidth @param paddleHeight The size of the paddle
+ * @param ballColor @param paddleColor The colors the ball and paddle are filled with
+ */
+	public BoardRenderer(int width, int height, int ballSize, int paddleWidth, int paddleHeight, Color ballColor, Color paddleColor) {
+		this.boardWidth = width;
+		this.boardHeight = height;
+		this.ballSize = ballSize;
+		this.paddleWidth = paddleWidth;
+		this.paddleHeight = paddleHeight;
+		this.paddleColor = paddleColor;
+		brickLayer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		brickGraphics = brickLayer.createGraphics();
+		frameGraphics = frame.createGraphics();
+		ballImage = createBallImage(ballSize, ballColor);
+		setSize(width, height);
+		setPreferredSize(new Dimension(width, height));
+		setOpaque(true);
+	}
+
+/**	Draws all the live bricks into the brick image, at the start of a turn.
+ * 	The whole board is repainted in the next frame.
+ * @param bricks The bricks of the board
+ * @param brickWidth @param brickHeight The size of a brick
+ */
+	public synchronized void drawBricks(BrickStore bricks, int brickWidth, int brickHeight) {
+		brickGraphics.setColor(BACKGROUND_COLOR);
+		brickGraphics.fillRect(0, 0, boardWidth, boardHeight);
+		for (int i=0; i < bricks.getCapacity(); i++) {
+			if (bricks.isAlive(i)) {
+				drawRect(brickGraphics, bricks.getX(i), bricks.getY(i), brickWidth, brickHeight, getColor(bricks.getColor(i)));
+			}
+		}
+		wholeBoardDirty = true;
+	}
+
+/**	Draws one brick into the brick image, for a brick added part way through a turn.
+ * 	Its rectangle is repainted in the next frame.
+ * @param x @param y @param brickWidth @param brickHeight The rectangle of the brick
+ * @param color The RGB color of the brick
+ */
+	public synchronized void drawBrick(int x, int y, int brickWidth, int brickHeight, int color) {
+		drawRect(brickGraphics, x, y, brickWidth, brickHeight, getColor(color));
+		addDirtyRect(x, y, brickWidth + 1, brickHeight + 1);
+	}
+
+/**	Clears a removed brick from the brick image, its rectangle is repainted in the next frame
+ * @param x @param y @param brickWidth @param brickHeight The rectangle of the brick
+ */
+	public synchronized void removeBrick(int x, int y, int brickWidth, int brickHeight) {
+		brickGraphics.setColor(BACKGROUND_COLOR);
+		/* The outline is drawn one pixel past the fill, as with the acm objects */
+		brickGraphics.fillRect(x, y, brickWidth + 1, brickHeight + 1);
+		addDirtyRect(x, y, brickWidth + 1, brickHeight + 1);
+	}
+
+/**	Draws a frame with the ball and paddle at the given locations, 
+ * 	only the rectangles which changed are redrawn and repainted.
+ * @param ballX @param ballY The top left corner of the ball
+ * @param paddleX @param paddleY The top left corner of the paddle
+ */
+	public synchronized void render(double ballX, double ballY, double paddleX, double paddleY) {
+		int newBallX = (int) Math.round(ballX), newBallY = (int) Math.round(ballY);
+		int newPaddleX = (int) Math.round(paddleX), newPaddleY = (int) Math.round(paddleY);
+		addMovedRect(drawnBallX, drawnBallY, newBallX, newBallY, ballSize + 1, ballSize + 1);
+		addMovedRect(drawnPaddleX, drawnPaddleY, newPaddleX, newPaddleY, paddleWidth + 1, paddleHeight + 1);
+		drawnBallX = newBallX;
+		drawnBallY = newBallY;
+		drawnPaddleX = newPaddleX;
+		drawnPaddleY = newPaddleY;
+		if (particles != null) {
+			addParticleRects();
+		}
+
+		if (wholeBoardDirty) {
+			dirtyCount = 0;
+			wholeBoardDirty = false;
+			addDirtyRect(0, 0, boardWidth, boardHeight);
+		}
+		long pixels = 0;
+		for (int i=0; i < dirtyCount; i++) {
+			int x = dirtyX[i], y = dirtyY[i], w = dirtyWidth[i], h = dirtyHeight[i];
+			frameGraphics.drawImage(brickLayer, x, y, x + w, y + h, x, y, x + w, y + h, null);
+			pixels += (long) w * h;
+		}
+		/* Drawn without a clip, since setting one allocates. Outside the rectangles they are drawn where they 
+		 * already were, which changes nothing */
+		if (dirtyCount > 0) {
+			if (particlesDrawn) {
+				particles.draw(framePixels, boardWidth, boardHeight);
+			}
+			drawRect(frameGraphics, drawnPaddleX, drawnPaddleY, paddleWidth, paddleHeight, paddleColor);
+			frameGraphics.drawImage(ballImage, drawnBallX, drawnBallY, null);
+		}
+		for (int i=0; i < dirtyCount; i++) {
+			repaint(dirtyX[i], dirtyY[i], dirtyWidth[i], dirtyHeight[i]);
+		}
+		dirtyCount = 0;
+		pixelsLastFrame = pixels;
+		totalPixels += pixels;
+		framesRendered++;
+	}
+
+/**	Copies the latest frame into an image, for drawing the game without a window
+ * @param image An image of the size of the board, of TYPE_INT_RGB
+ */
+	public synchronized void copyFrame(BufferedImage image) {
+		if ((image.getType() != BufferedImage.TYPE_INT_RGB) || (image.getWidth() != boardWidth) || (image.getHeight() != boardHeight)) {
+			throw new IllegalArgumentException("Image must be an INT_RGB image of the size of the board");
+		}
+		int[] from = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+		int[] to = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		System.arraycopy(from, 0, to, 0, from.length);
+	}
+
+/**	Sets the particles drawn with each frame, they have to be updated on the thread calling render
+ * @param particles The particles, or null to draw none
+ */
+	public synchronized void setParticles(ParticleSystem particles) {
+		this.particles = particles;
+		particlesDrawn = false;
+		wholeBoardDirty = true;
+		if (particles != null) {
+			framePixels = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+		}
+	}
+
+/**	Marks the box the particles were drawn in last frame and the one they are in now as dirty */
+	private void addParticleRects() {
+		if (particlesDrawn) {
+			addDirtyRect(particlesMinX, particlesMinY, particlesMaxX - particlesMinX + ParticleSystem.PARTICLE_SIZE,
+					particlesMaxY - particlesMinY + ParticleSystem.PARTICLE_SIZE);
+		}
+		particlesDrawn = particles.getCount() > 0;
+		if (particlesDrawn) {
+			particlesMinX = particles.getMinX();
+			particlesMinY = particles.getMinY();
+			particlesMaxX = particles.getMaxX();
+			particlesMaxY = particles.getMaxY();
+			addDirtyRect(particlesMinX, particlesMinY, particlesMaxX - particlesMinX + ParticleSystem.PARTICLE_SIZE,
+					particlesMaxY - particlesMinY + ParticleSystem.PARTICLE_SIZE);
+		}
+	}
+
+/**	Paints the frame image, Swing sets the clip to the repainted rectangles */
+	protected synchronized void paintComponent(Graphics g) {
+		g.drawImage(frame, 0, 0, null);
+	}
+
+/**	@return the number of pixels repainted in the last frame */
+	public synchronized long getPixelsLastFrame() {
+		return pixelsLastFrame;
+	}
+
+/**	@return the average number of pixels repainted per frame */
+	public synchronized double getAveragePixelsPerFrame() {
+		return (framesRendered == 0) ? 0 : (double) totalPixels / framesRendered;
+	}
+
+/**	@return the number of pixels in the whole board, what a full repaint costs each frame */
+	public int getBoardPixels() {
+		return boardWidth * boardHeight;
+	}
+
+/**	Draws the ball once into an image with a transparent background, drawing an oval every frame allocates */
+	private static BufferedImage createBallImage(int ballSize, Color ballColor) {
+		BufferedImage image = new BufferedImage(ballSize + 1, ballSize + 1, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(ballColor);
+		g.fillOval(0, 0, ballSize, ballSize);
+		g.setColor(OUTLINE_COLOR);
+		g.drawOval(0, 0, ballSize, ballSize);
+		g.dispose();
+		return image;
+	}
+
+/**	Returns the Color of an RGB value, the colors are kept so that the bricks of every turn
+ * 	are drawn without creating them again. If there are more colors than the cache holds they are
+ * 	created each time, which only happens for a level with a very large palette.
+ */
+	private Color getColor(int rgb) {
+		int slot = (rgb * 0x9E3779B1) >>> (32 - COLOR_CACHE_BITS);
+		for (int probe = 0; probe < COLOR_CACHE_SIZE; probe++) {
+			Color color = colorCache[slot];
+			if (color == null) {
+				color = new Color(rgb);
+				colorCache[slot] = color;
+				return color;
+			}
+			if ((color.getRGB() & 0xFFFFFF) == (rgb & 0xFFFFFF)) {
+				return color;
+			}
+			slot = (slot + 1) & (COLOR_CACHE_SIZE - 1);
+		}
+		return new Color(rgb);
+	}
+
+/**	Draws a filled rectangle with an outline, the same way as a filled acm GRect */
+	private static void drawRect(Graphics2D g, int x, int y, int width, int height, Color fillColor) {
+		g.setColor(fillColor);
+		g.fillRect(x, y, width, height);
+		g.setColor(OUTLINE_COLOR);
+		g.drawRect(x, y, width, height);
+	}
+
+/**	Marks the rectangle an object moved out of and into as dirty, as one rectangle 
+ * 	covering both if they overlap, otherwise as two.
+ */
+	private void addMovedRect(int oldX, int oldY, int newX, int newY, int width, int height) {
+		if ((oldX == newX) && (oldY == newY)) {
+			return;
+		}
+		if ((Math.abs(oldX - newX) < width) && (Math.abs(oldY - newY) < height)) {
+			int x = Math.min(oldX, newX), y = Math.min(oldY, newY);
+			addDirtyRect(x, y, Math.abs(oldX - newX) + width, Math.abs(oldY - newY) + height);
+		}
+		else {
+			addDirtyRect(oldX, oldY, width, height);
+			addDirtyRect(newX, newY, width, height);
+		}
+	}
+
+/**	Adds a rectangle to be redrawn in the next frame, clipped to the board */
+	private void addDirtyRect(int x, int y, int width, int height) {
+		if (wholeBoardDirty) {
+			return;
+		}
+		int left = Math.max(0, x), top = Math.max(0, y);
+		int right = Math.min(boardWidth, x + width), bottom = Math.min(boardHeight, y + height);
+		if ((right <= left) || (bottom <= top)) {
+			return;
+		}
+		if (dirtyCount == MAX_DIRTY_RECTS) {
+			wholeBoardDirty = true;
+			return;
+		}
+		dirtyX[dirtyCount] = left;
+		dirtyY[dirtyCount] = top;
+		dirtyWidth[dirtyCount] = right - left;
+		dirtyHeight[dirtyCount] = bottom - top;
+		dirtyCount++;
+	}
+
+	
+/**
+ * 	INSTANCE VARIABLES
+ */
+	
+/**	The size of the board */
+	private final int boardWidth, boardHeight;
+
+/**	The size of the ball and paddle, and their colors */
+	private final int ballSize, paddleWidth, paddleHeight;
+	private final Color paddleColor;
+
+/**	The ball, drawn once */
+	private final BufferedImage ballImage;
+
+/**	The bricks, drawn once a turn, and the frame which is painted on the screen */
+	private final BufferedImage brickLayer, frame;
+	private final Graphics2D brickGraphics, frameGraphics;
+
+/**	Where the ball and paddle were drawn in the last frame */
+	private int drawnBallX, drawnBallY, drawnPaddleX, drawnPaddleY;
+
+/**	The rectangles to redraw in the next frame, the first dirtyCount are valid */
+	private final int[] dirtyX = new int[MAX_DIRTY_RECTS], dirtyY = new int[MAX_DIRTY_RECTS];
+	private final int[] dirtyWidth = new int[MAX_DIRTY_RECTS], dirtyHeight = new int[MAX_DIRTY_RECTS];
+	private int dirtyCount;
+
+/**	Set when the whole board has to be redrawn in the next frame */
+	private boolean wholeBoardDirty = true;
+
+/**	The colors of the bricks, an open addressed table by RGB value */
+	private final Color[] colorCache = new Color[COLOR_CACHE_SIZE];
+
+/**	The particles drawn with each frame, null if there are none, and the pixels of the frame they are drawn into */
+	private ParticleSystem particles;
+	private int[] framePixels;
+
+/**	Whether particles were drawn in the last frame, and the box around them */
+	private boolean particlesDrawn;
+	private int particlesMinX, particlesMinY, particlesMaxX, particlesMaxY;
+
+/**	Counts of the pixels repainted */
+	private long pixelsLastFrame, totalPixels, framesRendered;
+
+}
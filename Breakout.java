@@ -5,13 +5,23 @@
  * For more info, check here:
  * https://en.wikipedia.org/wiki/Breakout_%28video_game%29
  
+ * The rules of the game are in BreakoutSimulation, this class is the view over it.
+ * It draws the state of the simulation with a BoardRenderer on the canvas and feeds it the mouse input.
+ * The collisions of the ball are published by the simulation on a CollisionEventBus, and the sounds,
+ * the score and the counts of the collisions are worked out from them by consumers on their own threads,
+ * so none of that is done in the tick.
+ * When nothing in the game can change, the game thread is parked by the IdleScheduler of the game loop
+ * instead of ticking and redrawing: while the game is paused (P), the window is minimized, the window has lost
+ * the focus (unless the autopilot is playing, a demo is still watched), and before each serve until the
+ * player clicks. The key, click or window event which ends it wakes the game thread straight away.
+ * Once the game is over run returns, and nothing runs until the window is closed.
+ 
  
  *	NOTES:
  *	The game is mostly complete, there are some enhancements that can be added:
  *	1. A Label and timer to signal to the user the starting and ending of each game
- *	2. Adding sounds when the ball collides with any object
- *	3. Changing the color of the ball, if a row of bricks is over
- *	4. Different velocities of the ball on collision with the paddle in different directions
+ *	2. Changing the color of the ball, if a row of bricks is over
+ *	3. Different velocities of the ball on collision with the paddle in different directions
 	
  */
 
@@ -25,597 +35,611 @@ import java.awt.event.*;
 
 public class Breakout extends GraphicsProgram {
 
-/** Width and height of application window in pixels */
-	public static final int APPLICATION_WIDTH = 400;
-	public static final int APPLICATION_HEIGHT = 600;
+/**	The geometry of the board, read from the breakout.board.* system properties (see BoardConfig),
+ * 	the normal board if none are set. The dimensions below all come from it.
+ */
+	private static final BoardConfig BOARD = BoardConfig.fromSystemProperties();
 
-/** Dimensions of game board (usually the same) */
-	private static final int WIDTH = APPLICATION_WIDTH;
-	private static final int HEIGHT = APPLICATION_HEIGHT;
+/** Width and height of application window in pixels */
+	public static final int APPLICATION_WIDTH = BOARD.getWidth();
+	public static final int APPLICATION_HEIGHT = BOARD.getHeight();
 
 /** Dimensions of the paddle */
-	private static final int PADDLE_WIDTH = 60;
-	private static final int PADDLE_HEIGHT = 10;
+	private static final int PADDLE_WIDTH = BOARD.getPaddleWidth();
+	private static final int PADDLE_HEIGHT = BOARD.getPaddleHeight();
 	
 /**	Color of paddle */	
 	private static final Color PADDLE_COLOR = Color.BLACK;
 
-/** Offset of the paddle up from the bottom */
-	private static final int PADDLE_Y_OFFSET = 30;
-
-/** Number of bricks per row */
-	private static final int NBRICKS_PER_ROW = 10;
-
-/** Number of rows of bricks */
-	private static final int NBRICK_ROWS = 10;
+/** Dimensions of game board */
+	private static final int WIDTH = BOARD.getWidth();
+	private static final int HEIGHT = BOARD.getHeight();
 
-/** Separation between bricks */
-	private static final int BRICK_SEP = 4;
-
-/** Width of a brick */
-	private static final int BRICK_WIDTH =
-	  (WIDTH - (NBRICKS_PER_ROW - 1) * BRICK_SEP) / NBRICKS_PER_ROW;
-
-/** Height of a brick */
-	private static final int BRICK_HEIGHT = 8;
+/** Dimensions of a brick */
+	private static final int BRICK_WIDTH = BOARD.getBrickWidth();
+	private static final int BRICK_HEIGHT = BOARD.getBrickHeight();
 
 /** Radius of the ball in pixels */
-	private static final int BALL_RADIUS = 10;
-	
-/**	The length of the side of the square in which the ball object is contained */
-	private static final int BALL_WIDTH = BALL_RADIUS * 2;
+	private static final int BALL_RADIUS = BOARD.getBallRadius();
 	
 /**	Color of the ball */
 	private static final Color BALL_COLOR = Color.BLACK;
 	
-/**	The initial value of the velocity of the ball in the y direction */
-	private static final double BALL_Y_VELOCITY = 5.0;
-	
-/**	The minimum and max range of the x velocities possible, 
- * 	on some collisions a random x velocity is generated which uses this range.  
- */
-	private static final double BALL_X_LOWER_VELOCITY = 2.0;
-	private static final double BALL_X_UPPER_VELOCITY = 5.0;
+/**	The rate the physics of the game is run at, the simulation is stepped this many times a second */
+	private static final double TICKS_PER_SECOND = 120;
 
-/** Offset of the top brick row from the top */
-	private static final int BRICK_Y_OFFSET = 70;
+/**	The rate at which the screen is redrawn */
+	private static final double FRAMES_PER_SECOND = 60;
 
-/** Number of turns */
-	private static final int NTURNS = 3;
-	
-/**	The delay variable; after these many milliseconds, the ball is moved.
- * 	The logic here is to mimic 24fps so that the ball moves seamlessly
+/**	The number of ticks between keyframes of a recording, so a replay can jump to every 10 seconds */
+	private static final int KEYFRAME_INTERVAL = (int) (TICKS_PER_SECOND * 10);
+
+/**	If the game falls behind, at most these many ticks are run to catch up before a frame is drawn */
+	private static final int MAX_TICKS_PER_FRAME = 8;
+
+/**	The most pixels the autopilot moves the paddle in a tick, about as fast as a quick hand on the mouse */
+	private static final double AUTOPILOT_PADDLE_SPEED = 4;
+
+/**	A snapshot of the game is kept every this many ticks, the last UNDO_HISTORY of them, 
+ * 	so undoing a lost life goes back between 1.5 and 2 seconds before the ball was lost
  */
-	private static final int DELAY = 42;
+	private static final int UNDO_SNAPSHOT_TICKS = (int) (TICKS_PER_SECOND / 2);
+	private static final int UNDO_HISTORY = 4;
+
+/**	The sparks thrown off when a brick is broken and when the ball bounces off the paddle: how many,
+ * 	how fast (pixels per second), how long they last (seconds) and the color of those off the paddle.
+ * 	The FrameExporter throws the same ones.
+ */
+	static final int BRICK_PARTICLES = 40;
+	static final int PADDLE_PARTICLES = 12;
+	static final double PARTICLE_SPEED = 180;
+	static final double PARTICLE_LIFETIME = 0.8;
+	static final int PADDLE_PARTICLE_COLOR = 0x808080;
+
+/**	The longest time the particles are moved on by in a frame, after a pause they do not jump */
+	private static final double MAX_PARTICLE_STEP = 0.1;
 
-/** Runs the Breakout program. */
+/**	The number of high scores printed at the end of the game */
+	private static final int HIGH_SCORES_SHOWN = 5;
+
+/**	The sound played when the ball collides with anything */
+	private static final String SOUND_FILE = "bounce.au";
+
+/** Runs the Breakout program. 
+ * 	If the breakout.record system property is set, the game is recorded to the file it names,
+ * 	which can be played back with ReplayPlayer. Only games on the normal board and bricks are recorded.
+ * 	If the breakout.metrics system property is set, the game loop is instrumented and the metrics
+ * 	are dumped to the file it names at the end of the game.
+ * 	If the breakout.level system property is set, as file:index, the game is played on that level
+ * 	of a LevelPack instead of the normal rows of bricks. The level has to have as many rows and columns
+ * 	as the board, which can be changed with the breakout.board.* properties.
+ * 	If the breakout.autopilot system property is set, the paddle is moved by an Autopilot instead of the mouse,
+ * 	for demo machines.
+ * 	Each ball is served by clicking the mouse, and P pauses the game.
+ * 	After losing a ball, pressing U in the next turn undoes the lost life: the game goes back to a couple 
+ * 	of seconds before the ball was lost. This is switched off while recording, a replay can not go back.
+ * 	At the end the game is saved in a HighScoreStore, in the directory named by breakout.scores (scores
+ * 	if it is not set), for the player named by breakout.player (the user if it is not set).
+ */
 	public void run() {
+		long seed = randomGen.nextLong();
+		simulation = new BreakoutSimulation(seed, BOARD);
+		simulation.setTicksPerSecond(TICKS_PER_SECOND);
+		String levelName = System.getProperty("breakout.level");
+		if (levelName != null) {
+			simulation.setLevel(openLevel(levelName));
+		}
+		simulation.newGame();
+		if (System.getProperty("breakout.autopilot") != null) {
+			autopilot = new Autopilot(AUTOPILOT_PADDLE_SPEED);
+		}
+		String metricsPath = System.getProperty("breakout.metrics");
+		if (metricsPath != null) {
+			metrics = new GameMetrics((long) (1e9 / TICKS_PER_SECOND), (long) (1e9 / FRAMES_PER_SECOND));
+			simulation.setMetrics(metrics);
+			gameLoop.setMetrics(metrics);
+		}
+		renderer = new BoardRenderer(WIDTH, HEIGHT, BALL_RADIUS, PADDLE_WIDTH, PADDLE_HEIGHT, BALL_COLOR, PADDLE_COLOR);
+		getGCanvas().add(renderer, 0, 0);
+		particles = new ParticleSystem(ParticleSystem.DEFAULT_CAPACITY, Runtime.getRuntime().availableProcessors(), WIDTH, HEIGHT);
+		renderer.setParticles(particles);
+		startSound();
+		startEventBus();
 		setupEnviron();
 		/* Need to call this method to add mouse listener events */
 		addMouseListeners();
+		addKeyListeners();
+		addWindowListeners();
+		/* The consumers of the collisions sleep while the game does */
+		gameLoop.getIdleScheduler().setListener(idle -> eventBus.setIdle(idle));
+		undoHistory = new GameSnapshot[UNDO_HISTORY];
+		for (int i=0; i < UNDO_HISTORY; i++) {
+			undoHistory[i] = new GameSnapshot(simulation);
+		}
+		lostLife = new GameSnapshot(simulation);
 		/* Once mouse listener has been added, game can start */
+		String recordPath = System.getProperty("breakout.record");
+		if ((recordPath != null) && !BOARD.equals(BoardConfig.DEFAULT)) {
+			/* A recording does not hold the board, it is always played back on the normal one */
+			System.out.println("Not recording, only games on the normal board can be recorded");
+			recordPath = null;
+		}
+		if ((recordPath != null) && (levelName != null)) {
+			/* Nor does it hold the level, it is always played back on the normal rows of bricks */
+			System.out.println("Not recording, games on a level can not be recorded");
+			recordPath = null;
+		}
+		if (recordPath != null) {
+			recorder = new ReplayRecorder(simulation, seed, TICKS_PER_SECOND, KEYFRAME_INTERVAL);
+		}
+		long gameStart = System.nanoTime();
 		startGame();
-	}
-	
-/**	This method is called each time the mouse moves
- * 	On movement of the mouse, the paddle location has to be updated, a method is called to update that
- * 	The mouse location has to be updated in the instance variable, which is used the next time the mouse moves 
- */
-	public void mouseMoved(MouseEvent e) {
-		setupPaddleListener(e);
-		
-		//Updating the past mouse location, this is used later to calculate the change in position
-		mouseLocation = e.getPoint();
-	}
-	
-/**	Sets up the environment for the breakout game
- * 	The bricks on the top row are created, which are used to play the game
- * 	Creates the paddle off which the ball will bounce
- * 	The ball is created at its starting location
- */
-	private void setupEnviron() {
-		setupBricks();
-		setupPaddle();
-		setInitialMouseLocation();
-		setBallAtInitialLocation();
-	}
-	
-/**	Clears the GraphicsProgram container of all elements.
- * 	This method is used at the end of a turn, where there may be some bricks left over, 
- * 	the ball may be in a random location 
- *  These elements have to be removed to prepare for the next turn.	
- */
-	private void clearEnviron() {
-		removeAll();
-	}
-	
-/**	Start the game. Consists of initializing the velocity of the ball and starting its motion
- * 	Running a loop NTURNS number of times, the whole turn of a player is captured inside this loop
- */
-	private void startGame() {
-		for (int i=0; i < NTURNS; i++) {
-			initializeInitialVelocityOfBall();
-			/* This method will finish when a turn is up, or bricks are over */
-			bounceAroundBall();
-			/* At end of a turn, remove all elements from screen */
-			clearEnviron();
-			/* Reset the environment for the next turn, or if turns are over just display the environment
-			 * {to show the user what s/he are missing >:) } */
-			setupEnviron();
+		/* The time the game was idle, paused or waiting for a serve, is not counted as playing */
+		long durationMillis = (System.nanoTime() - gameStart - gameLoop.getIdleScheduler().getIdleNanos()) / 1000000;
+		eventBus.stop();
+		/* The sparks are no longer moved, the board keeps showing where they stopped */
+		particles.close();
+		System.out.println(eventBus);
+		System.out.println(String.format("score: %d, collisions: %d wall, %d paddle, %d brick, %d turns over",
+				score, eventCounts[0], eventCounts[1], eventCounts[2], eventCounts[3]));
+		saveScore(seed, durationMillis);
+		if (soundMixer != null) {
+			soundMixer.stop();
+			System.out.println(soundMixer);
+		}
+		if (recorder != null) {
+			saveRecording(recordPath);
+		}
+		if (metrics != null) {
+			try {
+				metrics.dump(java.nio.file.Paths.get(metricsPath));
+			}
+			catch (java.io.IOException e) {
+				throw new ErrorException(e);
+			}
 		}
 	}
 	
-	
-/**	Setting the initial mouse location to be the same as the x, y co-ordinates of the 
- * 	paddle object.
+/**	Opens a level of a level pack
+ * @param name The pack file and the index of the level in it, as file:index
  */
-	private void setInitialMouseLocation() {
-		mouseLocation = getPaddleInitialPoint();
+	private static LevelPack.Level openLevel(String name) {
+		int colon = name.lastIndexOf(':');
+		if (colon < 0) {
+			throw new ErrorException("breakout.level should be file:index, not " + name);
+		}
+		try {
+			LevelPack pack = LevelPack.open(java.nio.file.Paths.get(name.substring(0, colon)));
+			return pack.getLevel(Integer.parseInt(name.substring(colon + 1)));
+		}
+		catch (java.io.IOException e) {
+			throw new ErrorException(e);
+		}
 	}
-	
 
-	
-/**	METHODS RELATED TO BALL MOTION */
-	
-/**	Sets up the ball at the center of the screen.
- * 	Creates a GOval object, with the BALL_RADIUS as a parameter for the width and height of rectangle
- * 	Centers the ball in the middle of the screen, slight adjustments have to be made as x,y
- * 	co-ordinates are the top left corner of the rectangle and not the center of ball	
- */
-	private void setBallAtInitialLocation() {
-		double ballx = (WIDTH / 2) - (BALL_RADIUS / 2);
-		double bally = (HEIGHT / 2) - (BALL_RADIUS / 2);
-		ball = new GOval(ballx, bally, BALL_RADIUS, BALL_RADIUS);
-		ball.setFilled(true);
-		ball.setFillColor(BALL_COLOR);
-		add(ball);
+/**	Loads the collision sound and starts the mixer, the game goes on without sound if the file can not be read */
+	private void startSound() {
+		try {
+			soundMixer = new SoundMixer(new java.io.File(SOUND_FILE), (long) (1e9 / FRAMES_PER_SECOND));
+			soundMixer.start();
+		}
+		catch (java.io.IOException | javax.sound.sampled.UnsupportedAudioFileException e) {
+			System.out.println("No sound, " + SOUND_FILE + " could not be loaded: " + e.getMessage());
+		}
 	}
-	
-/**	Sets the initial velocity of the ball, at the beginning of the game.
- * 	Sets the ballvy to a constant, this velocity is initially always positive (in the downwards direction)
- * 	randomly chooses the ballvx value (a method is called for it), 
- * 	it can be positive or negative, which is also randomly chosen 
- */
-	private void initializeInitialVelocityOfBall() {
-		ballvy = BALL_Y_VELOCITY;
-		ballvx = getRandomXVelocity();
-		/* Gets the next boolean value (true or false) with probability 0.5, it is possible to set a
-		 * biased coin with this variation of the nextBoolean method, 
-		 * used here to randomly set the x velocity direction */
-		if (randomGen.nextBoolean(0.5)) {
-			ballvx = -ballvx;
+
+/**	Starts the consumers of the collisions, the sounds (if there is sound), the score and the counts of the collisions */
+	private void startEventBus() {
+		eventBus = new CollisionEventBus();
+		if (soundMixer != null) {
+			eventBus.addConsumer("sound events", (tick, publishNanos, kind, brick, x, y, endOfBatch) -> soundMixer.triggerEvents(kind, publishNanos));
 		}
+		eventBus.addConsumer("score events", this::scoreEvent);
+		eventBus.addConsumer("collision stats", this::countEvent);
+		eventBus.start();
+		simulation.setEventBus(eventBus);
 	}
 
-/**	Generate a random velocity (data type double) between 1.0 and 3.0. 
- * 	The randomGen instance variable is used to get the random double value
- *  @return a double value between 1 and 3
- */
-	private double getRandomXVelocity() {
-		return randomGen.nextDouble(BALL_X_LOWER_VELOCITY, BALL_X_UPPER_VELOCITY);
+/**	On the score consumer's thread, every hit of a brick scores, the higher up the brick the more it scores */
+	private void scoreEvent(long tick, long publishNanos, int kind, int brick, double x, double y, boolean endOfBatch) {
+		if (kind == BreakoutSimulation.EVENT_BRICK) {
+			score += Math.max(1, BOARD.getBrickRows() - brick / BOARD.getBricksPerRow());
+		}
 	}
 
-/**	Inverts the x velocity, setting it to a random velocity
- * 	Changes the value of the instance variable ballvx
- */
-	private void invertXVelocity() {
-		double newXVel = -1 * Math.signum(ballvx) * getRandomXVelocity();
-		ballvx = newXVel;
+/**	On the stats consumer's thread, counts the collisions of each kind */
+	private void countEvent(long tick, long publishNanos, int kind, int brick, double x, double y, boolean endOfBatch) {
+		eventCounts[Integer.numberOfTrailingZeros(kind)]++;
 	}
-	
-/**	Inverts the y velocity, simply multiplying it by -1
-* 	Changes the value of the instance variable ballvy
-*/
-	private void invertYVelocity() {
-		ballvy = -ballvy;
+
+/**	Records the game in the high score store, and prints the best scores.
+ * 	The store is in the directory given by -Dbreakout.scores (scores by default), the player is
+ * 	-Dbreakout.player, or the name of the user.
+ */
+	private void saveScore(long seed, long durationMillis) {
+		String player = System.getProperty("breakout.player", System.getProperty("user.name"));
+		try {
+			HighScoreStore store = HighScoreStore.open(java.nio.file.Paths.get(System.getProperty("breakout.scores", "scores")));
+			store.submit(player, score, bricksCleared, durationMillis, seed);
+			store.flush();
+			System.out.println("High scores:");
+			for (HighScoreStore.Game game : store.getTopScores(HIGH_SCORES_SHOWN)) {
+				System.out.println("  " + game);
+			}
+			store.close();
+		}
+		catch (java.io.IOException e) {
+			System.out.println("The score could not be saved: " + e.getMessage());
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
 	}
 
-/**	Moves the ball around on the screen, basically the main method in the playing of the game.
- * 	Checks for collision of the ball, with container walls of the game, with the paddle and the bricks
- * 	A check is also contained to see if there are any bricks left, if not, the game is over
+/**	Saves the recording of the game
+ * @param path The file to save it to
  */
-	private void bounceAroundBall() {
-		while (true) {
-			moveBall();
-			handleBallCollisions();
-			if (checkIfTurnOver()) {
-				break;
-			}
-			pause(DELAY);
+	private void saveRecording(String path) {
+		try {
+			recorder.finish().save(java.nio.file.Paths.get(path));
+		}
+		catch (java.io.IOException e) {
+			throw new ErrorException(e);
 		}
 	}
 	
-/**	Move the ball
- * 	Update the position of the ball, using the move method 
- * 	ballvx and ballvy variables	are used to update the location, these values are the delta change in position
+/**	This method is called each time the mouse moves, on the AWT thread
+ * 	The mouse location is published to the game loop, which uses the latest one 
+ * 	the next time it moves the paddle
  */
-	private void moveBall() {
-		ball.move(ballvx, ballvy);
-		ballTopLeftX = ball.getX();
-		ballTopLeftY = ball.getY();
+	public void mouseMoved(MouseEvent e) {
+		paddleInput.publish(e.getX());
 	}
 	
-/**	Handle the changes which happen in the game as the ball collides with objects.
- * 	The following collisions are handled here:
- * 	 with left wall - invert x velocity, choose a random value for x velocity
- *   with right wall - invert x velocity, choose a random value for x velocity
- *   with upper wall - invert y velocity
- *   with paddle - invert y velocity
- *   with bricks - remove that brick, reduce value of numBricksRemInTurn and invert y velocity
- *   Lower wall collision NOT handled, that is handled in checkIfTurnOver method
+/**	Called on the AWT thread when the mouse is clicked, serves the ball if the game is waiting for it */
+	public void mouseClicked(MouseEvent e) {
+		serveRequested = true;
+		wakeGame();
+	}
+	
+/**	Called on the AWT thread when a key is pressed, U asks the game loop to undo the lost life,
+ * 	P pauses the game or carries on with it
  */
-	private void handleBallCollisions() {
-		/* Collision with left wall, inverting velocity only if it is in -ve x direction */
-		if ((ballTopLeftX <= 0) && !checkXVelocityTowardsRight()) {
-			invertXVelocity();
-			return;
+	public void keyPressed(KeyEvent e) {
+		if (e.getKeyCode() == KeyEvent.VK_U) {
+			undoRequested = true;
 		}
-		/* Collision with right wall, inverting velocity only if it is in +ve x direction  */
-		else if (((ballTopLeftX + BALL_WIDTH) >= WIDTH) && checkXVelocityTowardsRight()) {
-			invertXVelocity();
-			return;
+		else if (e.getKeyCode() == KeyEvent.VK_P) {
+			paused = !paused;
+			wakeGame();
 		}
-		/* Collision with upper wall, inverting velocity only if it is in -ve y direction (+ve y is downwards) */
-		else if ((ballTopLeftY <= 0) && checkYVelocityUpwards()) {
-			invertYVelocity();
+	}
+	
+/**	Listens for the window being minimized or losing the focus, the game is idle while it is */
+	private void addWindowListeners() {
+		Window window = javax.swing.SwingUtilities.getWindowAncestor(getGCanvas());
+		if (window == null) {
+			/* Running as an applet, there is no window of our own */
 			return;
 		}
-
-		/* Getting the object colliding with ball */
-		GObject collidingObject = getCollidingObject();
-		
-		/* Collision with paddle */ 
-		if ((collidingObject != null) && (collidingObject == paddle)) {
-			/* Only if collision with ball is with top of paddle, inverting y velocity,
-			 * else invert x velocity */
-			if (checkCollisionWithTopOfPaddle()) {
-				/* Check if velocity of ball is in +ve y direction, only then inverting its velocity */
-				if (!checkYVelocityUpwards()) {
-					invertYVelocity();
-				}
+		WindowAdapter listener = new WindowAdapter() {
+			public void windowIconified(WindowEvent e) {
+				minimized = true;
 			}
-			else {
-				invertXVelocity();
+			public void windowDeiconified(WindowEvent e) {
+				minimized = false;
+				wakeGame();
 			}
-			
-		}
-		
-		/* Checking if colliding object is a brick */
-		if ((collidingObject != null) && (checkGObjectIsBrick(collidingObject))) {
-			/* No need to check if velocity is already inverted in this case, as brick is removed immediately
-			 * and there is no chance of a 're-collision' happening */
-			/* Inverting the balls velocity */
-			invertYVelocity();
-			/* Removing brick from screen, 
-			 * and reducing the number of bricks left (instance variable numBricksRemInTurn */
-			remove(collidingObject);
-			numBricksRemInTurn--;
-		}
+			public void windowLostFocus(WindowEvent e) {
+				unfocused = true;
+			}
+			public void windowGainedFocus(WindowEvent e) {
+				unfocused = false;
+				wakeGame();
+			}
+		};
+		window.addWindowListener(listener);
+		window.addWindowFocusListener(listener);
 	}
 	
-/** Check if the velocity of ball is in +ve x-direction, i.e. towards right
- * 	Using the ballvx and current ball x location (stored in ballTopLeftX) to check logic
- * @return True if velocity is to right
- */
-	private boolean checkXVelocityTowardsRight() {
-		if ((ballTopLeftX + ballvx) > ballTopLeftX) {
-			return true;
-		}
-		return false;
+/**	Wakes the game thread if it is parked, called after changing what makes the game idle */
+	private void wakeGame() {
+		gameLoop.getIdleScheduler().wake();
 	}
 	
-/**	Check if the velocity of the ball is in upwards direction, this is -ve y direction
- * 	Using ballvy and current ball y location (ballTopLeftY) to check logic
- * @return True if y velocity is upwards, or -ve y
- */
-	private boolean checkYVelocityUpwards() {
-		if ((ballTopLeftY + ballvy) < ballTopLeftY) {
-			return true;
-		}
-		return false;
+/**	@return true while nothing in the game can change: it is paused, minimized, or the player is not on the window */
+	private boolean isIdle() {
+		return paused || minimized || (unfocused && (autopilot == null));
 	}
 	
-/**	RECHECK METHOD	
- * Check if the ball collides with top surface of the paddle
- * 	The ball can be imagined to be contained in a square
- * 	If x,y is the upper left corner of the square (stored in instance variables ballTopLeftX and ballTopLeftY)
- * 	The lower 2 corners are given by (x, y+ball_width) and (x+ball_width, y+ball_width)
- * 	Checking if x and x+ball_width are contained within x co-ordinates of the top left and top right corner of the paddle
- * 	Checking if (y+ball_width) is greater than or equal to the y co-ordinate of the top of the paddle  
- * @return true if the collision is with top surface, false otherwise
- */
-	private boolean checkCollisionWithTopOfPaddle() {
-		double paddleTopLeftX = paddle.getX();
-		double paddleTopRightX = paddleTopLeftX + PADDLE_WIDTH;
-		double paddleTopLeftY = paddle.getY();
-		
-		/* vars to check if the ball is within the x and y boundaries of the top of paddle */
-		boolean withinX = false, withinY = false;
-		
-		/* Checking if x co-ordinates are within bounds */
-		if (((ballTopLeftX >= paddleTopLeftX) && (ballTopLeftX <= paddleTopRightX)) || 
-				(((ballTopLeftX + BALL_WIDTH) >= paddleTopLeftX) && ((ballTopLeftX + BALL_WIDTH) <= paddleTopRightX))) {
-			withinX = true;
-		}
-		/* checking if y co-ordinates are within bounds*/
-		if ((ballTopLeftY + BALL_WIDTH) >= paddleTopLeftY) {
-			withinY = true;
-		}
-		if (withinX && withinY) {
-			return true;
-		}
-		return false;
+/**	@return true until the player clicks to serve the ball, and while the game is idle */
+	private boolean isWaitingToServe() {
+		return !serveRequested || isIdle();
 	}
 	
-/**	Uses the ball co-ordinates to get and return the colliding object
- * 	Since the ball is a GOval, which can be imagined as inscribed in a square, 
- * 	the side of the square is equal to twice the length of the ball radius
- * 	To find colliding objects, the 4 corners of the square are checked
- * @return The colliding object or null if no object is found
+/**	Sets up the environment for the breakout game
+ * 	The bricks of the simulation are drawn, replacing whatever was left over from the last turn,
+ * 	and the paddle and ball are drawn at their starting locations
  */
-	private GObject getCollidingObject() {
-		GObject collidingObject;
-
-		/* Getting object at top left corner of square */
-		collidingObject = getElementAt(ballTopLeftX, ballTopLeftY);
-		/* Since no object found yet, finding if there is an object at top right corner of square */
-		if (collidingObject == null) {
-			collidingObject = getElementAt(ballTopLeftX + BALL_WIDTH, ballTopLeftY);
-		}
-		/* Since no object found yet, finding if there is an object at bottom left corner of square */
-		if (collidingObject == null) {
-			collidingObject = getElementAt(ballTopLeftX, ballTopLeftY + BALL_WIDTH);
-		}
-		/* Since no object found yet, finding if there is an object at bottom right corner of square */
-		if (collidingObject == null) {
-			collidingObject = getElementAt(ballTopLeftX + BALL_WIDTH, ballTopLeftY + BALL_WIDTH);
-		}
-		return collidingObject;
+	private void setupEnviron() {
+		renderer.drawBricks(simulation.getBricks(), BRICK_WIDTH, BRICK_HEIGHT);
+		drawnFromRow = simulation.getMaterializedFromRow();
+		setInitialMouseLocation();
+		render(1.0);
 	}
 	
-/**	Checks the game to see if a turn is over. 
- * 	For a turn to be over:
- * 		1. Ball collides with lower wall
- * 		2. All bricks are finished	
- * @return	true if turn is over, false otherwise.
+/**	Start the game. Consists of serving the ball and starting its motion
+ * 	Running a loop until the turns of the simulation are over, the whole turn of a player is captured inside this loop
  */
-	private boolean checkIfTurnOver() {
-		if (numBricksRemInTurn == 0) {
-			return true;
-		}
-		/* The side length of the square in which the ball is contained
-		 * Checking if the square has a collision, the ball will also have a collision then */
-		double ballLowerYPosition = ballTopLeftY + BALL_WIDTH;
-		if (ballLowerYPosition >= HEIGHT) {
-			return true;
+	private void startGame() {
+		while (!simulation.isGameOver()) {
+			waitForServe();
+			simulation.serve();
+			ticksInTurn = 0;
+			/* This method will finish when a turn is up, or bricks are over */
+			bounceAroundBall();
+			/* Reset the environment for the next turn, or if turns are over just display the environment
+			 * {to show the user what s/he are missing >:) } */
+			simulation.endTurn();
+			setupEnviron();
 		}
-		return false;
+		/* Reporting how well the loop kept to its budgets */
+		System.out.println(gameLoop.getTickStats());
+		System.out.println(gameLoop.getFrameStats());
+		System.out.println(paddleInput);
+		System.out.println(gameLoop.getIdleScheduler());
+		System.out.println(String.format("pixels repainted per frame: %.0f of %d", 
+				renderer.getAveragePixelsPerFrame(), renderer.getBoardPixels()));
 	}
 	
 	
-/**	METHODS RELATED TO PADDLE */
-	
-/**
- * 	Create a paddle and add it to the window
- * 	Mouse move listener has to be setup also for the paddle
+/**	Waits for the player to click before the ball is served, with the game thread parked.
+ * 	The sparks still flying are cleared first, they would hang in the air while the game waits.
+ * 	The autopilot serves straight away, unless the game is idle.
  */
-	private void setupPaddle() {
-		addPaddle();
+	private void waitForServe() {
+		if (autopilot == null) {
+			serveRequested = false;
+			particles.clear();
+			render(1.0);
+			gameLoop.getIdleScheduler().parkWhile(this::isWaitingToServe);
+		}
+		else {
+			gameLoop.getIdleScheduler().parkWhile(this::isIdle);
+		}
+		/* The mouse may have moved while waiting, the paddle only follows it from now on */
+		setInitialMouseLocation();
 	}
 	
-/**	
- * 	Creates a paddle (GRect object) and adds it to the screen at the required co-ordinates
- *  Adds color to the paddle, which is the defined constant
+/**	Setting the initial mouse location, the paddle moves relative to this location
+ * 	If the mouse has not moved yet, it is taken to be at the paddle
  */
-	private void addPaddle() {
-		//Getting paddle start point
-		Point paddleStartPoint = getPaddleInitialPoint();
-		paddle = new GRect((int) paddleStartPoint.getX(), (int) paddleStartPoint.getY(), PADDLE_WIDTH, PADDLE_HEIGHT);
-		paddle.setFilled(true);
-		paddle.setFillColor(PADDLE_COLOR);
-		add(paddle);
+	private void setInitialMouseLocation() {
+		paddleInput.poll();
+		appliedMouseX = paddleInput.hasMouseX() ? paddleInput.getMouseX() : simulation.getPaddleX();
 	}
 	
-/**	Returns the initial starting point of the paddle
- * 	The paddle is a GRect object, the point returned is the x,y co-ordinates of the top left 
- * 	corner of that rectangle.
- * @return	A Point object containing the x,y co-ordinates
- */
-	private Point getPaddleInitialPoint() {
-		Point paddleLocation = new Point();
-		/* The x location of the paddle, i.e. the GRect object which is at the x, y location of the screen. 
-		 * So it will be at centre of screen, minus half the 
-		 * paddle width. */
-		paddleLocation.x = (WIDTH / 2) - (PADDLE_WIDTH / 2);
-		/* The y offset of the paddle is given from the bottom of the screen, 
-		 * hence calculating as such */
-		paddleLocation.y = HEIGHT - PADDLE_Y_OFFSET - PADDLE_WIDTH;
-		return paddleLocation;
-	}
+
 	
-/**	The paddle has to move with the mouse, right upto the edge of the boundary
- * 	The mouse moved event calls this method and passes it the mouse event object.
- * 	Using the mouse event, finding out its x location and hence calculating the paddle location from it
+/**	METHODS RELATED TO BALL MOTION */
+	
+/**	Moves the ball around on the screen, basically the main method in the playing of the game.
+ * 	The game loop steps the simulation at a fixed rate and draws it at the frame rate, until the turn is over
  */
-	private void setupPaddleListener(MouseEvent e) {
-		/*	The distance the paddle has to move, will be positive to move towards right wall and
-		 * 	if negative it will move towards left wall */
-		double distanceToMove = e.getX() - mouseLocation.getX();
-		/* Checking if there will be a collision with the game walls if the paddle moves the required distance */ 
-		if (!checkPaddleCollision(distanceToMove)) {
-			paddle.move(distanceToMove, 0);
-		}
+	private void bounceAroundBall() {
+		gameLoop.run(turn);
 	}
 	
-/**	Given the current paddle location, calculating that if it moves to the new position,
- * 	whether it will collide with the game walls.
- *  The paddle x location is the corner of the GRect object, for collision with left wall, direct 
- *  comparison will be done, for collision with right wall, the width of the paddle 
- *  will also have to be considered.
- * @param distanceToMove This will be negative for paddle to move in left direction 
- * and positive if it has to move towards right
- * @return Returns true if there is a paddle collision with either of the walls
+/**	Steps the simulation with the paddle location from the mouse,
+ * 	removing the bricks from the screen which were hit in the tick
+ * @return false when the turn is over
  */
-	private boolean checkPaddleCollision(double distanceToMove) {
-		//Checking if there is a collision with the left wall
-		if ((distanceToMove < 0) && ((paddle.getX() + distanceToMove) >= 0)) {
-			return false;
+	private boolean tick() {
+		if (undoRequested) {
+			undoLostLife();
+		}
+		/* The paddle always moves by whole pixels, so it can be recorded as an int */
+		int paddleTargetX = (int) getPaddleTargetX();
+		if (recorder != null) {
+			recorder.recordTick(paddleTargetX);
+		}
+		int events = simulation.step(paddleTargetX);
+		paddleInput.markApplied();
+		bricksCleared += simulation.getBricksHitInStep();
+		for (int i=0; i < simulation.getBricksHitInStep(); i++) {
+			int brick = simulation.getBrickHitInStep(i);
+			renderer.removeBrick(simulation.getBrickX(brick), simulation.getBrickY(brick), BRICK_WIDTH, BRICK_HEIGHT);
+			particles.emitBurst(simulation.getBrickX(brick) + BRICK_WIDTH / 2.0, simulation.getBrickY(brick) + BRICK_HEIGHT / 2.0,
+					BRICK_PARTICLES, simulation.getBricks().getColor(brick), PARTICLE_SPEED, PARTICLE_LIFETIME);
+		}
+		if ((events & BreakoutSimulation.EVENT_PADDLE) != 0) {
+			particles.emitBurst(simulation.getBallX() + BALL_RADIUS, simulation.getPaddleY(), PADDLE_PARTICLES,
+					PADDLE_PARTICLE_COLOR, PARTICLE_SPEED / 2, PARTICLE_LIFETIME / 2);
 		}
-		//Checking for collision with right wall
-		else if ((distanceToMove > 0) && ((paddle.getX() + PADDLE_WIDTH + distanceToMove) <= WIDTH)) {
-			return false;
+		if (simulation.getMaterializedFromRow() < drawnFromRow) {
+			drawMaterializedRows();
 		}
-		return true;
+		ticksInTurn++;
+		if (ticksInTurn % UNDO_SNAPSHOT_TICKS == 0) {
+			GameSnapshot snapshot = undoHistory[(ticksInTurn / UNDO_SNAPSHOT_TICKS) % UNDO_HISTORY];
+			snapshot.save(simulation);
+			/* The score consumer has to have counted the bricks of this tick, it is normally there already */
+			eventBus.drain();
+			snapshot.saveScore(score, bricksCleared);
+		}
+		if (((events & BreakoutSimulation.EVENT_TURN_OVER) != 0) && (simulation.getNumBricksRemaining() > 0)) {
+			keepLostLife();
+		}
+		return (events & BreakoutSimulation.EVENT_TURN_OVER) == 0;
 	}
 	
-	
-	
-/**	METHODS RELATED TO BRICKS */	
-	
-/**	Given a GObject, check if it is the brick contained in the top row
- * @param obj The object to check conditions for
- * @return returns true if the object is a brick, false otherwise
- */
-	private boolean checkGObjectIsBrick(GObject obj) {
-		/* Brick is Visible */
-		if (!(obj.isVisible())) {
-			return false;
-		}
-		/* Object height and width should match that of the brick height and width */
-		else if (obj.getWidth() != BRICK_WIDTH) {
-			return false;
+/**	Keeps the oldest snapshot of the turn in which the ball was just lost, for undoing the lost life */
+	private void keepLostLife() {
+		int snapshots = ticksInTurn / UNDO_SNAPSHOT_TICKS;
+		if (snapshots == 0) {
+			lostLife.clear();
+			return;
 		}
-		else if (obj.getHeight() != BRICK_HEIGHT) {
-			return false;
+		int oldest = (snapshots < UNDO_HISTORY) ? 1 : snapshots + 1;
+		lostLife.copyFrom(undoHistory[oldest % UNDO_HISTORY]);
+	}
+	
+/**	Puts the game back to the snapshot kept when the last ball was lost, once per lost life */
+	private void undoLostLife() {
+		undoRequested = false;
+		if ((recorder != null) || !lostLife.isSaved()) {
+			return;
 		}
-		return true;
+		lostLife.restore(simulation);
+		/* The score goes back with the game, once the consumer has stopped adding to it */
+		eventBus.drain();
+		score = lostLife.getScore();
+		bricksCleared = lostLife.getBricksCleared();
+		lostLife.clear();
+		ticksInTurn = 0;
+		setupEnviron();
 	}
 	
-/**	
- * 	Creates the row of bricks near top of window
- * 	the rows are coloured in groups of 2.
- * 	Sets up the instance variable which keeps track of the number of bricks remaining in a turn
- */
-	private void setupBricks() {
-		/*This is the y location of the first row from the top	*/
-		int brickRowXLocation = brickRowStartingLocation();
-		int brickRowYLocation = BRICK_Y_OFFSET;
-		for (int i=1; i <= NBRICK_ROWS; i++) {
-			// Sends the brick row number and gets the color of that row
-			Color colorOfRow = getBrickRowColor(i);
-			//Creates a row at the specified y location with the given color
-			createBrickRow(brickRowXLocation, brickRowYLocation, colorOfRow);
-			/* The next row must be created with the following brick separation	*/
-			brickRowYLocation += (BRICK_HEIGHT + BRICK_SEP);
+/**	Draws the bricks of the rows of a level which were read in the latest tick */
+	private void drawMaterializedRows() {
+		int fromBrick = simulation.getMaterializedFromRow() * BOARD.getBricksPerRow();
+		int toBrick = drawnFromRow * BOARD.getBricksPerRow();
+		for (int brick = fromBrick; brick < toBrick; brick++) {
+			if (simulation.isBrickAlive(brick)) {
+				renderer.drawBrick(simulation.getBrickX(brick), simulation.getBrickY(brick), BRICK_WIDTH, BRICK_HEIGHT, 
+						simulation.getBrickColor(brick));
+			}
 		}
+		drawnFromRow = simulation.getMaterializedFromRow();
 	}
 	
-/**
- * This method takes in the brick row number as a parameter and returns the color associated with that row	
- * @param brickRowNumber contains the row number
- * The row color values are hard coded:
- *  Rows 1,2-Red; Rows 3,4-orange; Rows 5,6-yellow; Rows 7,8-Green; Rows 9,10-cyan
- *  If there are any more rows than 10, a random color is returned
+/**	Draws the ball and paddle where the simulation has them, 
+ * 	in between the location before the latest tick and after it.
+ * @param alpha How far in between the two locations to draw
  */
-	private Color getBrickRowColor(int brickRowNumber) {
-		//Contains the color of the row which is to be returned
-		Color colorOfRow;
-		if ((brickRowNumber == 1) || (brickRowNumber == 2))
-			colorOfRow = Color.RED;
-		else if ((brickRowNumber == 3) || (brickRowNumber == 4))
-			colorOfRow = Color.ORANGE;
-		else if ((brickRowNumber == 5) || (brickRowNumber == 6))
-			colorOfRow = Color.YELLOW;
-		else if ((brickRowNumber == 7) || (brickRowNumber == 8))
-			colorOfRow = Color.GREEN;
-		else if ((brickRowNumber == 9) || (brickRowNumber == 10))
-			colorOfRow = Color.CYAN;
-		else
-			colorOfRow = randomGen.nextColor();
-		return colorOfRow;
+	private void render(double alpha) {
+		long now = System.nanoTime();
+		if (lastFrameNanos != 0) {
+			particles.update(Math.min(MAX_PARTICLE_STEP, (now - lastFrameNanos) / 1e9));
+		}
+		lastFrameNanos = now;
+		renderer.render(interpolate(simulation.getPreviousBallX(), simulation.getBallX(), alpha),
+				interpolate(simulation.getPreviousBallY(), simulation.getBallY(), alpha),
+				interpolate(simulation.getPreviousPaddleX(), simulation.getPaddleX(), alpha),
+				simulation.getPaddleY());
 	}
 	
-/**	
- * Calculates the starting location of the brick rows
- * @return
- */
-	private int brickRowStartingLocation() {
-		/* The starting offset of the first brick, it will be considered to be 0 */
-		int startLocation = 0;
-		/* Total width of a brick row, also considering the separation between bricks 
-		 * If a row has n bricks, it will have n-1 space separators 
-		 * (considering separation for starting and ending bricks too)*/
-		int brickRowWidth = (BRICK_WIDTH * NBRICKS_PER_ROW) + ((NBRICKS_PER_ROW - 1) * BRICK_SEP);
-		/* The space remaining, this has to be divided between the beginning and ending of a row
-		* spaceRemaining is the amount of x distance that has to be divided between the beginning and ending of rows
-		 * so the x offset of the row is half of this distance	*/
-		int spaceRemaining = WIDTH - brickRowWidth;
-		if (spaceRemaining > 0) {
-			startLocation += (spaceRemaining / 2);
-		}
-		return startLocation;
+	private static double interpolate(double from, double to, double alpha) {
+		return from + (to - from) * alpha;
 	}
 	
 	
-/**	Creates a row of bricks starting at the x,y location
- * 	The x location is updated with the width of the brick and the separation between bricks.	
- * @param x	The x location of top left corner of GRect object which is brick
- * @param y	The y location of top left corner of GRect object which is brick
- * @param colorOfRow The color of the brick, it is the same for the row
+/**	METHODS RELATED TO PADDLE */
+	
+/**	The paddle has to move with the mouse, right upto the edge of the boundary
+ * 	The distance the mouse moved since the last tick is added to the location of the paddle, 
+ * 	the simulation checks if the paddle would collide with the walls
+ * @return The x location the paddle should move to
  */
-	private void createBrickRow(int x, int y, Color colorOfRow) {
-		for (int i=0; i<NBRICKS_PER_ROW; i++) {
-			/* creating a rectangle, adding it to the screen	*/
-			GRect rectangle = createBrick(x, y, colorOfRow);
-			add(rectangle);
-			/* the x location of the next brick 	*/
-			x += (BRICK_WIDTH + BRICK_SEP);
+	private double getPaddleTargetX() {
+		if (autopilot != null) {
+			return autopilot.getPaddleTargetX(simulation);
 		}
+		if (!paddleInput.poll()) {
+			return simulation.getPaddleX();
+		}
+		double mouseX = paddleInput.getMouseX();
+		double distanceToMove = mouseX - appliedMouseX;
+		appliedMouseX = mouseX;
+		return simulation.getPaddleX() + distanceToMove;
 	}
 	
-/**
- * Creating a rectangle GRect object
- * The width and height of the rectangle are specified by the constants defined	
- * @param x @param y the x, y location of the top right corner of the rectangle
- * @param colorOfRect the color to fill in the rectangle
- */
-	private GRect createBrick(int x, int y, Color colorOfRect) {
-		GRect rectangle = new GRect(x, y, BRICK_WIDTH, BRICK_HEIGHT);
-		rectangle.setFilled(true);
-		rectangle.setFillColor(colorOfRect);
-		return rectangle;
-	}
-
+	
 	
 /**
  * 	INSTANCE VARIABLES
  */
 	
 /**	Random generator class instance
- * This is used to generate random colours and random numbers as the case may be	*/
+ * This is used to seed the simulation	*/
 	private RandomGenerator randomGen = RandomGenerator.getInstance();
 	
-/**	The paddle, which is used to bounce the ball */
-	private GRect paddle;
+/**	The simulation of the game, which is drawn by this class */
+	private BreakoutSimulation simulation;
+	
+/**	The loop which runs each turn of the game */
+	private GameLoop gameLoop = new GameLoop(TICKS_PER_SECOND, FRAMES_PER_SECOND, MAX_TICKS_PER_FRAME);
+	
+/**	The turn being played, as run by the game loop */
+	private GameLoop.Game turn = new GameLoop.Game() {
+		public boolean tick() {
+			return Breakout.this.tick();
+		}
+		public void render(double alpha) {
+			Breakout.this.render(alpha);
+		}
+		public boolean isIdle() {
+			return Breakout.this.isIdle();
+		}
+	};
+	
+/**	The instrumentation of the game loop, if it is switched on */
+	private GameMetrics metrics;
+	
+/**	Records the game, if recording is switched on */
+	private ReplayRecorder recorder;
 	
-/**	Current mouse location. This is saved and used later, 
- * when the mouse moves to calculate change in position	
+/**	Draws the board on the canvas */
+	private BoardRenderer renderer;
+	
+/**	The sparks, drawn by the renderer, and when they were last moved */
+	private ParticleSystem particles;
+	private long lastFrameNanos;
+	
+/**	Plays the sounds of the collisions, null if the sound could not be loaded */
+	private SoundMixer soundMixer;
+	
+/**	The collisions are published on this, for the sounds, the score and the stats */
+	private CollisionEventBus eventBus;
+	
+/**	The score, and the number of collisions of each kind (wall, paddle, brick, turn over), 
+ * 	each only written by its consumer's thread, and read once the bus has stopped.
+ * 	The game thread also reads and puts back the score, for undoing a lost life, after draining the bus.
  */
-	private Point mouseLocation;
+	private long score;
+	private final long[] eventCounts = new long[4];
+	
+/**	The number of bricks removed in the game */
+	private int bricksCleared;
 	
-/**	Keeps track of the number of bricks remaining in the game, for a turn
- * 	During the course of the game, as the ball collides with a brick, that brick is removed.
- * 	Once all the bricks are removed, the game ends, this variable helps keep track of that
+/**	The first row of the level drawn on the board, rows read by the simulation above it still need drawing */
+	private int drawnFromRow;
+	
+/**	Current mouse location. This is published by the mouse listener and used by the game loop, 
+ * to calculate change in position	
  */
-	private int numBricksRemInTurn = NBRICKS_PER_ROW * NBRICK_ROWS;
+	private PaddleInput paddleInput = new PaddleInput((long) (1e9 / FRAMES_PER_SECOND));
+	
+/**	Moves the paddle instead of the mouse, if the autopilot is switched on */
+	private Autopilot autopilot;
+	
+/**	Snapshots of the turn being played, for undoing a lost life, and the one kept when the last ball was lost */
+	private GameSnapshot[] undoHistory;
+	private GameSnapshot lostLife;
+	
+/**	The number of ticks played in the turn, or since the lost life was undone */
+	private int ticksInTurn;
+	
+/**	Set by the AWT thread when U is pressed, the game loop undoes the lost life at its next tick */
+	private volatile boolean undoRequested;
 	
-/**	The ball which bounces around and causes the game to progess */
-	private GOval ball;
+/**	What makes the game idle, set by the AWT thread: paused with P, the window minimized or not focused */
+	private volatile boolean paused, minimized, unfocused;
 	
-/** The velocity of the ball is kept track using these variables */
-	private double ballvx, ballvy;
+/**	Set by the AWT thread when the mouse is clicked, the ball is served once it is */
+	private volatile boolean serveRequested;
 	
-/**	The co-ordinates of the top left corner of the square the ball is contained by */
-	private double ballTopLeftX, ballTopLeftY;
+/**	The x location of the mouse when the paddle was last moved */
+	private double appliedMouseX;
 	
 }
@@ -0,0 +1,356 @@
+/**
+ * File: BreakoutBenchmark.java
+
+ * The workloads of the benchmarks of the hot paths of the game, and modes which measure the game as a whole.
+ * The hot paths are measured with JMH, by SimulationBenchmark under src/jmh/java, which reports the mean and
+ * error of the time per operation and, with -prof gc, the bytes allocated per operation, which should be 0
+ * for everything on the per-tick path. JMH only runs benchmarks in a named package, which can not name the
+ * classes of the game in the default package, so it looks the workloads up here by name. Each call of a
+ * workload is one operation.
+ 
+ * Workloads:
+ * 	step	- one tick of the simulation: moving the paddle and ball and sweeping for collisions 
+ * 			  against the walls, paddle and bricks, for each ball speed
+ * 	turn	- a whole turn, from the serve to the ball reaching the lower wall or the bricks running out
+ * 	brickAt	- a lookup in the brick grid, for each board size
+ 
+ * Ball speeds are multiples of the normal speed, the simulation is stepped at a lower rate so that 
+ * the ball moves further each tick. Board sizes are a number of bricks, in a square grid.
+ 
+ * SteadyStateGame is the whole per-tick path of the game the way Breakout runs it (the game loop, mouse input,
+ * simulation, sounds, metrics and drawing the board offscreen). AllocationTest under src/test/java fails if
+ * the game thread allocates a single byte in it once it is warmed up, so a change which brings back garbage
+ * on the tick path is caught before it causes GC pauses in the game.
+ 
+ * The board stress mode plays whole games on square boards of tiny bricks (BoardConfig.stress), from tens
+ * to millions of bricks, and reports for each size how long setting up a game takes, the heap used once it
+ * is set up, the size of a snapshot of the state, and the time per tick with the autopilot playing.
+ * A tick should cost about the same on any board, since only the bricks near the ball are looked at.
+ 
+ * The idle check runs the game loop at its normal rate the way Breakout does, with the collisions published
+ * to consumers and the sound mixer running, first being played and then idle (as when paused or minimized),
+ * and reports the CPU used by the whole process in each, as a percentage of one core. Before the game loop
+ * could park, an idle game cost as much as one being played. Then it wakes the idle game a number of times
+ * and reports how long the game thread took to run again.
+ 
+ * Run with:  gradle jmh
+ *            java -cp .:acm.jar BreakoutBenchmark board [bricks per side, e.g. 10,100,1000] [ticks]
+ *            java -cp .:acm.jar BreakoutBenchmark idle [seconds]
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.function.IntSupplier;
+
+public class BreakoutBenchmark {
+
+/**	The default board sizes of the stress mode, in bricks per side, and the number of ticks timed on each */
+	private static final String DEFAULT_STRESS_SIDES = "10,100,1000,2000";
+	private static final int DEFAULT_STRESS_TICKS = 2000000;
+
+/**	The default number of seconds the CPU is measured for while playing and while idle, and the number of wakes timed */
+	private static final double DEFAULT_IDLE_SECONDS = 5;
+	private static final int IDLE_WAKES = 50;
+
+	public static void main(String[] args) {
+		if ((args.length > 0) && args[0].equals("board")) {
+			int[] sides = parseList((args.length > 1) ? args[1] : DEFAULT_STRESS_SIDES);
+			int ticks = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_STRESS_TICKS;
+			stressBoards(sides, ticks);
+		}
+		else if ((args.length > 0) && args[0].equals("idle")) {
+			measureIdle((args.length > 1) ? Double.parseDouble(args[1]) : DEFAULT_IDLE_SECONDS);
+		}
+		else {
+			System.err.println("Usage: BreakoutBenchmark board [bricks per side] [ticks] | idle [seconds], the hot paths are run by gradle jmh");
+			System.exit(1);
+		}
+	}
+
+/**	@return a workload stepping a game at the given ball speed, an operation is a tick, it returns the events */
+	public static IntSupplier stepWorkload(int speed) {
+		return new StepBenchmark(speed);
+	}
+
+/**	@return a workload playing whole turns at the given ball speed, an operation is a turn, it returns the ticks */
+	public static IntSupplier turnWorkload(int speed) {
+		return new TurnBenchmark(speed);
+	}
+
+/**	@return a workload looking up points in a square board of about the given number of bricks, it returns the brick */
+	public static IntSupplier brickAtWorkload(int bricks) {
+		return new BrickAtBenchmark(bricks);
+	}
+
+/**	Sets up and plays a game on a square stress board of each size, printing a line for each.
+ * 	The heap is measured after a GC with the simulation still referenced, less the heap before it was created.
+ */
+	private static void stressBoards(int[] sides, int ticks) {
+		System.out.println(String.format("%-12s %-12s %10s %10s %12s %10s %10s", "bricks", "board",
+				"setup ms", "heap MB", "state bytes", "ns/tick", "cleared"));
+		Runtime runtime = Runtime.getRuntime();
+		for (int side : sides) {
+			BoardConfig board = BoardConfig.stress(side, side);
+			System.gc();
+			long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+			long start = System.nanoTime();
+			BreakoutSimulation simulation = new BreakoutSimulation(side, board);
+			simulation.newGame();
+			long setupNanos = System.nanoTime() - start;
+			System.gc();
+			long heap = runtime.totalMemory() - runtime.freeMemory() - heapBefore;
+			Autopilot autopilot = new Autopilot(Double.POSITIVE_INFINITY);
+			simulation.serve();
+			/* The first tenth of the ticks warm up the JIT */
+			int warmup = ticks / 10;
+			long tickStart = 0;
+			for (int tick = -warmup; tick < ticks; tick++) {
+				if (tick == 0) {
+					tickStart = System.nanoTime();
+				}
+				int events = simulation.step(autopilot.getPaddleTargetX(simulation));
+				if ((events & BreakoutSimulation.EVENT_TURN_OVER) != 0) {
+					simulation.endTurn();
+					if (simulation.isGameOver()) {
+						simulation.newGame();
+					}
+					simulation.serve();
+				}
+			}
+			long tickNanos = System.nanoTime() - tickStart;
+			int cleared = board.getBrickCount() - simulation.getNumBricksRemaining();
+			System.out.println(String.format("%-12s %-12s %10.1f %10.1f %12d %10.1f %10d", side + "x" + side,
+					board.getWidth() + "x" + board.getHeight(), setupNanos / 1e6, heap / 1e6,
+					simulation.getStateSize(), (double) tickNanos / ticks, cleared));
+		}
+	}
+
+/**	Runs the game on a thread of its own at the normal rates, measures the CPU of the process while it is played
+ * 	and while it is idle, and then the time it takes to wake up
+ */
+	private static void measureIdle(double seconds) {
+		SteadyStateGame game = new SteadyStateGame();
+		CollisionEventBus eventBus = new CollisionEventBus();
+		/* As many consumers as Breakout has */
+		for (String name : new String[] {"sound events", "score events", "collision stats"}) {
+			eventBus.addConsumer(name, (tick, publishNanos, kind, brick, x, y, endOfBatch) -> { });
+		}
+		game.simulation.setEventBus(eventBus);
+		eventBus.start();
+		GameLoop loop = new GameLoop(120, 60, 8);
+		IdleScheduler scheduler = loop.getIdleScheduler();
+		scheduler.setListener(idle -> eventBus.setIdle(idle));
+		game.ticksLeft = Integer.MAX_VALUE;
+		Thread gameThread = new Thread(() -> loop.run(game), "game");
+		gameThread.setDaemon(true);
+		gameThread.start();
+		com.sun.management.OperatingSystemMXBean os =
+				(com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+		/* The first second warms up the JIT */
+		sleepSeconds(1);
+		for (boolean idle : new boolean[] {false, true}) {
+			game.idle = idle;
+			sleepSeconds(0.5);
+			long cpuBefore = os.getProcessCpuTime();
+			long before = System.nanoTime();
+			sleepSeconds(seconds);
+			double cpu = (double) (os.getProcessCpuTime() - cpuBefore) / (System.nanoTime() - before);
+			System.out.println(String.format("%-8s %6.2f%% of a core", idle ? "idle" : "playing", 100 * cpu));
+		}
+		for (int i=0; i < IDLE_WAKES; i++) {
+			game.idle = false;
+			scheduler.wake();
+			sleepSeconds(0.02);
+			game.idle = true;
+			sleepSeconds(0.02);
+		}
+		game.idle = false;
+		scheduler.wake();
+		System.out.println(scheduler);
+		eventBus.stop();
+		game.stop();
+	}
+
+	private static void sleepSeconds(double seconds) {
+		try {
+			Thread.sleep((long) (seconds * 1000));
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+/**	@return the number of bytes allocated by this thread so far */
+	static long allocatedBytes() {
+		return THREAD_BEAN.getCurrentThreadAllocatedBytes();
+	}
+
+/**	Kept, since looking the bean up allocates */
+	private static final com.sun.management.ThreadMXBean THREAD_BEAN = 
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	private static int[] parseList(String list) {
+		String[] parts = list.split(",");
+		int[] values = new int[parts.length];
+		for (int i=0; i < parts.length; i++) {
+			values[i] = Integer.parseInt(parts[i].trim());
+		}
+		return values;
+	}
+
+/**	Moves the paddle towards the ball, the way a player would, to keep the game going */
+	static double trackBall(BreakoutSimulation simulation) {
+		return simulation.getBallX() + (BreakoutSimulation.BALL_WIDTH - BreakoutSimulation.PADDLE_WIDTH) / 2.0;
+	}
+
+/**	Steps a game, starting a new turn or game whenever one ends */
+	private static class StepBenchmark implements IntSupplier {
+
+		StepBenchmark(int speed) {
+			simulation = new BreakoutSimulation(speed);
+			simulation.setTicksPerSecond(BreakoutSimulation.REFERENCE_TICKS_PER_SECOND / speed);
+			simulation.newGame();
+			simulation.serve();
+		}
+
+		public int getAsInt() {
+			int events = simulation.step(trackBall(simulation));
+			if ((events & BreakoutSimulation.EVENT_TURN_OVER) != 0) {
+				simulation.endTurn();
+				if (simulation.isGameOver()) {
+					simulation.newGame();
+				}
+				simulation.serve();
+			}
+			return events;
+		}
+
+		private final BreakoutSimulation simulation;
+	}
+
+/**	The per-tick path of Breakout without the window: the mouse input is published and polled on the game
+ * 	thread, and the board is drawn into the renderer's offscreen images, which are never shown
+ */
+	static class SteadyStateGame implements GameLoop.Game {
+
+		SteadyStateGame() {
+			simulation = new BreakoutSimulation(1);
+			simulation.setTicksPerSecond(120);
+			metrics = new GameMetrics(1000000, 1000000);
+			simulation.setMetrics(metrics);
+			simulation.newGame();
+			simulation.serve();
+			renderer = new BoardRenderer(BreakoutSimulation.WIDTH, BreakoutSimulation.HEIGHT, BreakoutSimulation.BALL_RADIUS,
+					BreakoutSimulation.PADDLE_WIDTH, BreakoutSimulation.PADDLE_HEIGHT, java.awt.Color.BLACK, java.awt.Color.BLACK);
+			renderer.drawBricks(simulation.getBricks(), BreakoutSimulation.BRICK_WIDTH, BreakoutSimulation.BRICK_HEIGHT);
+			try {
+				soundMixer = new SoundMixer(new java.io.File("bounce.au"), 16666666);
+				soundMixer.start();
+			}
+			catch (java.io.IOException | javax.sound.sampled.UnsupportedAudioFileException e) {
+				System.out.println("steady state game: no sound, " + e.getMessage());
+			}
+		}
+
+		public boolean tick() {
+			paddleInput.publish((int) trackBall(simulation));
+			paddleInput.poll();
+			int events = simulation.step(paddleInput.getMouseX());
+			paddleInput.markApplied();
+			if (soundMixer != null) {
+				soundMixer.triggerEvents(events);
+			}
+			for (int i=0; i < simulation.getBricksHitInStep(); i++) {
+				int brick = simulation.getBrickHitInStep(i);
+				renderer.removeBrick(simulation.getBrickX(brick), simulation.getBrickY(brick),
+						BreakoutSimulation.BRICK_WIDTH, BreakoutSimulation.BRICK_HEIGHT);
+			}
+			if ((events & BreakoutSimulation.EVENT_TURN_OVER) != 0) {
+				simulation.endTurn();
+				if (simulation.isGameOver()) {
+					simulation.newGame();
+				}
+				simulation.serve();
+				renderer.drawBricks(simulation.getBricks(), BreakoutSimulation.BRICK_WIDTH, BreakoutSimulation.BRICK_HEIGHT);
+				turns++;
+			}
+			return --ticksLeft > 0;
+		}
+
+		public void render(double alpha) {
+			renderer.render(simulation.getBallX(), simulation.getBallY(), simulation.getPaddleX(), simulation.getPaddleY());
+			metrics.recordPhase(GameMetrics.RENDER, 0);
+		}
+
+		public boolean isIdle() {
+			return idle;
+		}
+
+		void stop() {
+			if (soundMixer != null) {
+				soundMixer.stop();
+			}
+		}
+
+		private final BreakoutSimulation simulation;
+		private final GameMetrics metrics;
+		private final BoardRenderer renderer;
+		private final PaddleInput paddleInput = new PaddleInput(1000000);
+		private SoundMixer soundMixer;
+		int ticksLeft;
+		long turns;
+		volatile boolean idle;
+	}
+
+/**	Plays whole turns, the operation is a turn */
+	private static class TurnBenchmark implements IntSupplier {
+
+		TurnBenchmark(int speed) {
+			simulation = new BreakoutSimulation(speed);
+			simulation.setTicksPerSecond(BreakoutSimulation.REFERENCE_TICKS_PER_SECOND / speed);
+			simulation.newGame();
+		}
+
+		public int getAsInt() {
+			int ticks = 1;
+			simulation.serve();
+			while ((simulation.step(trackBall(simulation)) & BreakoutSimulation.EVENT_TURN_OVER) == 0) {
+				ticks++;
+			}
+			simulation.endTurn();
+			if (simulation.isGameOver()) {
+				simulation.newGame();
+			}
+			return ticks;
+		}
+
+		private final BreakoutSimulation simulation;
+	}
+
+/**	Looks up random points on a square board of bricks */
+	private static class BrickAtBenchmark implements IntSupplier {
+
+		BrickAtBenchmark(int bricks) {
+			int side = Math.max(1, (int) Math.sqrt(bricks));
+			grid = new BrickGrid(0, 0, BreakoutSimulation.BRICK_WIDTH, BreakoutSimulation.BRICK_HEIGHT,
+					BreakoutSimulation.BRICK_SEP, side, side);
+			java.util.Random random = new java.util.Random(bricks);
+			for (int i=0; i < POINTS; i++) {
+				pointX[i] = random.nextDouble() * side * (BreakoutSimulation.BRICK_WIDTH + BreakoutSimulation.BRICK_SEP);
+				pointY[i] = random.nextDouble() * side * (BreakoutSimulation.BRICK_HEIGHT + BreakoutSimulation.BRICK_SEP);
+			}
+		}
+
+		public int getAsInt() {
+			int point = next++ & (POINTS - 1);
+			return grid.brickAt(pointX[point], pointY[point]);
+		}
+
+		private static final int POINTS = 1 << 16;
+		private final BrickGrid grid;
+		private final double[] pointX = new double[POINTS], pointY = new double[POINTS];
+
+/**	The point looked up next, they are taken in turn */
+		private int next;
+	}
+
+}
@@ -0,0 +1,986 @@
+/**
+ * File: BreakoutSimulation.java
+
+ * The headless simulation core of the breakout game.
+ * All of the game rules which used to live inside the Breakout GraphicsProgram are here,
+ * the ball, paddle and bricks are kept as plain fields and arrays so that no acm or AWT
+ * objects are touched while the game is advancing.
+ * The Breakout class is now only a view over this core, it draws whatever state is held here.
+
+
+ *	NOTES:
+ *	The step method does not allocate, so the core can be run in a tight loop at millions of ticks per second
+ *	for batch runs, replays and AI players.
+ *	The randomness of the game comes from a small seeded generator kept in a single long,
+ *	so two simulations created with the same seed and given the same input play out identically.
+ *	The geometry of the board is given by a BoardConfig when the simulation is created, the constants
+ *	below are the normal board (BoardConfig.DEFAULT), which is what the other classes assume unless they
+ *	take the config of the simulation.
+
+ */
+
+import java.awt.Color;
+
+public class BreakoutSimulation {
+
+/** Dimensions of game board */
+	public static final int WIDTH = 400;
+	public static final int HEIGHT = 600;
+
+/** Dimensions of the paddle */
+	public static final int PADDLE_WIDTH = 60;
+	public static final int PADDLE_HEIGHT = 10;
+
+/** Offset of the paddle up from the bottom */
+	public static final int PADDLE_Y_OFFSET = 30;
+
+/** Number of bricks per row */
+	public static final int NBRICKS_PER_ROW = 10;
+
+/** Number of rows of bricks */
+	public static final int NBRICK_ROWS = 10;
+
+/** Separation between bricks */
+	public static final int BRICK_SEP = 4;
+
+/** Width of a brick */
+	public static final int BRICK_WIDTH =
+	  (WIDTH - (NBRICKS_PER_ROW - 1) * BRICK_SEP) / NBRICKS_PER_ROW;
+
+/** Height of a brick */
+	public static final int BRICK_HEIGHT = 8;
+
+/** Radius of the ball in pixels */
+	public static final int BALL_RADIUS = 10;
+
+/**	The length of the side of the square in which the ball object is contained */
+	public static final int BALL_WIDTH = BALL_RADIUS * 2;
+
+/**	The initial value of the velocity of the ball in the y direction */
+	public static final double BALL_Y_VELOCITY = 5.0;
+
+/**	The minimum and max range of the x velocities possible,
+ * 	on some collisions a random x velocity is generated which uses this range.
+ */
+	public static final double BALL_X_LOWER_VELOCITY = 2.0;
+	public static final double BALL_X_UPPER_VELOCITY = 5.0;
+
+/** Offset of the top brick row from the top */
+	public static final int BRICK_Y_OFFSET = 70;
+
+/** Number of turns */
+	public static final int NTURNS = 3;
+
+/**	The tick rate the velocities are given in, the ball moves by its velocity once every 42 milliseconds */
+	public static final double REFERENCE_TICKS_PER_SECOND = 1000.0 / 42;
+
+/**	Total number of bricks on the board */
+	public static final int NBRICKS = NBRICKS_PER_ROW * NBRICK_ROWS;
+
+/**	Flags returned by the step method, a single step can raise more than one of these.
+ * 	EVENT_WALL - the ball bounced off the left, right or upper wall
+ * 	EVENT_PADDLE - the ball bounced off the paddle
+ * 	EVENT_BRICK - the ball hit a brick, the bricks which were removed are given by getBrickHitInStep
+ * 	EVENT_TURN_OVER - the ball reached the lower wall or all the bricks are finished
+ */
+	public static final int EVENT_WALL = 1;
+	public static final int EVENT_PADDLE = 2;
+	public static final int EVENT_BRICK = 4;
+	public static final int EVENT_TURN_OVER = 8;
+
+/**	Creates a simulation of the normal board whose random choices are all driven by the given seed.
+ * 	The board is not setup until newGame is called.
+ * @param seed The seed for the random generator of this game
+ */
+	public BreakoutSimulation(long seed) {
+		this(seed, BoardConfig.DEFAULT);
+	}
+
+/**	Creates a simulation of a board whose random choices are all driven by the given seed.
+ * 	The board is not setup until newGame is called.
+ * @param seed The seed for the random generator of this game
+ * @param config The geometry of the board, the paddle and the ball
+ */
+	public BreakoutSimulation(long seed, BoardConfig config) {
+		randomState = seed;
+		this.config = config;
+		boardWidth = config.getWidth();
+		boardHeight = config.getHeight();
+		paddleWidth = config.getPaddleWidth();
+		paddleHeight = config.getPaddleHeight();
+		paddleYOffset = config.getPaddleYOffset();
+		bricksPerRow = config.getBricksPerRow();
+		brickRows = config.getBrickRows();
+		brickCount = config.getBrickCount();
+		brickSep = config.getBrickSep();
+		brickWidth = config.getBrickWidth();
+		brickHeight = config.getBrickHeight();
+		brickYOffset = config.getBrickYOffset();
+		ballRadius = config.getBallRadius();
+		ballWidth = config.getBallWidth();
+		brickGrid = new BrickGrid(config.getBrickRowStartX(), brickYOffset, brickWidth, brickHeight, brickSep, bricksPerRow, brickRows);
+		bricks = new BrickStore(brickCount);
+	}
+
+/**	Seeds the random generator again, so the same simulation can be reused for another game,
+ * 	which plays the same as a new simulation created with the seed
+ * @param seed The seed for the random generator, newGame should be called next
+ */
+	public void setSeed(long seed) {
+		randomState = seed;
+	}
+
+/**	Starts a new game, sets up the environment for the first turn.
+ * 	Same as the beginning of the run method of the original GraphicsProgram.
+ */
+	public void newGame() {
+		turnsPlayed = 0;
+		if (level != null) {
+			setupLevel();
+		}
+		else {
+			materializedFromRow = 0;
+			unmaterializedBricks = 0;
+			setupBricks();
+		}
+		setupEnviron();
+	}
+
+/**	Sets the level the following games are played on, instead of the normal rows of bricks.
+ * 	The rows of the level are only read from the level pack when the ball gets near them,
+ * 	starting from the bottom row.
+ * @param level The level, its size must match the brick grid. null goes back to the normal rows.
+ */
+	public void setLevel(LevelPack.Level level) {
+		if ((level != null) && ((level.getRows() != brickRows) || (level.getColumns() != bricksPerRow))) {
+			throw new IllegalArgumentException("Level is " + level.getRows() + "x" + level.getColumns() + 
+					", the board is " + brickRows + "x" + bricksPerRow);
+		}
+		this.level = level;
+	}
+
+/**	Starts the motion of the ball for a turn, by choosing its initial velocity.
+ */
+	public void serve() {
+		initializeInitialVelocityOfBall();
+	}
+
+/**	Ends the current turn, the board is reset for the next turn,
+ * 	or if turns are over, it is left setup to display the environment.
+ */
+	public void endTurn() {
+		turnsPlayed++;
+		setupEnviron();
+	}
+
+/**	Sets the rate at which the simulation is stepped, the ball moves by a part of its velocity
+ * 	each step so that the game runs at the same speed whatever the rate.
+ * @param ticksPerSecond The number of times step is called in a second
+ */
+	public void setTicksPerSecond(double ticksPerSecond) {
+		if (ticksPerSecond <= 0) {
+			throw new IllegalArgumentException("Tick rate must be positive");
+		}
+		stepScale = REFERENCE_TICKS_PER_SECOND / ticksPerSecond;
+	}
+
+/**	Sets the range of the random x velocities chosen on a serve and on some collisions,
+ * 	by default this is BALL_X_LOWER_VELOCITY to BALL_X_UPPER_VELOCITY
+ * @param lower @param upper The range of the speed, lower must be positive and at most upper
+ */
+	public void setXVelocityRange(double lower, double upper) {
+		if ((lower <= 0) || (upper < lower)) {
+			throw new IllegalArgumentException("X velocity range must be positive, with lower at most upper");
+		}
+		xVelocityLower = lower;
+		xVelocityUpper = upper;
+	}
+
+/**	Checks if all the turns in the game have been played
+ * @return true if no turns are left
+ */
+	public boolean isGameOver() {
+		return turnsPlayed >= NTURNS;
+	}
+
+/**	Advances the game by a single tick.
+ * 	The paddle is moved to the requested location (if it stays within the walls),
+ * 	then the ball is moved and its collisions are handled.
+ * 	Nothing is allocated here.
+ * @param paddleTargetX The x location the paddle should move to, this is the top left corner of the paddle
+ * @return A combination of the EVENT_ flags for whatever happened in the tick
+ */
+	public int step(double paddleTargetX) {
+		if (metrics != null) {
+			metrics.beginTick();
+		}
+		previousBallX = ballTopLeftX;
+		previousBallY = ballTopLeftY;
+		previousPaddleX = paddleX;
+		movePaddle(paddleTargetX - paddleX);
+		if (materializedFromRow > 0) {
+			materializeRowsNearBall();
+		}
+		int events = moveBall();
+		if (checkIfTurnOver()) {
+			events |= EVENT_TURN_OVER;
+			if (eventBus != null) {
+				eventBus.publish(tick, EVENT_TURN_OVER, -1, ballTopLeftX, ballTopLeftY);
+			}
+		}
+		if (metrics != null) {
+			metrics.endTick();
+		}
+		tick++;
+		return events;
+	}
+
+/**	Sets the metrics the ticks of the simulation are counted in
+ * @param metrics The metrics, or null to stop counting
+ */
+	public void setMetrics(GameMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+/**	Sets the bus every collision is published on, from the thread which steps the simulation
+ * @param eventBus The bus, or null to stop publishing
+ */
+	public void setEventBus(CollisionEventBus eventBus) {
+		this.eventBus = eventBus;
+	}
+
+/**	@return the number of steps since the simulation was created, this is not part of the state
+ * 	so it keeps counting up when an earlier state is read back
+ */
+	public long getTick() {
+		return tick;
+	}
+
+
+/**	@return the number of bytes written by writeState */
+	public int getStateSize() {
+		return 8 + 11 * 8 + 4 * 4 + bricks.getStateSize();
+	}
+
+/**	Writes everything which changes as the game is played: the random generator, 
+ * 	the ball, the paddle, the bricks and the turn. The layout of the board and the 
+ * 	settings of the simulation are not written, they are the same for the whole game.
+ * @param buffer Written from its position, it needs getStateSize bytes remaining
+ */
+	public void writeState(java.nio.ByteBuffer buffer) {
+		buffer.putLong(randomState);
+		buffer.putDouble(ballTopLeftX).putDouble(ballTopLeftY).putDouble(ballvx).putDouble(ballvy);
+		buffer.putDouble(previousBallX).putDouble(previousBallY).putDouble(previousPaddleX);
+		buffer.putDouble(paddleX).putDouble(paddleY);
+		buffer.putDouble(xVelocityLower).putDouble(xVelocityUpper);
+		buffer.putInt(turnsPlayed).putInt(lastBrickHit);
+		buffer.putInt(materializedFromRow).putInt(unmaterializedBricks);
+		bricks.writeState(buffer);
+	}
+
+/**	Reads back the state written by writeState, into a simulation of the same game
+ * 	(created with the same seed and settings, after newGame)
+ */
+	public void readState(java.nio.ByteBuffer buffer) {
+		randomState = buffer.getLong();
+		ballTopLeftX = buffer.getDouble();
+		ballTopLeftY = buffer.getDouble();
+		ballvx = buffer.getDouble();
+		ballvy = buffer.getDouble();
+		previousBallX = buffer.getDouble();
+		previousBallY = buffer.getDouble();
+		previousPaddleX = buffer.getDouble();
+		paddleX = buffer.getDouble();
+		paddleY = buffer.getDouble();
+		xVelocityLower = buffer.getDouble();
+		xVelocityUpper = buffer.getDouble();
+		turnsPlayed = buffer.getInt();
+		lastBrickHit = buffer.getInt();
+		int fromRow = buffer.getInt();
+		unmaterializedBricks = buffer.getInt();
+		/* The layout of the rows of a level which had been read by then is needed before their state,
+		 * and rows read since then are taken out again, when going back to an earlier state */
+		while (materializedFromRow > fromRow) {
+			materializeRow(--materializedFromRow, false);
+		}
+		while (materializedFromRow < fromRow) {
+			unmaterializeRow(materializedFromRow++);
+		}
+		bricksHitInStep = 0;
+		bricks.readState(buffer);
+	}
+
+/**	Sets up the environment for the turn, the bricks are all brought back,
+ * 	the paddle and ball are placed at their starting locations.
+ */
+	private void setupEnviron() {
+		bricks.reset();
+		setupPaddle();
+		setBallAtInitialLocation();
+	}
+
+
+/**	METHODS RELATED TO BALL MOTION */
+
+/**	Places the ball at the center of the screen.
+ * 	Slight adjustments have to be made as x,y co-ordinates are the top left corner and not the center of ball
+ */
+	private void setBallAtInitialLocation() {
+		ballTopLeftX = (boardWidth / 2) - (ballRadius / 2);
+		ballTopLeftY = (boardHeight / 2) - (ballRadius / 2);
+		previousBallX = ballTopLeftX;
+		previousBallY = ballTopLeftY;
+		ballvx = 0;
+		ballvy = 0;
+		lastBrickHit = -1;
+		bricksHitInStep = 0;
+	}
+
+/**	Sets the initial velocity of the ball, at the beginning of the turn.
+ * 	Sets the ballvy to a constant, this velocity is initially always positive (in the downwards direction)
+ * 	randomly chooses the ballvx value, it can be positive or negative, which is also randomly chosen
+ */
+	private void initializeInitialVelocityOfBall() {
+		ballvy = BALL_Y_VELOCITY;
+		ballvx = getRandomXVelocity();
+		if (nextBoolean(0.5)) {
+			ballvx = -ballvx;
+		}
+	}
+
+/**	Generate a random velocity in the x velocity range of the simulation.
+ *  @return a random x velocity
+ */
+	private double getRandomXVelocity() {
+		return nextDouble(xVelocityLower, xVelocityUpper);
+	}
+
+/**	Inverts the x velocity, setting it to a random velocity
+ */
+	private void invertXVelocity() {
+		ballvx = -1 * Math.signum(ballvx) * getRandomXVelocity();
+	}
+
+/**	Inverts the y velocity, simply multiplying it by -1
+*/
+	private void invertYVelocity() {
+		ballvy = -ballvy;
+	}
+
+/**	Move the ball, ballvx and ballvy are the delta change in position in a reference tick,
+ * 	they are scaled for the tick rate of the simulation.
+ * 	The collisions are found by sweeping the square of the ball along its path, so the ball 
+ * 	can not pass through a brick or the paddle however far it moves in a tick.
+ * 	The earliest impact on the path is found, the ball is moved up to it and the collision is handled,
+ * 	then the rest of the tick is swept again with the new velocity. This is repeated, in order, 
+ * 	for up to MAX_IMPACTS_PER_STEP impacts.
+ * @return The EVENT_ flags of the collisions which happened
+ */
+	private int moveBall() {
+		bricksHitInStep = 0;
+		int events = handlePaddleOverlap();
+		double remaining = 1.0;
+		for (int impact = 0; (impact < MAX_IMPACTS_PER_STEP) && (remaining > 0); impact++) {
+			double dx = ballvx * stepScale;
+			double dy = ballvy * stepScale;
+			getCollidingObject(dx, dy, remaining);
+			ballTopLeftX += dx * impactTime;
+			ballTopLeftY += dy * impactTime;
+			remaining -= impactTime;
+			if (impactObject == NOTHING) {
+				break;
+			}
+			int event = handleBallCollision(impactObject, impactOnXFace);
+			events |= event;
+			if (metrics != null) {
+				metrics.countCollision((event == EVENT_WALL) ? GameMetrics.WALL : 
+					(event == EVENT_PADDLE) ? GameMetrics.PADDLE : GameMetrics.BRICK);
+			}
+			if (eventBus != null) {
+				eventBus.publish(tick, event, (impactObject >= 0) ? impactObject : -1, ballTopLeftX, ballTopLeftY);
+			}
+		}
+		return events;
+	}
+
+/**	Handle the changes which happen in the game as the ball collides with an object.
+ * 	The following collisions are handled here:
+ * 	 with left wall - invert x velocity, choose a random value for x velocity
+ *   with right wall - invert x velocity, choose a random value for x velocity
+ *   with upper wall - invert y velocity
+ *   with top of paddle - invert y velocity
+ *   with side of paddle - invert x velocity, choose a random value for x velocity
+ *   with bricks - take a hit point off the brick, removing it if it has none left, and invert the velocity 
+ *   	across the side of the brick which was hit
+ *   Lower wall collision NOT handled, that is handled in checkIfTurnOver method
+ * @param collidingObject The object the ball collided with
+ * @param onXFace True if the ball hit the left or right side of the object
+ * @return The EVENT_ flag of the collision
+ */
+	private int handleBallCollision(int collidingObject, boolean onXFace) {
+		if ((collidingObject == LEFT_WALL) || (collidingObject == RIGHT_WALL)) {
+			invertXVelocity();
+			return EVENT_WALL;
+		}
+		else if (collidingObject == UPPER_WALL) {
+			invertYVelocity();
+			return EVENT_WALL;
+		}
+		else if (collidingObject == PADDLE) {
+			if (onXFace) {
+				invertXVelocity();
+			}
+			else {
+				invertYVelocity();
+			}
+			return EVENT_PADDLE;
+		}
+		/* Collision with a brick, the velocity is inverted away from the brick so there is no chance of a 're-collision' */
+		if (onXFace) {
+			ballvx = -ballvx;
+		}
+		else {
+			invertYVelocity();
+		}
+		if (bricks.hit(collidingObject)) {
+			lastBrickHit = collidingObject;
+			bricksHit[bricksHitInStep++] = collidingObject;
+		}
+		return EVENT_BRICK;
+	}
+
+/**	The paddle moves before the ball, so it can be moved on top of the ball.
+ * 	In that case there is nothing to sweep, the ball is bounced off the paddle in the same way
+ * 	as the original game did, off the top if it is moving down onto it or off the side.
+ * @return EVENT_PADDLE if the ball was bounced off the paddle
+ */
+	private int handlePaddleOverlap() {
+		if (!rectsOverlap(paddleX, paddleY, paddleWidth, paddleHeight)) {
+			return 0;
+		}
+		if (checkCollisionWithTopOfPaddle()) {
+			if (!checkYVelocityUpwards()) {
+				invertYVelocity();
+			}
+		}
+		else if (checkXVelocityTowardsRight() == (ballTopLeftX < paddleX)) {
+			/* Only inverting if the ball is moving further into the paddle */
+			invertXVelocity();
+		}
+		if (metrics != null) {
+			metrics.countCollision(GameMetrics.PADDLE);
+		}
+		if (eventBus != null) {
+			eventBus.publish(tick, EVENT_PADDLE, -1, ballTopLeftX, ballTopLeftY);
+		}
+		return EVENT_PADDLE;
+	}
+
+/** Check if the velocity of ball is in +ve x-direction, i.e. towards right
+ * @return True if velocity is to right
+ */
+	private boolean checkXVelocityTowardsRight() {
+		return (ballTopLeftX + ballvx) > ballTopLeftX;
+	}
+
+/**	Check if the velocity of the ball is in upwards direction, this is -ve y direction
+ * @return True if y velocity is upwards, or -ve y
+ */
+	private boolean checkYVelocityUpwards() {
+		return (ballTopLeftY + ballvy) < ballTopLeftY;
+	}
+
+/**	Check if the ball collides with top surface of the paddle
+ * 	The ball can be imagined to be contained in a square,
+ * 	checking if either lower corner is within the x co-ordinates of the paddle and
+ * 	if the lower side is at or below the top of the paddle
+ * @return true if the collision is with top surface, false otherwise
+ */
+	private boolean checkCollisionWithTopOfPaddle() {
+		double paddleTopRightX = paddleX + paddleWidth;
+		boolean withinX = ((ballTopLeftX >= paddleX) && (ballTopLeftX <= paddleTopRightX)) ||
+				(((ballTopLeftX + ballWidth) >= paddleX) && ((ballTopLeftX + ballWidth) <= paddleTopRightX));
+		boolean withinY = (ballTopLeftY + ballWidth) >= paddleY;
+		return withinX && withinY;
+	}
+
+/**	Finds the first object the square of the ball hits, as it moves by dx, dy in the time remaining.
+ * 	The walls, the paddle and the bricks in the grid cells the path passes over are checked.
+ * 	The result is left in impactTime, impactObject and impactOnXFace, so that nothing is allocated.
+ * 	If nothing is hit, impactObject is NOTHING and impactTime is the time remaining.
+ * @param dx @param dy The distance the ball moves in a whole tick
+ * @param remaining The part of the tick which is left, between 0 and 1
+ */
+	private void getCollidingObject(double dx, double dy, double remaining) {
+		impactTime = remaining;
+		impactObject = NOTHING;
+		impactOnXFace = false;
+
+		/* Walls, the ball hits a wall only if it is moving towards it */
+		if (dx < 0) {
+			recordImpact(LEFT_WALL, Math.max(0, -ballTopLeftX / dx), true);
+		}
+		else if (dx > 0) {
+			recordImpact(RIGHT_WALL, Math.max(0, (boardWidth - ballWidth - ballTopLeftX) / dx), true);
+		}
+		if (dy < 0) {
+			recordImpact(UPPER_WALL, Math.max(0, -ballTopLeftY / dy), false);
+		}
+
+		sweepRect(PADDLE, paddleX, paddleY, paddleWidth, paddleHeight, dx, dy);
+
+		/* Bricks, only the cells of the grid covered by the path of the ball need to be checked */
+		double pathLeft = ballTopLeftX + Math.min(0, dx * impactTime);
+		double pathRight = ballTopLeftX + Math.max(0, dx * impactTime) + ballWidth;
+		double pathTop = ballTopLeftY + Math.min(0, dy * impactTime);
+		double pathBottom = ballTopLeftY + Math.max(0, dy * impactTime) + ballWidth;
+		int firstColumn = Math.max(0, brickGrid.getColumn(pathLeft));
+		int lastColumn = Math.min(bricksPerRow - 1, brickGrid.getColumn(pathRight));
+		int firstRow = Math.max(0, brickGrid.getRow(pathTop));
+		int lastRow = Math.min(brickRows - 1, brickGrid.getRow(pathBottom));
+		if ((metrics != null) && (lastRow >= firstRow) && (lastColumn >= firstColumn)) {
+			metrics.countProbes((lastRow - firstRow + 1) * (lastColumn - firstColumn + 1));
+		}
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				int brick = row * bricksPerRow + column;
+				if (bricks.isAlive(brick)) {
+					sweepRect(brick, bricks.getX(brick), bricks.getY(brick), brickWidth, brickHeight, dx, dy);
+				}
+			}
+		}
+	}
+
+/**	Finds the time the square of the ball, moving by dx, dy, enters the rectangle.
+ * 	This is a swept AABB test, the time the square overlaps the rectangle on the x axis
+ * 	and on the y axis is calculated, the square is inside the rectangle when both overlap.
+ * 	The side hit is the axis on which the overlap started last.
+ * 	If the time is earlier than the earliest impact found so far, the impact is recorded.
+ */
+	private void sweepRect(int object, double rx, double ry, double width, double height, double dx, double dy) {
+		double xEntry, xExit, yEntry, yExit;
+		if (dx > 0) {
+			xEntry = (rx - (ballTopLeftX + ballWidth)) / dx;
+			xExit = (rx + width - ballTopLeftX) / dx;
+		}
+		else if (dx < 0) {
+			xEntry = (rx + width - ballTopLeftX) / dx;
+			xExit = (rx - (ballTopLeftX + ballWidth)) / dx;
+		}
+		else if ((ballTopLeftX < rx + width) && (ballTopLeftX + ballWidth > rx)) {
+			xEntry = Double.NEGATIVE_INFINITY;
+			xExit = Double.POSITIVE_INFINITY;
+		}
+		else {
+			return;
+		}
+		if (dy > 0) {
+			yEntry = (ry - (ballTopLeftY + ballWidth)) / dy;
+			yExit = (ry + height - ballTopLeftY) / dy;
+		}
+		else if (dy < 0) {
+			yEntry = (ry + height - ballTopLeftY) / dy;
+			yExit = (ry - (ballTopLeftY + ballWidth)) / dy;
+		}
+		else if ((ballTopLeftY < ry + height) && (ballTopLeftY + ballWidth > ry)) {
+			yEntry = Double.NEGATIVE_INFINITY;
+			yExit = Double.POSITIVE_INFINITY;
+		}
+		else {
+			return;
+		}
+		double entry = Math.max(xEntry, yEntry);
+		double exit = Math.min(xExit, yExit);
+		/* A square which already overlaps, or is moving away from the rectangle, does not hit it */
+		if ((entry < 0) || (entry >= exit)) {
+			return;
+		}
+		recordImpact(object, entry, xEntry > yEntry);
+	}
+
+/**	Keeps the impact if it is earlier than the earliest one found so far,
+ * 	on a tie the object checked first is kept.
+ */
+	private void recordImpact(int object, double time, boolean onXFace) {
+		if (time < impactTime) {
+			impactTime = time;
+			impactObject = object;
+			impactOnXFace = onXFace;
+		}
+	}
+
+/**	Checks if the square of the ball overlaps the rectangle with the top left corner at rx, ry
+ */
+	private boolean rectsOverlap(double rx, double ry, double width, double height) {
+		return (ballTopLeftX < rx + width) && (ballTopLeftX + ballWidth > rx) &&
+				(ballTopLeftY < ry + height) && (ballTopLeftY + ballWidth > ry);
+	}
+
+/**	Checks the game to see if a turn is over.
+ * 	For a turn to be over:
+ * 		1. Ball collides with lower wall
+ * 		2. All bricks are finished
+ * @return	true if turn is over, false otherwise.
+ */
+	private boolean checkIfTurnOver() {
+		if (getNumBricksRemaining() == 0) {
+			return true;
+		}
+		return (ballTopLeftY + ballWidth) >= boardHeight;
+	}
+
+
+/**	METHODS RELATED TO PADDLE */
+
+/**	Places the paddle at its starting location, in the centre of the screen
+ * 	with the y offset given from the bottom of the screen
+ */
+	private void setupPaddle() {
+		paddleX = (boardWidth / 2) - (paddleWidth / 2);
+		paddleY = boardHeight - paddleYOffset - paddleWidth;
+		previousPaddleX = paddleX;
+	}
+
+/**	Moves the paddle by the given distance, if it does not collide with the game walls
+ * @param distanceToMove This will be negative for paddle to move in left direction
+ * and positive if it has to move towards right
+ */
+	private void movePaddle(double distanceToMove) {
+		if (!checkPaddleCollision(distanceToMove)) {
+			paddleX += distanceToMove;
+		}
+	}
+
+/**	Given the current paddle location, calculating that if it moves to the new position,
+ * 	whether it will collide with the game walls.
+ * @return Returns true if there is a paddle collision with either of the walls
+ */
+	private boolean checkPaddleCollision(double distanceToMove) {
+		if ((distanceToMove < 0) && ((paddleX + distanceToMove) >= 0)) {
+			return false;
+		}
+		else if ((distanceToMove > 0) && ((paddleX + paddleWidth + distanceToMove) <= boardWidth)) {
+			return false;
+		}
+		return true;
+	}
+
+
+/**	METHODS RELATED TO BRICKS */
+
+/**	Lays out all the bricks in the store, the rows are coloured in groups of 2.
+ * 	This is done once a game, each turn the store is reset to this layout.
+ */
+	private void setupBricks() {
+		int brickRowXLocation = config.getBrickRowStartX();
+		int brickRowYLocation = brickYOffset;
+		int brick = 0;
+		for (int i=1; i <= brickRows; i++) {
+			int colorOfRow = getBrickRowColor(i);
+			int x = brickRowXLocation;
+			for (int j=0; j < bricksPerRow; j++) {
+				bricks.setBrick(brick, x, brickRowYLocation, colorOfRow, 1);
+				brick++;
+				x += (brickWidth + brickSep);
+			}
+			brickRowYLocation += (brickHeight + brickSep);
+		}
+	}
+
+/**	Starts a game on the level, no bricks are read yet, they are all counted as not yet materialized */
+	private void setupLevel() {
+		bricks.clear();
+		materializedFromRow = brickRows;
+		unmaterializedBricks = level.getBrickCount();
+	}
+
+/**	Reads the rows of the level which the ball could reach in the next step from the level pack.
+ * 	The ball can not move further than its speed in a step, so it can not reach a row
+ * 	which is further than that (and a row more) above it.
+ */
+	private void materializeRowsNearBall() {
+		double reach = Math.abs(ballvx * stepScale) + Math.abs(ballvy * stepScale) + ballWidth + brickHeight + brickSep;
+		int row = Math.max(0, brickGrid.getRow(ballTopLeftY - reach));
+		while (materializedFromRow > row) {
+			materializeRow(--materializedFromRow, true);
+		}
+	}
+
+/**	Reads a row of the level into the brick store
+ * @param row The row to read
+ * @param place If true the bricks are put on the board and no longer counted as not materialized, 
+ * otherwise only their layout is set
+ */
+	private void materializeRow(int row, boolean place) {
+		for (int column = 0; column < bricksPerRow; column++) {
+			int hitPoints = level.getHitPoints(row, column);
+			if (hitPoints == 0) {
+				continue;
+			}
+			int brick = row * bricksPerRow + column;
+			if (place) {
+				bricks.addBrick(brick, brickGrid.getBrickX(brick), brickGrid.getBrickY(brick), level.getColor(row, column), hitPoints);
+				unmaterializedBricks--;
+			}
+			else {
+				bricks.setBrick(brick, brickGrid.getBrickX(brick), brickGrid.getBrickY(brick), level.getColor(row, column), hitPoints);
+			}
+		}
+	}
+
+/**	Takes the bricks of a row of the level out of the layout, as if the row had not been read yet */
+	private void unmaterializeRow(int row) {
+		for (int brick = row * bricksPerRow; brick < (row + 1) * bricksPerRow; brick++) {
+			bricks.setBrick(brick, brickGrid.getBrickX(brick), brickGrid.getBrickY(brick), 0, 0);
+		}
+	}
+
+/**
+ * Returns the color (as an RGB value) associated with a brick row
+ * 	Rows 1,2-Red; Rows 3,4-orange; Rows 5,6-yellow; Rows 7,8-Green; Rows 9,10-cyan
+ *  If there are any more rows than 10, a random color is returned
+ * @param brickRowNumber contains the row number, starting at 1
+ */
+	private int getBrickRowColor(int brickRowNumber) {
+		if ((brickRowNumber == 1) || (brickRowNumber == 2))
+			return RED;
+		else if ((brickRowNumber == 3) || (brickRowNumber == 4))
+			return ORANGE;
+		else if ((brickRowNumber == 5) || (brickRowNumber == 6))
+			return YELLOW;
+		else if ((brickRowNumber == 7) || (brickRowNumber == 8))
+			return GREEN;
+		else if ((brickRowNumber == 9) || (brickRowNumber == 10))
+			return CYAN;
+		return 0xFF000000 | (int) (nextLong() & 0xFFFFFF);
+	}
+
+/**
+ * Calculates the starting x location of the brick rows of the normal board, the space left over
+ * by a row is divided between its beginning and end
+ * @return the x location of the first brick in a row
+ */
+	public static int brickRowStartingLocation() {
+		int startLocation = 0;
+		int brickRowWidth = (BRICK_WIDTH * NBRICKS_PER_ROW) + ((NBRICKS_PER_ROW - 1) * BRICK_SEP);
+		int spaceRemaining = WIDTH - brickRowWidth;
+		if (spaceRemaining > 0) {
+			startLocation += (spaceRemaining / 2);
+		}
+		return startLocation;
+	}
+
+
+/**	METHODS RELATED TO RANDOM NUMBERS
+ * 	A SplitMix64 generator, the whole state is the single randomState variable.
+ */
+
+	private long nextLong() {
+		long z = (randomState += 0x9E3779B97F4A7C15L);
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+/**	@return a double value in the range [0, 1) */
+	private double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+/**	@return a double value in the range [low, high) */
+	private double nextDouble(double low, double high) {
+		return low + (high - low) * nextDouble();
+	}
+
+/**	@return true with the probability p */
+	private boolean nextBoolean(double p) {
+		return nextDouble() < p;
+	}
+
+
+/**	GETTERS, used by the view and other drivers of the simulation */
+
+	public double getBallX() {
+		return ballTopLeftX;
+	}
+
+	public double getBallY() {
+		return ballTopLeftY;
+	}
+
+	public double getBallVX() {
+		return ballvx;
+	}
+
+	public double getBallVY() {
+		return ballvy;
+	}
+
+	public double getPaddleX() {
+		return paddleX;
+	}
+
+/**	The location of the ball and paddle before the latest step, used to draw between steps */
+	public double getPreviousBallX() {
+		return previousBallX;
+	}
+
+	public double getPreviousBallY() {
+		return previousBallY;
+	}
+
+	public double getPreviousPaddleX() {
+		return previousPaddleX;
+	}
+
+	public double getPaddleY() {
+		return paddleY;
+	}
+
+	public int getBrickX(int brick) {
+		return bricks.getX(brick);
+	}
+
+	public int getBrickY(int brick) {
+		return bricks.getY(brick);
+	}
+
+/**	@return the color of the brick as an RGB value */
+	public int getBrickColor(int brick) {
+		return bricks.getColor(brick);
+	}
+
+	public boolean isBrickAlive(int brick) {
+		return bricks.isAlive(brick);
+	}
+
+	public int getNumBricksRemaining() {
+		return bricks.getLiveCount() + unmaterializedBricks;
+	}
+
+/**	@return the first row of the level which has been read, the rows below it have been read too */
+	public int getMaterializedFromRow() {
+		return materializedFromRow;
+	}
+
+/**	@return the geometry of the board */
+	public BoardConfig getConfig() {
+		return config;
+	}
+
+/**	@return the bricks of the board */
+	public BrickStore getBricks() {
+		return bricks;
+	}
+
+/**	@return the number of bricks removed in the latest step */
+	public int getBricksHitInStep() {
+		return bricksHitInStep;
+	}
+
+/**	@return the i-th brick removed in the latest step, in the order they were hit */
+	public int getBrickHitInStep(int i) {
+		return bricksHit[i];
+	}
+
+/**	@return the index of the brick removed by the last EVENT_BRICK, or -1 */
+	public int getLastBrickHit() {
+		return lastBrickHit;
+	}
+
+	public int getTurnsPlayed() {
+		return turnsPlayed;
+	}
+
+
+/**	The most impacts handled in a single step, the rest of the step is dropped after these many */
+	private static final int MAX_IMPACTS_PER_STEP = 8;
+
+/**	Values used for the objects which are not a brick */
+	private static final int NOTHING = -1;
+	private static final int PADDLE = -2;
+	private static final int LEFT_WALL = -3;
+	private static final int RIGHT_WALL = -4;
+	private static final int UPPER_WALL = -5;
+
+/**	Brick colors as RGB values */
+	private static final int RED = Color.RED.getRGB();
+	private static final int ORANGE = Color.ORANGE.getRGB();
+	private static final int YELLOW = Color.YELLOW.getRGB();
+	private static final int GREEN = Color.GREEN.getRGB();
+	private static final int CYAN = Color.CYAN.getRGB();
+
+
+/**
+ * 	INSTANCE VARIABLES
+ */
+
+/**	The geometry of the board, and its values kept in fields for the step */
+	private final BoardConfig config;
+	private final int boardWidth, boardHeight;
+	private final int paddleWidth, paddleHeight, paddleYOffset;
+	private final int bricksPerRow, brickRows, brickCount, brickSep, brickWidth, brickHeight, brickYOffset;
+	private final int ballRadius, ballWidth;
+
+/**	Index of the brick layout, used to find the brick under a point */
+	private final BrickGrid brickGrid;
+
+/**	The state of the random generator */
+	private long randomState;
+
+/**	The top left corner of the paddle */
+	private double paddleX, paddleY;
+
+/**	The bricks of the board, brick i is in row (i / bricksPerRow).
+ * 	Keeps track of the bricks remaining in the game, for a turn */
+	private final BrickStore bricks;
+
+/**	The brick removed by the most recent brick collision */
+	private int lastBrickHit = -1;
+
+/**	The level the game is played on, null for the normal rows of bricks */
+	private LevelPack.Level level;
+
+/**	The rows of the level from this one down have been read into the brick store */
+	private int materializedFromRow;
+
+/**	The number of bricks of the level in rows which have not been read yet */
+	private int unmaterializedBricks;
+
+/**	The bricks removed in the latest step, the first bricksHitInStep are valid */
+	private final int[] bricksHit = new int[MAX_IMPACTS_PER_STEP];
+	private int bricksHitInStep;
+
+/**	The earliest impact found by getCollidingObject */
+	private double impactTime;
+	private int impactObject;
+	private boolean impactOnXFace;
+
+/**	The number of turns which have been completed */
+	private int turnsPlayed;
+
+/** The velocity of the ball is kept track using these variables */
+	private double ballvx, ballvy;
+
+/**	The co-ordinates of the top left corner of the square the ball is contained by */
+	private double ballTopLeftX, ballTopLeftY;
+
+/**	The location of the ball and paddle before the latest step */
+	private double previousBallX, previousBallY, previousPaddleX;
+
+/**	The range of the random x velocities */
+	private double xVelocityLower = BALL_X_LOWER_VELOCITY, xVelocityUpper = BALL_X_UPPER_VELOCITY;
+
+/**	The metrics the ticks are counted in, null if they are not counted */
+	private GameMetrics metrics;
+
+/**	The bus the collisions are published on, null if they are not published */
+	private CollisionEventBus eventBus;
+
+/**	The number of steps since the simulation was created */
+	private long tick;
+
+/**	The part of the velocity of the ball it moves by in a step */
+	private double stepScale = 1.0;
+
+}
@@ -0,0 +1,100 @@
+/**
+ * File: BrickGrid.java
+
+ * A uniform grid index over the brick layout of the breakout game.
+ * The bricks are laid out in a fixed grid (see setupBricks in BreakoutSimulation), every brick
+ * is at a known multiple of the brick width/height plus the separation from the first brick.
+ * So the brick under a point can be found with a couple of divisions, instead of checking
+ * every object on the board like the canvas getElementAt does.
+ 
+ * Each cell of the grid is one brick and the separation to its right and below it,
+ * a point in the separation is not on any brick.
+ */
+public class BrickGrid {
+
+/**	Value returned by brickAt when there is no brick cell at the point */
+	public static final int NO_BRICK = -1;
+
+/**	Creates the index for a layout of bricks
+ * @param originX @param originY the top left corner of the first brick of the first row
+ * @param brickWidth @param brickHeight the dimensions of a brick
+ * @param brickSep the separation between bricks, both in a row and between rows
+ * @param bricksPerRow @param rows the number of bricks in a row and the number of rows
+ */
+	public BrickGrid(int originX, int originY, int brickWidth, int brickHeight, int brickSep, int bricksPerRow, int rows) {
+		this.originX = originX;
+		this.originY = originY;
+		this.brickWidth = brickWidth;
+		this.brickHeight = brickHeight;
+		this.cellWidth = brickWidth + brickSep;
+		this.cellHeight = brickHeight + brickSep;
+		this.bricksPerRow = bricksPerRow;
+		this.rows = rows;
+	}
+
+/**	Finds the brick whose rectangle contains the point x, y
+ * 	The edges follow the same rule as the acm rectangles, the left and top edges are inside 
+ * 	the brick and the right and bottom edges are not.
+ * @return the index of the brick (row * bricksPerRow + column), or NO_BRICK if the point is not on a brick
+ */
+	public int brickAt(double x, double y) {
+		double dx = x - originX;
+		double dy = y - originY;
+		if ((dx < 0) || (dy < 0)) {
+			return NO_BRICK;
+		}
+		int column = (int) (dx / cellWidth);
+		int row = (int) (dy / cellHeight);
+		if ((column >= bricksPerRow) || (row >= rows)) {
+			return NO_BRICK;
+		}
+		/* Checking the point is on the brick and not in the separation after it */
+		if ((dx - column * cellWidth >= brickWidth) || (dy - row * cellHeight >= brickHeight)) {
+			return NO_BRICK;
+		}
+		return row * bricksPerRow + column;
+	}
+
+/**	@return the column of the cell containing x, this can be outside the grid */
+	public int getColumn(double x) {
+		return (int) Math.floor((x - originX) / cellWidth);
+	}
+
+/**	@return the row of the cell containing y, this can be outside the grid */
+	public int getRow(double y) {
+		return (int) Math.floor((y - originY) / cellHeight);
+	}
+
+/**	@return the number of bricks the index covers */
+	public int getBrickCount() {
+		return bricksPerRow * rows;
+	}
+
+/**	@return the x location of the top left corner of the brick */
+	public int getBrickX(int brick) {
+		return originX + (brick % bricksPerRow) * cellWidth;
+	}
+
+/**	@return the y location of the top left corner of the brick */
+	public int getBrickY(int brick) {
+		return originY + (brick / bricksPerRow) * cellHeight;
+	}
+
+	
+/**
+ * 	INSTANCE VARIABLES
+ */
+	
+/**	The top left corner of the first brick */
+	private final int originX, originY;
+
+/**	The dimensions of a brick */
+	private final int brickWidth, brickHeight;
+
+/**	The dimensions of a cell, a brick plus the separation after it */
+	private final int cellWidth, cellHeight;
+
+/**	The number of bricks in a row, and number of rows */
+	private final int bricksPerRow, rows;
+
+}
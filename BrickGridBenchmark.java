@@ -0,0 +1,105 @@
+/**
+ * File: BrickGridBenchmark.java
+
+ * Measures the cost of finding the brick under a point, with boards of growing size.
+ * For each board size the BrickGrid lookup is timed, along with a linear scan over all the
+ * bricks, which is what the canvas getElementAt does for every corner probe.
+ * The grid lookup should cost the same whatever the size of the board, the scan grows with it.
+ 
+ * Run with:  java -cp .:acm.jar BrickGridBenchmark
+ */
+public class BrickGridBenchmark {
+
+/**	The number of bricks per row and rows of the boards which are measured */
+	private static final int[][] BOARD_SIZES = {
+		{10, 10}, {100, 10}, {100, 100}, {200, 200}, {500, 500}
+	};
+
+/**	The number of lookups timed for each board */
+	private static final int LOOKUPS = 1 << 20;
+
+/**	The linear scan is only timed up to this number of bricks, beyond that it takes too long */
+	private static final int MAX_SCANNED_BRICKS = 40000;
+
+/**	Dimensions of the bricks on the measured boards */
+	private static final int BRICK_WIDTH = 36;
+	private static final int BRICK_HEIGHT = 8;
+	private static final int BRICK_SEP = 4;
+
+	public static void main(String[] args) {
+		System.out.println("bricks      grid ns/lookup   scan ns/lookup");
+		for (int[] size : BOARD_SIZES) {
+			measure(size[0], size[1]);
+		}
+	}
+
+/**	Times the lookups on one board and prints a line of results
+ * @param bricksPerRow @param rows the size of the board
+ */
+	private static void measure(int bricksPerRow, int rows) {
+		BrickGrid grid = new BrickGrid(0, 0, BRICK_WIDTH, BRICK_HEIGHT, BRICK_SEP, bricksPerRow, rows);
+		int bricks = grid.getBrickCount();
+		int[] brickX = new int[bricks];
+		int[] brickY = new int[bricks];
+		for (int i=0; i < bricks; i++) {
+			brickX[i] = grid.getBrickX(i);
+			brickY[i] = grid.getBrickY(i);
+		}
+		double[] pointX = new double[LOOKUPS];
+		double[] pointY = new double[LOOKUPS];
+		java.util.Random random = new java.util.Random(bricks);
+		double boardWidth = bricksPerRow * (BRICK_WIDTH + BRICK_SEP);
+		double boardHeight = rows * (BRICK_HEIGHT + BRICK_SEP);
+		for (int i=0; i < LOOKUPS; i++) {
+			pointX[i] = random.nextDouble() * boardWidth;
+			pointY[i] = random.nextDouble() * boardHeight;
+		}
+
+		/* Warming up before the grid is timed */
+		long found = 0;
+		for (int i=0; i < 5; i++) {
+			found += gridLookups(grid, pointX, pointY, LOOKUPS);
+		}
+		long start = System.nanoTime();
+		found += gridLookups(grid, pointX, pointY, LOOKUPS);
+		double gridNanos = (double) (System.nanoTime() - start) / LOOKUPS;
+
+		String scanResult = "-";
+		if (bricks <= MAX_SCANNED_BRICKS) {
+			/* Fewer lookups for the scan, every lookup walks the whole board */
+			int scanLookups = Math.max(1000, LOOKUPS / Math.max(1, bricks / 16));
+			found += scanLookups(brickX, brickY, pointX, pointY, scanLookups);
+			start = System.nanoTime();
+			found += scanLookups(brickX, brickY, pointX, pointY, scanLookups);
+			scanResult = String.format("%.1f", (double) (System.nanoTime() - start) / scanLookups);
+		}
+		System.out.println(String.format("%-11d %-16.1f %s   (%d hits)", bricks, gridNanos, scanResult, found));
+	}
+
+/**	@return the number of points which were found to be on a brick using the grid */
+	private static long gridLookups(BrickGrid grid, double[] pointX, double[] pointY, int lookups) {
+		long found = 0;
+		for (int i=0; i < lookups; i++) {
+			if (grid.brickAt(pointX[i], pointY[i]) != BrickGrid.NO_BRICK) {
+				found++;
+			}
+		}
+		return found;
+	}
+
+/**	@return the number of points which were found to be on a brick by checking every brick */
+	private static long scanLookups(int[] brickX, int[] brickY, double[] pointX, double[] pointY, int lookups) {
+		long found = 0;
+		for (int i=0; i < lookups; i++) {
+			double x = pointX[i], y = pointY[i];
+			for (int b = brickX.length - 1; b >= 0; b--) {
+				if ((x >= brickX[b]) && (y >= brickY[b]) && (x < brickX[b] + BRICK_WIDTH) && (y < brickY[b] + BRICK_HEIGHT)) {
+					found++;
+					break;
+				}
+			}
+		}
+		return found;
+	}
+
+}
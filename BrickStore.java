@@ -0,0 +1,193 @@
+/**
+ * File: BrickStore.java
+
+ * Holds the bricks of a board as arrays of primitives, rather than an object for each brick.
+ * Brick i has its location, color and hit points at index i of each array, and which bricks are
+ * still on the board is a bitset, one bit for each brick in an array of longs.
+ 
+ *	NOTES:
+ *	Removing a brick is clearing its bit. Resetting the board for a turn copies the starting bits 
+ *	and hit points back over the current ones, nothing is created or thrown away.
+ *	The number of live bricks is kept as a counter so it can be checked every tick,
+ *	countAlive recounts it from the bitset.
+ */
+public class BrickStore {
+
+/**	The most hit points a brick can have, so that they fit in a byte of the state */
+	public static final int MAX_HIT_POINTS = Byte.MAX_VALUE;
+
+/**	Creates a store with room for the given number of bricks, none of which are on the board
+ * @param capacity The number of bricks
+ */
+	public BrickStore(int capacity) {
+		this.capacity = capacity;
+		x = new int[capacity];
+		y = new int[capacity];
+		color = new int[capacity];
+		hitPoints = new int[capacity];
+		initialHitPoints = new int[capacity];
+		int words = (capacity + 63) >>> 6;
+		alive = new long[words];
+		initialAlive = new long[words];
+	}
+
+/**	Sets up a brick, it is put on the board the next time the store is reset
+ * @param brick The index of the brick
+ * @param brickX @param brickY The top left corner of the brick
+ * @param brickColor The color of the brick, as an RGB value
+ * @param brickHitPoints The number of hits it takes to remove the brick, 0 leaves the brick off the board
+ */
+	public void setBrick(int brick, int brickX, int brickY, int brickColor, int brickHitPoints) {
+		if ((brickHitPoints < 0) || (brickHitPoints > MAX_HIT_POINTS)) {
+			throw new IllegalArgumentException("Hit points must be between 0 and " + MAX_HIT_POINTS);
+		}
+		x[brick] = brickX;
+		y[brick] = brickY;
+		color[brick] = brickColor;
+		initialHitPoints[brick] = brickHitPoints;
+		if (brickHitPoints > 0) {
+			initialAlive[brick >>> 6] |= 1L << brick;
+		}
+		else {
+			initialAlive[brick >>> 6] &= ~(1L << brick);
+		}
+	}
+
+/**	Sets up a brick and puts it on the board straight away, for bricks which are added part way
+ * 	through a turn. Like any other brick it is put back on the board when the store is reset.
+ */
+	public void addBrick(int brick, int brickX, int brickY, int brickColor, int brickHitPoints) {
+		setBrick(brick, brickX, brickY, brickColor, brickHitPoints);
+		hitPoints[brick] = brickHitPoints;
+		if ((brickHitPoints > 0) && !isAlive(brick)) {
+			alive[brick >>> 6] |= 1L << brick;
+			liveCount++;
+		}
+	}
+
+/**	Removes every brick from the layout and from the board */
+	public void clear() {
+		java.util.Arrays.fill(initialAlive, 0);
+		java.util.Arrays.fill(initialHitPoints, 0);
+		reset();
+	}
+
+/**	Puts every brick which was setup back on the board, with all of its hit points */
+	public void reset() {
+		System.arraycopy(initialAlive, 0, alive, 0, alive.length);
+		System.arraycopy(initialHitPoints, 0, hitPoints, 0, capacity);
+		liveCount = countAlive();
+	}
+
+/**	@return true if the brick is on the board */
+	public boolean isAlive(int brick) {
+		return (alive[brick >>> 6] & (1L << brick)) != 0;
+	}
+
+/**	Takes a hit point off a brick, removing it from the board if it has none left
+ * @return true if the brick was removed
+ */
+	public boolean hit(int brick) {
+		if (--hitPoints[brick] > 0) {
+			return false;
+		}
+		remove(brick);
+		return true;
+	}
+
+/**	Removes a brick from the board, if it is on it */
+	public void remove(int brick) {
+		long bit = 1L << brick;
+		if ((alive[brick >>> 6] & bit) != 0) {
+			alive[brick >>> 6] &= ~bit;
+			liveCount--;
+		}
+	}
+
+/**	@return the number of bricks on the board, counted from the bitset */
+	public int countAlive() {
+		int count = 0;
+		for (int i=0; i < alive.length; i++) {
+			count += Long.bitCount(alive[i]);
+		}
+		return count;
+	}
+
+/**	@return the number of bricks on the board */
+	public int getLiveCount() {
+		return liveCount;
+	}
+
+/**	@return the number of bytes written by writeState */
+	public int getStateSize() {
+		return alive.length * 8 + capacity;
+	}
+
+/**	Writes which bricks are on the board and their hit points, a byte each.
+ * 	The layout of the bricks is not written, it is the same every turn.
+ */
+	public void writeState(java.nio.ByteBuffer buffer) {
+		for (int i=0; i < alive.length; i++) {
+			buffer.putLong(alive[i]);
+		}
+		for (int i=0; i < capacity; i++) {
+			buffer.put((byte) hitPoints[i]);
+		}
+	}
+
+/**	Reads back the state written by writeState, into a store with the same layout */
+	public void readState(java.nio.ByteBuffer buffer) {
+		for (int i=0; i < alive.length; i++) {
+			alive[i] = buffer.getLong();
+		}
+		for (int i=0; i < capacity; i++) {
+			hitPoints[i] = buffer.get();
+		}
+		liveCount = countAlive();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int getX(int brick) {
+		return x[brick];
+	}
+
+	public int getY(int brick) {
+		return y[brick];
+	}
+
+/**	@return the color of the brick as an RGB value */
+	public int getColor(int brick) {
+		return color[brick];
+	}
+
+	public int getHitPoints(int brick) {
+		return hitPoints[brick];
+	}
+
+	
+/**
+ * 	INSTANCE VARIABLES
+ */
+	
+/**	The number of bricks the store has room for */
+	private final int capacity;
+
+/**	The top left corner of each brick */
+	private final int[] x, y;
+
+/**	The color of each brick, as an RGB value */
+	private final int[] color;
+
+/**	The hit points each brick has left, and has when the board is reset */
+	private final int[] hitPoints, initialHitPoints;
+
+/**	Bit i is set if brick i is on the board, now and when the board is reset */
+	private final long[] alive, initialAlive;
+
+/**	The number of bricks on the board */
+	private int liveCount;
+
+}
@@ -0,0 +1,350 @@
+/**
+ * File: CollisionEventBus.java
+
+ * Hands the collisions of the game from the simulation to whatever wants to know about them,
+ * like the scoring, the sounds and the stats, without any of their work being done in the tick.
+ * The simulation is the only producer, it writes each collision into the next slot of a ring:
+ * the tick, the time it was published, the kind of collision (one of the BreakoutSimulation.EVENT_ flags),
+ * the brick hit and where the ball was. Each consumer has a thread of its own, which reads the events it has not
+ * seen yet in a batch, and then marks them as read.
+ * A slot is only written again once every consumer has read it. If the slowest consumer is a whole
+ * ring behind, the producer waits for it (backpressure), so no event is lost or overwritten.
+
+ *	NOTES:
+ *	The ring is arrays of primitives, one array for each part of an event, nothing is allocated
+ *	to publish or to read an event.
+ *	The producer only looks at where the consumers are when it has used up the slots it knew were free,
+ *	once a ring's worth of events, so the cost of publishing does not grow with the number of consumers.
+ *	Only the simulation thread may publish. Consumers are added before the bus is started.
+ *	A consumer with nothing to read spins for a little while, and then sleeps in short naps, so the
+ *	producer never has to wake anybody up. While the game is idle (setIdle) nothing is published, so the
+ *	consumers sleep in long naps instead, and setIdle(false) wakes them up before the game runs again.
+
+ * Run with:  java -cp .:acm.jar CollisionEventBus [ticks]
+ * 		times the ticks of an autopilot game with 0, 1, 2, 4 and 8 consumers attached
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+public class CollisionEventBus {
+
+/**	The number of events the ring holds, a power of 2 */
+	public static final int DEFAULT_CAPACITY = 4096;
+
+/**	The number of times a consumer with nothing to read checks again before it naps */
+	private static final int SPINS = 1000;
+
+/**	The nap of a consumer with nothing to read, and of the producer waiting for a full ring */
+	private static final long PARK_NANOS = 100000;
+
+/**	The nap of a consumer while the game is idle, it is woken up early when the game runs again */
+	private static final long IDLE_PARK_NANOS = 1000000000L;
+
+/**	Receives the events, on the thread of its consumer */
+	public interface Handler {
+
+/**	Called for each event, in the order they were published
+ * @param tick The tick of the simulation the collision happened in
+ * @param publishNanos The System.nanoTime when the event was published, for measuring the latency of what it leads to
+ * @param kind The BreakoutSimulation.EVENT_ flag of the collision
+ * @param brick The brick hit, -1 if it was not a brick
+ * @param x @param y The top left corner of the ball at the collision
+ * @param endOfBatch True for the last event available when the batch was read, a good time to flush
+ */
+		void onEvent(long tick, long publishNanos, int kind, int brick, double x, double y, boolean endOfBatch);
+	}
+
+/**	A consumer, its thread and how far it has read */
+	private class Consumer implements Runnable {
+
+		Consumer(String name, Handler handler) {
+			this.name = name;
+			this.handler = handler;
+		}
+
+		public void run() {
+			long next = read.get() + 1;
+			int idle = 0;
+			while (true) {
+				long available = published.get();
+				if (available < next) {
+					if (!running && (published.get() < next)) {
+						return;
+					}
+					if (gameIdle && running) {
+						LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+						idle = 0;
+					}
+					else if (++idle < SPINS) {
+						Thread.onSpinWait();
+					}
+					else {
+						LockSupport.parkNanos(PARK_NANOS);
+					}
+					continue;
+				}
+				idle = 0;
+				for (long sequence = next; sequence <= available; sequence++) {
+					int slot = (int) sequence & mask;
+					handler.onEvent(ticks[slot], publishTimes[slot], kinds[slot], bricks[slot], xs[slot], ys[slot], sequence == available);
+				}
+				batches++;
+				maxBatch = Math.max(maxBatch, available - next + 1);
+				read.lazySet(available);
+				next = available + 1;
+			}
+		}
+
+		public String toString() {
+			long events = read.get() + 1;
+			return String.format("%s: %d events in %d batches, %.1f per batch, largest %d",
+					name, events, batches, (batches == 0) ? 0.0 : (double) events / batches, maxBatch);
+		}
+
+		final String name;
+		final Handler handler;
+
+/**	The sequence of the last event read, only written by the consumer's thread */
+		final AtomicLong read = new AtomicLong(-1);
+
+		long batches, maxBatch;
+		Thread thread;
+	}
+
+/**	Creates a bus with a ring of DEFAULT_CAPACITY events */
+	public CollisionEventBus() {
+		this(DEFAULT_CAPACITY);
+	}
+
+/**	Creates a bus
+ * @param capacity The number of events the ring holds, a power of 2
+ */
+	public CollisionEventBus(int capacity) {
+		if ((capacity < 2) || (Integer.bitCount(capacity) != 1)) {
+			throw new IllegalArgumentException("Capacity must be a power of 2, not " + capacity);
+		}
+		this.capacity = capacity;
+		mask = capacity - 1;
+		ticks = new long[capacity];
+		publishTimes = new long[capacity];
+		kinds = new int[capacity];
+		bricks = new int[capacity];
+		xs = new double[capacity];
+		ys = new double[capacity];
+	}
+
+/**	Adds a consumer, its thread is started by start
+ * @param name The name of the consumer's thread
+ * @param handler Called on the consumer's thread for each event
+ */
+	public synchronized void addConsumer(String name, Handler handler) {
+		if (running) {
+			throw new IllegalStateException("Consumers must be added before the bus is started");
+		}
+		Consumer[] added = java.util.Arrays.copyOf(consumers, consumers.length + 1);
+		added[consumers.length] = new Consumer(name, handler);
+		consumers = added;
+	}
+
+/**	Starts the threads of the consumers */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		for (Consumer consumer : consumers) {
+			consumer.thread = new Thread(consumer, consumer.name);
+			consumer.thread.setDaemon(true);
+			consumer.thread.start();
+		}
+	}
+
+/**	Tells the consumers whether the game is idle, they sleep while it is and are woken up when it is not
+ * @param idle True when the game stops publishing for a while, false before it starts again
+ */
+	public void setIdle(boolean idle) {
+		gameIdle = idle;
+		if (!idle) {
+			wakeConsumers();
+		}
+	}
+
+	private void wakeConsumers() {
+		for (Consumer consumer : consumers) {
+			if (consumer.thread != null) {
+				LockSupport.unpark(consumer.thread);
+			}
+		}
+	}
+
+/**	Stops the consumers once they have read every event published, and waits for them */
+	public synchronized void stop() {
+		running = false;
+		wakeConsumers();
+		for (Consumer consumer : consumers) {
+			if (consumer.thread != null) {
+				try {
+					consumer.thread.join();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+/**	Publishes a collision, only called by the simulation's thread.
+ * 	Waits if the slowest consumer has not read the event a ring before this one yet.
+ * @param tick The tick of the simulation
+ * @param kind The BreakoutSimulation.EVENT_ flag of the collision
+ * @param brick The brick hit, -1 if it was not a brick
+ * @param x @param y The top left corner of the ball
+ */
+	public void publish(long tick, int kind, int brick, double x, double y) {
+		long sequence = nextSequence;
+		if (sequence - capacity > freeUpTo) {
+			waitForConsumers(sequence);
+		}
+		int slot = (int) sequence & mask;
+		ticks[slot] = tick;
+		publishTimes[slot] = System.nanoTime();
+		kinds[slot] = kind;
+		bricks[slot] = brick;
+		xs[slot] = x;
+		ys[slot] = y;
+		nextSequence = sequence + 1;
+		published.lazySet(sequence);
+	}
+
+/**	Waits until every consumer has read every event published so far, only called by the producer's thread.
+ * 	Whatever the consumers worked out from the events (e.g. the score) is then up to date, and can be read or
+ * 	changed by the producer's thread until it publishes again.
+ */
+	public void drain() {
+		long last = nextSequence - 1;
+		for (Consumer consumer : consumers) {
+			for (int spins = 0; consumer.read.get() < last; spins++) {
+				if (spins < SPINS) {
+					Thread.onSpinWait();
+				}
+				else {
+					LockSupport.parkNanos(PARK_NANOS);
+				}
+			}
+		}
+	}
+
+/**	Finds the slowest consumer, and waits until the slot for the sequence has been read by all of them */
+	private void waitForConsumers(long sequence) {
+		while (true) {
+			long slowest = sequence - 1;
+			for (Consumer consumer : consumers) {
+				slowest = Math.min(slowest, consumer.read.get());
+			}
+			freeUpTo = slowest;
+			if (sequence - capacity <= freeUpTo) {
+				return;
+			}
+			producerWaits++;
+			LockSupport.parkNanos(PARK_NANOS);
+		}
+	}
+
+/**	@return the number of events published */
+	public long getPublished() {
+		return nextSequence;
+	}
+
+/**	@return the number of times the producer had to wait for a consumer */
+	public long getProducerWaits() {
+		return producerWaits;
+	}
+
+/**	@return the events published, and what each consumer read */
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+		text.append(String.format("event bus: %d events published, producer waited %d times", nextSequence, producerWaits));
+		for (Consumer consumer : consumers) {
+			text.append("\n  ").append(consumer);
+		}
+		return text.toString();
+	}
+
+	public static void main(String[] args) {
+		int ticks = (args.length > 0) ? Integer.parseInt(args[0]) : 5000000;
+		int[] consumerCounts = {0, 1, 2, 4, 8};
+		for (int round = 0; round < 2; round++) {
+			for (int consumers : consumerCounts) {
+				CollisionEventBus bus = new CollisionEventBus();
+				long[] counts = new long[consumers];
+				for (int i=0; i < consumers; i++) {
+					final int consumer = i;
+					bus.addConsumer("consumer " + i, (tick, publishNanos, kind, brick, x, y, endOfBatch) -> counts[consumer]++);
+				}
+				bus.start();
+				BreakoutSimulation simulation = new BreakoutSimulation(1);
+				simulation.setTicksPerSecond(120);
+				simulation.setEventBus(bus);
+				simulation.newGame();
+				simulation.serve();
+				Autopilot autopilot = new Autopilot(4);
+				long start = System.nanoTime();
+				for (int i=0; i < ticks; i++) {
+					int events = simulation.step(autopilot.getPaddleTargetX(simulation));
+					if ((events & BreakoutSimulation.EVENT_TURN_OVER) != 0) {
+						simulation.endTurn();
+						if (simulation.isGameOver()) {
+							simulation.newGame();
+						}
+						simulation.serve();
+					}
+				}
+				long nanos = System.nanoTime() - start;
+				bus.stop();
+				if (round == 1) {
+					System.out.println(String.format("%d consumers: %.1f ns per tick, %d events, producer waited %d times",
+							consumers, (double) nanos / ticks, bus.getPublished(), bus.getProducerWaits()));
+					for (int i=0; i < consumers; i++) {
+						if (counts[i] != bus.getPublished()) {
+							System.out.println("  consumer " + i + " read " + counts[i] + " events");
+						}
+					}
+				}
+			}
+		}
+	}
+
+
+/**
+ * 	INSTANCE VARIABLES
+ */
+
+/**	The ring, one array for each part of an event, indexed by the sequence of the event & mask */
+	private final int capacity, mask;
+	private final long[] ticks, publishTimes;
+	private final int[] kinds;
+	private final int[] bricks;
+	private final double[] xs, ys;
+
+/**	The sequence of the last event published, read by the consumers */
+	private final AtomicLong published = new AtomicLong(-1);
+
+/**	The consumers, only changed before the bus is started */
+	private Consumer[] consumers = new Consumer[0];
+
+/**	Set while the consumers' threads should run */
+	private volatile boolean running;
+
+/**	Set while the game is idle and nothing is published, the consumers sleep */
+	private volatile boolean gameIdle;
+
+/**	Only used by the producer: the sequence of the next event, the last sequence every consumer
+ * 	was known to have read, and the number of times it waited for them
+ */
+	private long nextSequence;
+	private long freeUpTo = -1;
+	private long producerWaits;
+
+}
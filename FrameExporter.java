@@ -0,0 +1,323 @@
+/**
+ * File: FrameExporter.java
+
+ * Renders a game to a sequence of PNG images, with no display, e.g. for videos of the game or for
+ * comparing the drawing of the board between versions.
+ * The game is either a recording, played back with a ReplayPlayer, or a new game from a seed played by
+ * the Autopilot. It is drawn by the same BoardRenderer as the window, and runs as fast as it can,
+ * not at the speed of the game.
+ * The export is a pipeline: the game thread simulates and draws, and copies each frame into a free image
+ * of a ring of reusable images. A pool of encoder threads (one per core) take the copied frames, write
+ * them as PNG files and hand the images back to the ring. When every image of the ring is waiting to be
+ * encoded, the game thread waits, so the memory used is bounded however far ahead it could get.
+
+ *	NOTES:
+ *	The frames are named frame_000000.png, frame_000001.png... in the output directory, and can be made
+ *	into a video with e.g. ffmpeg -framerate 60 -i frame_%06d.png game.mp4
+ *	A frame is taken every ticksPerSecond / framesPerSecond ticks, at the end of a tick, so there is
+ *	nothing to interpolate. The sparks of the bricks and paddle are thrown the same as in the window, and moved
+ *	on by the game time between frames.
+ *	The encoders are daemon threads, and are stopped if an export fails, so a failed export does not keep the JVM running.
+
+ * Run with:  java -cp .:acm.jar FrameExporter replay <replay file> <output dir> [frames per second] [max frames]
+ *            java -cp .:acm.jar FrameExporter seed <seed> <output dir> [frames per second] [max frames]
+ */
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.imageio.ImageIO;
+
+public class FrameExporter {
+
+/**	The number of images in the ring, for each encoder thread */
+	private static final int IMAGES_PER_ENCODER = 4;
+
+/**	The tick rate of a game played from a seed */
+	private static final double SEED_TICKS_PER_SECOND = 120;
+
+/**	The most pixels the autopilot moves the paddle in a tick, in a game played from a seed */
+	private static final double AUTOPILOT_PADDLE_SPEED = 4;
+
+/**	The default frame rate and the default most frames exported */
+	private static final double DEFAULT_FRAMES_PER_SECOND = 60;
+	private static final int DEFAULT_MAX_FRAMES = 3600;
+
+/**	A frame is given to the encoders in one of these, which is handed back to the ring once written */
+	private static class Slot {
+		Slot(BufferedImage image) {
+			this.image = image;
+		}
+		final BufferedImage image;
+		int frame;
+	}
+
+/**	Slot marking the end of the frames, the encoders stop when they take it */
+	private static final Slot END = new Slot(null);
+
+/**	Creates an exporter writing into the directory
+ * @param outputDir The directory the frames are written to, it is created if needed
+ * @param encoders The number of encoder threads
+ */
+	public FrameExporter(Path outputDir, int encoders) throws IOException {
+		if (encoders < 1) {
+			throw new IllegalArgumentException("Need at least one encoder");
+		}
+		this.outputDir = outputDir;
+		Files.createDirectories(outputDir);
+		renderer = new BoardRenderer(BreakoutSimulation.WIDTH, BreakoutSimulation.HEIGHT, BreakoutSimulation.BALL_RADIUS,
+				BreakoutSimulation.PADDLE_WIDTH, BreakoutSimulation.PADDLE_HEIGHT, Color.BLACK, Color.BLACK);
+		/* The sparks are moved on the game thread, the cores are left to the encoders */
+		particles = new ParticleSystem(ParticleSystem.DEFAULT_CAPACITY, 1, BreakoutSimulation.WIDTH, BreakoutSimulation.HEIGHT);
+		renderer.setParticles(particles);
+		int images = encoders * IMAGES_PER_ENCODER;
+		freeSlots = new ArrayBlockingQueue<Slot>(images);
+		fullSlots = new ArrayBlockingQueue<Slot>(images + encoders);
+		for (int i=0; i < images; i++) {
+			freeSlots.add(new Slot(new BufferedImage(BreakoutSimulation.WIDTH, BreakoutSimulation.HEIGHT, BufferedImage.TYPE_INT_RGB)));
+		}
+		this.encoders = new Thread[encoders];
+		for (int i=0; i < encoders; i++) {
+			this.encoders[i] = new Thread(this::encode, "png encoder " + i);
+			this.encoders[i].setDaemon(true);
+			this.encoders[i].start();
+		}
+	}
+
+/**	Exports a recorded game
+ * @param log The recording
+ * @param framesPerSecond The frame rate of the images, at most the tick rate of the recording
+ * @param maxFrames The most frames exported
+ */
+	public void exportReplay(ReplayLog log, double framesPerSecond, int maxFrames) throws IOException, InterruptedException {
+		ReplayPlayer player = new ReplayPlayer(log);
+		BreakoutSimulation simulation = player.getSimulation();
+		double ticksPerSecond = log.getTicksPerSecond();
+		double ticksPerFrame = Math.max(1, ticksPerSecond / framesPerSecond);
+		boolean finished = false;
+		try {
+			startBoard(simulation);
+			double nextFrameTick = 0;
+			long tick = 0;
+			while (frames < maxFrames) {
+				int events = player.step();
+				if (events < 0) {
+					break;
+				}
+				drawStep(simulation, events);
+				if (++tick >= nextFrameTick) {
+					submitFrame(simulation, tick / ticksPerSecond);
+					nextFrameTick += ticksPerFrame;
+				}
+			}
+			finish();
+			finished = true;
+		}
+		finally {
+			if (!finished) {
+				stopEncoders();
+			}
+		}
+	}
+
+/**	Exports a new game played by the autopilot
+ * @param seed The seed of the game
+ * @param framesPerSecond The frame rate of the images
+ * @param maxFrames The most frames exported
+ */
+	public void exportSeed(long seed, double framesPerSecond, int maxFrames) throws IOException, InterruptedException {
+		BreakoutSimulation simulation = new BreakoutSimulation(seed);
+		simulation.setTicksPerSecond(SEED_TICKS_PER_SECOND);
+		simulation.newGame();
+		simulation.serve();
+		Autopilot autopilot = new Autopilot(AUTOPILOT_PADDLE_SPEED);
+		double ticksPerFrame = Math.max(1, SEED_TICKS_PER_SECOND / framesPerSecond);
+		boolean finished = false;
+		try {
+			startBoard(simulation);
+			double nextFrameTick = 0;
+			long tick = 0;
+			while ((frames < maxFrames) && !simulation.isGameOver()) {
+				int events = simulation.step(autopilot.getPaddleTargetX(simulation));
+				if ((events & BreakoutSimulation.EVENT_TURN_OVER) != 0) {
+					simulation.endTurn();
+					if (!simulation.isGameOver()) {
+						simulation.serve();
+					}
+				}
+				drawStep(simulation, events);
+				if (++tick >= nextFrameTick) {
+					submitFrame(simulation, tick / SEED_TICKS_PER_SECOND);
+					nextFrameTick += ticksPerFrame;
+				}
+			}
+			finish();
+			finished = true;
+		}
+		finally {
+			if (!finished) {
+				stopEncoders();
+			}
+		}
+	}
+
+/**	Draws the board at the start, and takes the first frame */
+	private void startBoard(BreakoutSimulation simulation) throws IOException, InterruptedException {
+		renderer.drawBricks(simulation.getBricks(), BreakoutSimulation.BRICK_WIDTH, BreakoutSimulation.BRICK_HEIGHT);
+		submitFrame(simulation, 0);
+	}
+
+/**	Updates the bricks after a step, the way Breakout does: the bricks hit are cleared and throw sparks,
+ * 	the paddle throws sparks when the ball bounces off it, and at the end of a turn all the bricks are drawn again
+ */
+	private void drawStep(BreakoutSimulation simulation, int events) {
+		for (int i=0; i < simulation.getBricksHitInStep(); i++) {
+			int brick = simulation.getBrickHitInStep(i);
+			renderer.removeBrick(simulation.getBrickX(brick), simulation.getBrickY(brick),
+					BreakoutSimulation.BRICK_WIDTH, BreakoutSimulation.BRICK_HEIGHT);
+			particles.emitBurst(simulation.getBrickX(brick) + BreakoutSimulation.BRICK_WIDTH / 2.0,
+					simulation.getBrickY(brick) + BreakoutSimulation.BRICK_HEIGHT / 2.0, Breakout.BRICK_PARTICLES,
+					simulation.getBricks().getColor(brick), Breakout.PARTICLE_SPEED, Breakout.PARTICLE_LIFETIME);
+		}
+		if ((events & BreakoutSimulation.EVENT_PADDLE) != 0) {
+			particles.emitBurst(simulation.getBallX() + BreakoutSimulation.BALL_RADIUS, simulation.getPaddleY(),
+					Breakout.PADDLE_PARTICLES, Breakout.PADDLE_PARTICLE_COLOR, Breakout.PARTICLE_SPEED / 2, Breakout.PARTICLE_LIFETIME / 2);
+		}
+		if ((events & BreakoutSimulation.EVENT_TURN_OVER) != 0) {
+			renderer.drawBricks(simulation.getBricks(), BreakoutSimulation.BRICK_WIDTH, BreakoutSimulation.BRICK_HEIGHT);
+		}
+	}
+
+/**	Draws the frame and copies it into a free image of the ring, waiting for one if they are all being encoded
+ * @param gameSeconds The time of the frame in the game, the sparks are moved on by the time since the last frame
+ */
+	private void submitFrame(BreakoutSimulation simulation, double gameSeconds) throws IOException, InterruptedException {
+		checkEncoders();
+		particles.update(gameSeconds - lastFrameSeconds);
+		lastFrameSeconds = gameSeconds;
+		renderer.render(simulation.getBallX(), simulation.getBallY(), simulation.getPaddleX(), simulation.getPaddleY());
+		long waitStart = System.nanoTime();
+		Slot slot = freeSlots.take();
+		waitNanos += System.nanoTime() - waitStart;
+		renderer.copyFrame(slot.image);
+		slot.frame = frames++;
+		fullSlots.put(slot);
+	}
+
+/**	Waits for the encoders to write the frames submitted */
+	private void finish() throws IOException, InterruptedException {
+		for (int i=0; i < encoders.length; i++) {
+			fullSlots.put(END);
+		}
+		for (Thread encoder : encoders) {
+			encoder.join();
+		}
+		checkEncoders();
+	}
+
+/**	Stops the encoders without waiting for the frames submitted, after an export failed */
+	private void stopEncoders() {
+		for (Thread encoder : encoders) {
+			encoder.interrupt();
+		}
+	}
+
+/**	Throws the first error of an encoder, if there was one */
+	private void checkEncoders() throws IOException {
+		IOException error = encodeError.get();
+		if (error != null) {
+			throw error;
+		}
+	}
+
+/**	The loop of an encoder thread, writes the frames it takes as PNG files until it takes the END slot */
+	private void encode() {
+		try {
+			while (true) {
+				Slot slot = fullSlots.take();
+				if (slot == END) {
+					return;
+				}
+				try {
+					ImageIO.write(slot.image, "png", outputDir.resolve(String.format("frame_%06d.png", slot.frame)).toFile());
+				}
+				catch (IOException e) {
+					encodeError.compareAndSet(null, e);
+				}
+				freeSlots.put(slot);
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+/**	@return the number of frames exported */
+	public int getFrames() {
+		return frames;
+	}
+
+/**	@return the time the game thread waited for a free image, i.e. for the encoders */
+	public long getWaitNanos() {
+		return waitNanos;
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		System.setProperty("java.awt.headless", "true");
+		if ((args.length < 3) || !(args[0].equals("replay") || args[0].equals("seed"))) {
+			System.out.println("Usage: FrameExporter replay <replay file> <output dir> [frames per second] [max frames]");
+			System.out.println("       FrameExporter seed <seed> <output dir> [frames per second] [max frames]");
+			return;
+		}
+		double framesPerSecond = (args.length > 3) ? Double.parseDouble(args[3]) : DEFAULT_FRAMES_PER_SECOND;
+		int maxFrames = (args.length > 4) ? Integer.parseInt(args[4]) : DEFAULT_MAX_FRAMES;
+		int encoders = Runtime.getRuntime().availableProcessors();
+		FrameExporter exporter = new FrameExporter(Paths.get(args[2]), encoders);
+		long start = System.nanoTime();
+		if (args[0].equals("replay")) {
+			exporter.exportReplay(ReplayLog.load(Paths.get(args[1])), framesPerSecond, maxFrames);
+		}
+		else {
+			exporter.exportSeed(Long.parseLong(args[1]), framesPerSecond, maxFrames);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		double gameSeconds = exporter.getFrames() / framesPerSecond;
+		System.out.println(String.format("%d frames (%.1f s of game) in %.1f s with %d encoders, %.1fx real time, %.0f frames/s, game thread waited %.1f s",
+				exporter.getFrames(), gameSeconds, seconds, encoders, gameSeconds / seconds, exporter.getFrames() / seconds,
+				exporter.getWaitNanos() / 1e9));
+	}
+
+
+/**
+ * 	INSTANCE VARIABLES
+ */
+
+/**	The directory the frames are written to */
+	private final Path outputDir;
+
+/**	Draws the board, the same way as in the window */
+	private final BoardRenderer renderer;
+
+/**	The sparks drawn by the renderer, and the game time they were last moved to */
+	private final ParticleSystem particles;
+	private double lastFrameSeconds;
+
+/**	The ring of images: the free ones, and the ones waiting for an encoder */
+	private final BlockingQueue<Slot> freeSlots, fullSlots;
+
+/**	The encoder threads, and the first error one of them had */
+	private final Thread[] encoders;
+	private final AtomicReference<IOException> encodeError = new AtomicReference<IOException>();
+
+/**	The number of frames submitted, and the time spent waiting for a free image */
+	private int frames;
+	private long waitNanos;
+
+}
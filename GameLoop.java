@@ -0,0 +1,163 @@
+/**
+ * File: GameLoop.java
+
+ * A fixed timestep game loop.
+ * The physics of the game is advanced in ticks of a fixed length, whatever the time taken by the
+ * rendering or how loaded the machine is. Real time is added to an accumulator and as many ticks
+ * are run as fit in it, so a slow frame is caught up in the next frame instead of slowing the game down.
+ * Rendering is done once per frame, at its own rate, and is told how far the accumulator is into
+ * the next tick so that it can draw the objects between their last two positions.
+ 
+ *	NOTES:
+ *	The number of ticks run in a frame is bounded, if the machine can not keep up for a long time
+ *	the time that could not be simulated is dropped, rather than the loop falling further and further behind.
+ *	The time taken by ticks and frames is recorded in LatencyStats, frames longer than the frame budget are counted.
+ *	When the game says it is idle (paused, minimized), the loop neither ticks nor renders, the thread is parked by
+ *	the IdleScheduler until the game is woken up, and the loop starts again from then, as if no time had passed.
+ */
+
+import java.util.concurrent.locks.LockSupport;
+
+public class GameLoop {
+
+/**	The game which is run by the loop */
+	public interface Game {
+
+/**	Advances the game by one tick
+ * @return false when the loop should stop
+ */
+		boolean tick();
+
+/**	Draws the game
+ * @param alpha How far the time is between the previous tick and the latest tick, between 0 and 1
+ */
+		void render(double alpha);
+
+/**	@return true while nothing in the game can change until some input arrives, the loop is then parked.
+ * 	Whoever makes the game stop being idle has to wake the loop's IdleScheduler.
+ */
+		default boolean isIdle() {
+			return false;
+		}
+	}
+
+/**	Creates a loop
+ * @param ticksPerSecond The rate at which the physics is run, e.g. 120
+ * @param framesPerSecond The rate at which the game is rendered
+ * @param maxTicksPerFrame The maximum number of ticks run to catch up in a single frame
+ */
+	public GameLoop(double ticksPerSecond, double framesPerSecond, int maxTicksPerFrame) {
+		if ((ticksPerSecond <= 0) || (framesPerSecond <= 0) || (maxTicksPerFrame < 1)) {
+			throw new IllegalArgumentException("Tick rate, frame rate and ticks per frame must be positive");
+		}
+		this.tickNanos = (long) (1e9 / ticksPerSecond);
+		this.frameNanos = (long) (1e9 / framesPerSecond);
+		this.maxTicksPerFrame = maxTicksPerFrame;
+		tickStats = new LatencyStats("tick", tickNanos);
+		frameStats = new LatencyStats("frame", frameNanos);
+		idleScheduler = new IdleScheduler(frameNanos);
+	}
+
+/**	Runs the game until its tick returns false
+ * @param game The game to run
+ */
+	public void run(Game game) {
+		long previousTime = System.nanoTime();
+		long accumulator = tickNanos;
+		long nextFrame = previousTime;
+		while (true) {
+			if (game.isIdle()) {
+				idleScheduler.parkWhile(game::isIdle);
+				/* The time parked is not game time, it is neither simulated nor dropped */
+				previousTime = System.nanoTime();
+				nextFrame = previousTime;
+			}
+			long frameStart = System.nanoTime();
+			accumulator += frameStart - previousTime;
+			previousTime = frameStart;
+			/* Bounding the catch up, the time which can not be simulated in this frame is dropped */
+			if (accumulator > maxTicksPerFrame * tickNanos) {
+				droppedNanos += accumulator - maxTicksPerFrame * tickNanos;
+				accumulator = maxTicksPerFrame * tickNanos;
+			}
+			while (accumulator >= tickNanos) {
+				long tickStart = System.nanoTime();
+				boolean running = game.tick();
+				tickStats.record(System.nanoTime() - tickStart);
+				accumulator -= tickNanos;
+				if (!running) {
+					return;
+				}
+			}
+			long renderStart = System.nanoTime();
+			game.render((double) accumulator / tickNanos);
+			long now = System.nanoTime();
+			frameStats.record(now - frameStart);
+			if (metrics != null) {
+				metrics.recordPhase(GameMetrics.RENDER, now - renderStart);
+			}
+			/* Waiting for the next frame, if the frame is late the next one starts straight away */
+			nextFrame += frameNanos;
+			if (nextFrame > now) {
+				LockSupport.parkNanos(nextFrame - now);
+				if (metrics != null) {
+					metrics.recordPhase(GameMetrics.PAUSE, System.nanoTime() - now);
+				}
+			}
+			else {
+				nextFrame = now;
+			}
+		}
+	}
+
+/**	Sets the metrics the rendering and pauses of the frames are recorded in
+ * @param metrics The metrics, or null to stop recording
+ */
+	public void setMetrics(GameMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+/**	@return the durations of the ticks, the budget is the length of a tick */
+	public LatencyStats getTickStats() {
+		return tickStats;
+	}
+
+/**	@return the durations of the frames (ticks and rendering), the budget is the length of a frame */
+	public LatencyStats getFrameStats() {
+		return frameStats;
+	}
+
+/**	@return the scheduler which parks the loop while the game is idle, to be woken up when it no longer is */
+	public IdleScheduler getIdleScheduler() {
+		return idleScheduler;
+	}
+
+/**	@return the total time in nanoseconds which was dropped because the loop could not keep up */
+	public long getDroppedNanos() {
+		return droppedNanos;
+	}
+
+	
+/**
+ * 	INSTANCE VARIABLES
+ */
+	
+/**	The length of a tick and a frame, in nanoseconds */
+	private final long tickNanos, frameNanos;
+
+/**	The maximum number of ticks run in a frame */
+	private final int maxTicksPerFrame;
+
+/**	Time taken by the ticks and frames */
+	private final LatencyStats tickStats, frameStats;
+
+/**	The metrics the frames are recorded in, null if they are not recorded */
+	private GameMetrics metrics;
+
+/**	Parks the loop while the game is idle */
+	private final IdleScheduler idleScheduler;
+
+/**	The time which could not be simulated */
+	private long droppedNanos;
+
+}
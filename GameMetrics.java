@@ -0,0 +1,224 @@
+/**
+ * File: GameMetrics.java
+
+ * Instrumentation of the game loop: how long ticks, rendering and pauses take, how many brick cells 
+ * are probed for collisions each tick, the collisions by type and the bytes allocated per tick.
+ * The counts are kept in this object, which can be dumped to a file, and each tick and frame is
+ * also sent as a custom JFR event, which is only recorded when a flight recording is running.
+ 
+ *	NOTES:
+ *	A simulation or game loop without metrics set only has a null check at each point, so the
+ *	instrumentation can be left in all builds. Breakout creates the metrics only when the 
+ *	breakout.metrics system property names the file to dump them to.
+ *	A metrics object is used by a single game thread, it is not thread safe.
+ */
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+public class GameMetrics {
+
+/**	Types of collision */
+	public static final int WALL = 0;
+	public static final int PADDLE = 1;
+	public static final int BRICK = 2;
+
+/**	Phases of a frame which are timed, apart from the ticks */
+	public static final int RENDER = 0;
+	public static final int PAUSE = 1;
+
+/**	The types of the JFR events, which say whether a recording is taking them */
+	private static final EventType TICK_EVENT_TYPE = EventType.getEventType(TickEvent.class);
+	private static final EventType FRAME_EVENT_TYPE = EventType.getEventType(FrameEvent.class);
+
+/**	Creates the metrics, the budgets are used for the stats of each phase
+ * @param tickBudgetNanos The length of a tick
+ * @param frameBudgetNanos The length of a frame
+ */
+	public GameMetrics(long tickBudgetNanos, long frameBudgetNanos) {
+		tickStats = new LatencyStats("tick", tickBudgetNanos);
+		renderStats = new LatencyStats("render", frameBudgetNanos);
+		pauseStats = new LatencyStats("pause", frameBudgetNanos);
+		threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+	}
+
+/**	Called at the start of a tick */
+	public void beginTick() {
+		tickProbes = 0;
+		tickWalls = 0;
+		tickPaddles = 0;
+		tickBricks = 0;
+		tickAllocatedBefore = threadBean.getCurrentThreadAllocatedBytes();
+		tickStart = System.nanoTime();
+	}
+
+/**	Counts brick cells probed for a collision in the current tick */
+	public void countProbes(int probes) {
+		tickProbes += probes;
+	}
+
+/**	Counts a collision in the current tick
+ * @param type WALL, PADDLE or BRICK
+ */
+	public void countCollision(int type) {
+		if (type == WALL) {
+			tickWalls++;
+		}
+		else if (type == PADDLE) {
+			tickPaddles++;
+		}
+		else {
+			tickBricks++;
+		}
+	}
+
+/**	Called at the end of a tick, adds the counts of the tick to the totals and sends the tick event */
+	public void endTick() {
+		long duration = System.nanoTime() - tickStart;
+		long allocated = threadBean.getCurrentThreadAllocatedBytes() - tickAllocatedBefore;
+		tickStats.record(duration);
+		ticks++;
+		probes += tickProbes;
+		maxProbes = Math.max(maxProbes, tickProbes);
+		collisions[WALL] += tickWalls;
+		collisions[PADDLE] += tickPaddles;
+		collisions[BRICK] += tickBricks;
+		allocatedBytes += allocated;
+		if (allocated > 0) {
+			ticksAllocating++;
+		}
+		/* The event is only created while a recording takes it, so the tick allocates nothing otherwise */
+		if (TICK_EVENT_TYPE.isEnabled()) {
+			TickEvent event = new TickEvent();
+			event.durationNanos = duration;
+			event.probes = tickProbes;
+			event.wallCollisions = tickWalls;
+			event.paddleCollisions = tickPaddles;
+			event.brickCollisions = tickBricks;
+			event.allocatedBytes = allocated;
+			event.commit();
+		}
+	}
+
+/**	Records the time of a phase of a frame
+ * @param phase RENDER or PAUSE
+ * @param nanos The time it took
+ */
+	public void recordPhase(int phase, long nanos) {
+		if (phase == RENDER) {
+			renderStats.record(nanos);
+		}
+		else {
+			pauseStats.record(nanos);
+		}
+		if (FRAME_EVENT_TYPE.isEnabled()) {
+			FrameEvent event = new FrameEvent();
+			event.phase = (phase == RENDER) ? "render" : "pause";
+			event.durationNanos = nanos;
+			event.commit();
+		}
+	}
+
+	public LatencyStats getTickStats() {
+		return tickStats;
+	}
+
+	public long getTicks() {
+		return ticks;
+	}
+
+	public long getProbes() {
+		return probes;
+	}
+
+/**	@return the number of collisions of the type, WALL, PADDLE or BRICK */
+	public long getCollisions(int type) {
+		return collisions[type];
+	}
+
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+/**	Writes all the metrics to a file, one per line
+ * @param path The file to write, it is replaced if it exists
+ */
+	public void dump(Path path) throws IOException {
+		try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(path))) {
+			writer.print(this);
+		}
+	}
+
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(tickStats).append('\n');
+		builder.append(renderStats).append('\n');
+		builder.append(pauseStats).append('\n');
+		builder.append(String.format("ticks=%d%n", ticks));
+		builder.append(String.format("probes/tick=%.2f max=%d%n", (double) probes / Math.max(1, ticks), maxProbes));
+		builder.append(String.format("collisions wall=%d paddle=%d brick=%d%n", collisions[WALL], collisions[PADDLE], collisions[BRICK]));
+		builder.append(String.format("allocated bytes/tick=%.2f ticks allocating=%d%n", (double) allocatedBytes / Math.max(1, ticks), ticksAllocating));
+		return builder.toString();
+	}
+
+/**	JFR event of a tick */
+	@Name("breakout.Tick")
+	@Label("Breakout Tick")
+	@Category("Breakout")
+	@Description("One tick of the breakout simulation")
+	static class TickEvent extends Event {
+		@Label("Duration (ns)")
+		long durationNanos;
+		@Label("Brick Cells Probed")
+		int probes;
+		@Label("Wall Collisions")
+		int wallCollisions;
+		@Label("Paddle Collisions")
+		int paddleCollisions;
+		@Label("Brick Collisions")
+		int brickCollisions;
+		@Label("Allocated Bytes")
+		long allocatedBytes;
+	}
+
+/**	JFR event of the rendering of a frame, or the pause after it */
+	@Name("breakout.Frame")
+	@Label("Breakout Frame Phase")
+	@Category("Breakout")
+	static class FrameEvent extends Event {
+		@Label("Phase")
+		String phase;
+		@Label("Duration (ns)")
+		long durationNanos;
+	}
+
+	
+/**
+ * 	INSTANCE VARIABLES
+ */
+	
+/**	Used to read the bytes allocated by the game thread */
+	private final com.sun.management.ThreadMXBean threadBean;
+
+/**	Durations of the ticks and the phases of the frames */
+	private final LatencyStats tickStats, renderStats, pauseStats;
+
+/**	Counts of the current tick */
+	private long tickStart, tickAllocatedBefore;
+	private int tickProbes, tickWalls, tickPaddles, tickBricks;
+
+/**	Totals of all the ticks */
+	private long ticks, probes, maxProbes, allocatedBytes, ticksAllocating;
+	private final long[] collisions = new long[3];
+
+}
@@ -0,0 +1,179 @@
+/**
+ * File: GameSnapshot.java
+
+ * A snapshot of the whole state of a game, which the game can be put back to later.
+ * The state is everything BreakoutSimulation.writeState writes: the random generator, the ball, the paddle,
+ * which bricks are on the board and their hit points, the turn, and how much of a level has been read.
+ * It is kept in a byte array sized for the simulation when the snapshot is created, and reused for
+ * every save, so saving and restoring only copy a few hundred bytes and allocate nothing.
+ * This is what rollback (going back to a confirmed state and playing the inputs again), undoing a lost
+ * life, and searching through many branches from one state are built on.
+
+ *	NOTES:
+ *	A snapshot can only be restored into a simulation of the same game, with the same settings and level.
+ *	The checksum is the same for the same state, so two machines can compare their states cheaply.
+ *	The simulation keeps no score, the game keeping one can save it with the state (saveScore) and put it
+ *	back after restoring, it is not part of the checksum.
+
+ * Run with:  java -cp .:acm.jar GameSnapshot [branches] [ticks per branch]
+ * 		times saving and restoring, and explores branches from a state in the middle of a turn
+ */
+
+import java.nio.ByteBuffer;
+
+public class GameSnapshot {
+
+/**	Creates an empty snapshot, big enough for the state of the simulation
+ * @param simulation The simulation, or any simulation of the same game
+ */
+	public GameSnapshot(BreakoutSimulation simulation) {
+		state = new byte[simulation.getStateSize()];
+		buffer = ByteBuffer.wrap(state);
+	}
+
+/**	Saves the state of the simulation into the snapshot, replacing what it held */
+	public void save(BreakoutSimulation simulation) {
+		buffer.clear();
+		simulation.writeState(buffer);
+		saved = true;
+	}
+
+/**	Puts the simulation back to the state in the snapshot, the snapshot is kept so it can be restored again
+ * @throws IllegalStateException if nothing has been saved
+ */
+	public void restore(BreakoutSimulation simulation) {
+		if (!saved) {
+			throw new IllegalStateException("Nothing saved in the snapshot");
+		}
+		buffer.clear();
+		simulation.readState(buffer);
+	}
+
+/**	Saves the score of the game with the state, call after save
+ * @param score The score as of the saved state
+ * @param bricksCleared The number of bricks removed in the game as of the saved state
+ */
+	public void saveScore(long score, int bricksCleared) {
+		this.score = score;
+		this.bricksCleared = bricksCleared;
+	}
+
+/**	@return the score saved with the state */
+	public long getScore() {
+		return score;
+	}
+
+/**	@return the number of bricks removed saved with the state */
+	public int getBricksCleared() {
+		return bricksCleared;
+	}
+
+/**	Copies another snapshot of the same game into this one */
+	public void copyFrom(GameSnapshot other) {
+		System.arraycopy(other.state, 0, state, 0, state.length);
+		saved = other.saved;
+		score = other.score;
+		bricksCleared = other.bricksCleared;
+	}
+
+/**	Empties the snapshot */
+	public void clear() {
+		saved = false;
+	}
+
+/**	@return true if a state has been saved */
+	public boolean isSaved() {
+		return saved;
+	}
+
+/**	@return the number of bytes of the state */
+	public int getSize() {
+		return state.length;
+	}
+
+/**	@return a 64 bit FNV-1a hash of the state, the same state always has the same checksum */
+	public long checksum() {
+		long hash = 0xCBF29CE484222325L;
+		for (int i=0; i < state.length; i++) {
+			hash = (hash ^ (state[i] & 0xFF)) * 0x100000001B3L;
+		}
+		return hash;
+	}
+
+	public static void main(String[] args) {
+		int branches = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+		int ticksPerBranch = (args.length > 1) ? Integer.parseInt(args[1]) : 1200;
+		BreakoutSimulation simulation = new BreakoutSimulation(1);
+		simulation.setTicksPerSecond(120);
+		simulation.newGame();
+		simulation.serve();
+		Autopilot autopilot = new Autopilot(4);
+		for (int i=0; i < 3000; i++) {
+			simulation.step(autopilot.getPaddleTargetX(simulation));
+		}
+		GameSnapshot root = new GameSnapshot(simulation);
+		root.save(simulation);
+		long rootChecksum = root.checksum();
+
+		/* Saving and restoring */
+		int repeats = 1000000;
+		long start = System.nanoTime();
+		for (int i=0; i < repeats; i++) {
+			root.save(simulation);
+		}
+		long saveNanos = System.nanoTime() - start;
+		start = System.nanoTime();
+		for (int i=0; i < repeats; i++) {
+			root.restore(simulation);
+		}
+		long restoreNanos = System.nanoTime() - start;
+		System.out.println(String.format("state %d bytes, save %.1f ns, restore %.1f ns",
+				root.getSize(), (double) saveNanos / repeats, (double) restoreNanos / repeats));
+
+		/* Branches, each plays from the same state with the paddle held at a different offset from the ball */
+		int bestBricks = -1;
+		int bestBranch = -1;
+		start = System.nanoTime();
+		for (int branch = 0; branch < branches; branch++) {
+			root.restore(simulation);
+			double offset = -BreakoutSimulation.PADDLE_WIDTH + (branch % 61) * 1.0;
+			int bricks = 0;
+			for (int i=0; i < ticksPerBranch; i++) {
+				int events = simulation.step(simulation.getBallX() + offset);
+				bricks += simulation.getBricksHitInStep();
+				if ((events & BreakoutSimulation.EVENT_TURN_OVER) != 0) {
+					bricks = -1;
+					break;
+				}
+			}
+			if (bricks > bestBricks) {
+				bestBricks = bricks;
+				bestBranch = branch;
+			}
+		}
+		long searchNanos = System.nanoTime() - start;
+		root.restore(simulation);
+		GameSnapshot check = new GameSnapshot(simulation);
+		check.save(simulation);
+		System.out.println(String.format("%d branches of %d ticks in %.1f ms (%.0f branches/s), best branch %d removes %d bricks",
+				branches, ticksPerBranch, searchNanos / 1e6, branches / (searchNanos / 1e9), bestBranch, bestBricks));
+		System.out.println("restored state matches the root: " + (check.checksum() == rootChecksum));
+	}
+
+
+/**
+ * 	INSTANCE VARIABLES
+ */
+
+/**	The bytes of the state, and a buffer over them which is reused for every save and restore */
+	private final byte[] state;
+	private final ByteBuffer buffer;
+
+/**	Set once a state has been saved */
+	private boolean saved;
+
+/**	The score of the game saved with the state */
+	private long score;
+	private int bricksCleared;
+
+}
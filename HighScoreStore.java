@@ -0,0 +1,545 @@
+/**
+ * File: HighScoreStore.java
+
+ * Keeps the results of the games played, between runs of the game, for high score tables and the
+ * history of a player.
+ * Every finished game is appended to a log file as a fixed size record: the player, the score,
+ * the bricks cleared, how long the game took, the seed it was played with (so it can be played again)
+ * and when it finished. The log is only ever appended to, and each record has a checksum, so a record
+ * half written when the game was killed is found and cut off the next time the store is opened.
+ * Next to the log is an index, a memory mapped file, which holds
+ * 	the best TOP_SIZE scores, sorted, so the high score table is read straight out of it
+ * 	a hash table of the players, holding the last game of each player
+ * 	for every game, the game the same player played before it
+ * so the history of a player is a walk back through their games, and neither query looks at the
+ * rest of the log, however many games it holds.
+ * The game thread only hands a result over, a writer thread appends the results waiting in a batch,
+ * syncs the log to the disk, and then adds them to the index.
+
+ *	NOTES:
+ *	The log is the only copy of the results, the index can always be built again from it. The index is
+ *	marked as in use while the store is open, so if the store was not closed cleanly the index is not
+ *	trusted and is rebuilt when the store is opened.
+ *	The index is also rebuilt, twice as big, if the hash table of the players gets too full.
+ *	Player names are stored as at most PLAYER_NAME_BYTES bytes of UTF-8, longer names are cut short.
+
+ * Run with:  java -cp .:acm.jar HighScoreStore fill <dir> <games> [players]   - records random games
+ *            java -cp .:acm.jar HighScoreStore top <dir> [k]                   - prints the best k scores
+ *            java -cp .:acm.jar HighScoreStore history <dir> <player> [k]      - prints the last k games of a player
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+public class HighScoreStore {
+
+/**	The number of scores kept in the high score table of the index */
+	public static final int TOP_SIZE = 1000;
+
+/**	The most bytes of a player name */
+	public static final int PLAYER_NAME_BYTES = 24;
+
+/**	Layout of a record of the log: finish time, seed, score, bricks cleared, duration, name length, name, checksum */
+	private static final int RECORD_SIZE = 64;
+	private static final int RECORD_NAME = 36;
+	private static final int RECORD_CHECKSUM = 60;
+
+/**	Start of the index file, "BRKI", the header, and the size of each entry */
+	private static final int INDEX_MAGIC = 0x42524B49;
+	private static final int INDEX_VERSION = 1;
+	private static final int INDEX_HEADER_SIZE = 64;
+	private static final int TOP_ENTRY_SIZE = 16;
+	private static final int PLAYER_ENTRY_SIZE = 16;
+	private static final int GAME_ENTRY_SIZE = 8;
+
+/**	Index header fields: magic, version, in use flag, player slots, top entries used, games indexed, game capacity, players */
+	private static final int HEADER_IN_USE = 8;
+	private static final int HEADER_PLAYER_SLOTS = 12;
+	private static final int HEADER_TOP_COUNT = 16;
+	private static final int HEADER_GAMES = 24;
+	private static final int HEADER_GAME_CAPACITY = 32;
+	private static final int HEADER_PLAYERS = 40;
+
+/**	The number of player slots of a new index, and the most games a new index has room for */
+	private static final int INITIAL_PLAYER_SLOTS = 1 << 12;
+	private static final long INITIAL_GAME_CAPACITY = 1 << 16;
+
+/**	The most results the writer appends in one batch */
+	private static final int MAX_BATCH = 256;
+
+/**	The result of a game */
+	public static class Game {
+
+		Game(long number, String player, long score, int bricksCleared, long durationMillis, long seed, long finishedMillis) {
+			this.number = number;
+			this.player = player;
+			this.score = score;
+			this.bricksCleared = bricksCleared;
+			this.durationMillis = durationMillis;
+			this.seed = seed;
+			this.finishedMillis = finishedMillis;
+		}
+
+/**	The position of the game in the log, the first game recorded is 0 */
+		public final long number;
+		public final String player;
+		public final long score;
+		public final int bricksCleared;
+		public final long durationMillis;
+		public final long seed;
+
+/**	When the game finished, in milliseconds since 1970 */
+		public final long finishedMillis;
+
+		public String toString() {
+			return String.format("#%d %s: %d points, %d bricks, %.1f s, seed %d, at %tF %<tT",
+					number, player, score, bricksCleared, durationMillis / 1000.0, seed, finishedMillis);
+		}
+	}
+
+/**	Marks the end of the results, the writer stops when it takes it */
+	private static final Game END = new Game(-1, "", 0, 0, 0, 0, 0);
+
+/**	Opens the store in a directory, creating it if it is not there, and starts its writer
+ * @param directory Holds the log (scores.log) and the index (scores.idx)
+ */
+	public static HighScoreStore open(Path directory) throws IOException {
+		Files.createDirectories(directory);
+		return new HighScoreStore(directory.resolve("scores.log"), directory.resolve("scores.idx"));
+	}
+
+	private HighScoreStore(Path logPath, Path indexPath) throws IOException {
+		this.indexPath = indexPath;
+		log = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		games = recoverLog();
+		openIndex();
+		writer = new Thread(this::write, "high score writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+/**	Finds the last whole record of the log with a good checksum, anything after it was being written
+ * 	when the game stopped, and is cut off. The records are checked back from the end, only up to the
+ * 	first good one.
+ * @return the number of games in the log
+ */
+	private long recoverLog() throws IOException {
+		long records = log.size() / RECORD_SIZE;
+		ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+		while ((records > 0) && !readRecord(records - 1, record)) {
+			records--;
+		}
+		if (log.size() != records * RECORD_SIZE) {
+			log.truncate(records * RECORD_SIZE);
+			log.force(true);
+		}
+		return records;
+	}
+
+/**	Maps the index, and brings it up to date with the log, building it again if it can not be trusted */
+	private void openIndex() throws IOException {
+		index = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		boolean trusted = index.size() >= INDEX_HEADER_SIZE;
+		if (trusted) {
+			map(index.size());
+			trusted = (indexMap.getInt(0) == INDEX_MAGIC) && (indexMap.getInt(4) == INDEX_VERSION)
+					&& (indexMap.getInt(HEADER_IN_USE) == 0) && (indexMap.getLong(HEADER_GAMES) <= games)
+					&& (index.size() == indexSize(indexMap.getInt(HEADER_PLAYER_SLOTS), indexMap.getLong(HEADER_GAME_CAPACITY)));
+		}
+		if (trusted) {
+			playerSlots = indexMap.getInt(HEADER_PLAYER_SLOTS);
+			gameCapacity = indexMap.getLong(HEADER_GAME_CAPACITY);
+			indexMap.putInt(HEADER_IN_USE, 1);
+			indexMap.force();
+			indexGames(indexMap.getLong(HEADER_GAMES), games);
+		}
+		else {
+			rebuildIndex(INITIAL_PLAYER_SLOTS, games);
+		}
+	}
+
+/**	Builds the index again from the start of the log
+ * @param slots The number of player slots, a power of 2
+ * @param number The games before this one are indexed
+ */
+	private void rebuildIndex(int slots, long number) throws IOException {
+		playerSlots = slots;
+		gameCapacity = INITIAL_GAME_CAPACITY;
+		while (gameCapacity < games) {
+			gameCapacity *= 2;
+		}
+		index.truncate(0);
+		map(indexSize(playerSlots, gameCapacity));
+		indexMap.putInt(0, INDEX_MAGIC).putInt(4, INDEX_VERSION).putInt(HEADER_IN_USE, 1).putInt(HEADER_PLAYER_SLOTS, playerSlots);
+		indexMap.putLong(HEADER_GAME_CAPACITY, gameCapacity);
+		indexMap.force();
+		indexGames(0, number);
+	}
+
+	private static long indexSize(int slots, long gameCapacity) {
+		return INDEX_HEADER_SIZE + TOP_SIZE * TOP_ENTRY_SIZE + (long) slots * PLAYER_ENTRY_SIZE + gameCapacity * GAME_ENTRY_SIZE;
+	}
+
+/**	Maps the index file, growing it to the size */
+	private void map(long size) throws IOException {
+		indexMap = index.map(FileChannel.MapMode.READ_WRITE, 0, size);
+	}
+
+/**	Adds games of the log to the index, reading them back from the log
+ * @param from @param to The games from (inclusive) to (exclusive)
+ */
+	private void indexGames(long from, long to) throws IOException {
+		ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+		for (long number = from; number < to; number++) {
+			readRecord(number, record);
+			indexGame(number, record.getLong(16), nameHash(record));
+		}
+	}
+
+/**	Adds a game to the index: to the high score table if the score is good enough, and to the
+ * 	history of its player. Rebuilds the index bigger if there is no room for it.
+ */
+	private void indexGame(long number, long score, long playerHash) throws IOException {
+		if (number >= gameCapacity) {
+			gameCapacity *= 2;
+			map(indexSize(playerSlots, gameCapacity));
+			indexMap.putLong(HEADER_GAME_CAPACITY, gameCapacity);
+		}
+		long players = indexMap.getLong(HEADER_PLAYERS);
+		if ((players + 1) * 10 > playerSlots * 7L) {
+			/* The table of players would get too full, the games before this one are indexed again with twice
+			 * the slots, before this one is added to anything, since the rebuild starts the index afresh */
+			rebuildIndex(playerSlots * 2, number);
+		}
+		/* The high score table, a sorted array, a new score goes after the equal ones, which were scored first */
+		int count = indexMap.getInt(HEADER_TOP_COUNT);
+		int position = count;
+		while ((position > 0) && (indexMap.getLong(topEntry(position - 1)) < score)) {
+			position--;
+		}
+		if (position < TOP_SIZE) {
+			int moved = Math.min(count, TOP_SIZE - 1) - position;
+			for (int i = position + moved; i > position; i--) {
+				indexMap.putLong(topEntry(i), indexMap.getLong(topEntry(i - 1)));
+				indexMap.putLong(topEntry(i) + 8, indexMap.getLong(topEntry(i - 1) + 8));
+			}
+			indexMap.putLong(topEntry(position), score).putLong(topEntry(position) + 8, number);
+			indexMap.putInt(HEADER_TOP_COUNT, Math.min(count + 1, TOP_SIZE));
+		}
+		/* The player's slot, found by linear probing on the hash of the name, holds their last game + 1 */
+		int mask = playerSlots - 1;
+		int slot = (int) playerHash & mask;
+		while (true) {
+			int entry = playerEntry(slot);
+			if (indexMap.getLong(entry + 8) == 0) {
+				indexMap.putLong(entry, playerHash);
+				indexMap.putLong(HEADER_PLAYERS, indexMap.getLong(HEADER_PLAYERS) + 1);
+				break;
+			}
+			if (indexMap.getLong(entry) == playerHash) {
+				break;
+			}
+			slot = (slot + 1) & mask;
+		}
+		int entry = playerEntry(slot);
+		indexMap.putLong(gameEntry(number), indexMap.getLong(entry + 8));
+		indexMap.putLong(entry + 8, number + 1);
+		indexMap.putLong(HEADER_GAMES, number + 1);
+	}
+
+/**	The offsets of the entries in the index, a mapping is at most 2 GB so they are ints */
+	private static int topEntry(int position) {
+		return INDEX_HEADER_SIZE + position * TOP_ENTRY_SIZE;
+	}
+
+	private int playerEntry(int slot) {
+		return INDEX_HEADER_SIZE + TOP_SIZE * TOP_ENTRY_SIZE + slot * PLAYER_ENTRY_SIZE;
+	}
+
+	private int gameEntry(long number) {
+		return Math.toIntExact(playerEntry(playerSlots) + number * GAME_ENTRY_SIZE);
+	}
+
+/**	Hands the result of a game to the writer, this never waits for the disk
+ * @param player The name of the player
+ * @param score @param bricksCleared The result
+ * @param durationMillis How long the game took
+ * @param seed The seed the game was played with
+ */
+	public void submit(String player, long score, int bricksCleared, long durationMillis, long seed) {
+		synchronized (flushLock) {
+			submitted++;
+		}
+		pending.add(new Game(-1, player, score, bricksCleared, durationMillis, seed, System.currentTimeMillis()));
+	}
+
+/**	Waits until every result submitted so far has been written and indexed */
+	public void flush() throws InterruptedException {
+		synchronized (flushLock) {
+			while (written < submitted) {
+				flushLock.wait();
+			}
+		}
+	}
+
+/**	Writes what is still waiting, and closes the files. The index is marked as closed cleanly */
+	public void close() throws IOException, InterruptedException {
+		pending.add(END);
+		writer.join();
+		synchronized (this) {
+			indexMap.putInt(HEADER_IN_USE, 0);
+			indexMap.force();
+			index.close();
+			log.close();
+		}
+		if (writeError != null) {
+			throw writeError;
+		}
+	}
+
+/**	The writer thread, appends the results waiting in batches until it takes END */
+	private void write() {
+		List<Game> batch = new ArrayList<Game>();
+		ByteBuffer out = ByteBuffer.allocate(MAX_BATCH * RECORD_SIZE);
+		boolean running = true;
+		while (running) {
+			try {
+				batch.add(pending.take());
+			}
+			catch (InterruptedException e) {
+				return;
+			}
+			pending.drainTo(batch, MAX_BATCH - 1);
+			if (batch.get(batch.size() - 1) == END) {
+				batch.remove(batch.size() - 1);
+				running = false;
+			}
+			try {
+				appendBatch(batch, out);
+			}
+			catch (IOException e) {
+				writeError = e;
+			}
+			synchronized (flushLock) {
+				written += batch.size();
+				flushLock.notifyAll();
+			}
+			batch.clear();
+		}
+	}
+
+/**	Appends the results to the log, syncs it, and then indexes them */
+	private void appendBatch(List<Game> batch, ByteBuffer out) throws IOException {
+		out.clear();
+		for (Game game : batch) {
+			putRecord(out, game);
+		}
+		out.flip();
+		long position = games * RECORD_SIZE;
+		while (out.hasRemaining()) {
+			position += log.write(out, position);
+		}
+		log.force(false);
+		synchronized (this) {
+			for (Game game : batch) {
+				out.clear().limit(RECORD_SIZE);
+				putRecord(out, game);
+				indexGame(games, game.score, nameHash(out));
+				games++;
+			}
+		}
+	}
+
+/**	Writes a game as a record, at the position of the buffer */
+	private static void putRecord(ByteBuffer out, Game game) {
+		int start = out.position();
+		byte[] name = playerName(game.player);
+		out.putLong(game.finishedMillis).putLong(game.seed).putLong(game.score).putInt(game.bricksCleared);
+		out.putInt((int) Math.min(Integer.MAX_VALUE, game.durationMillis)).putInt(name.length);
+		out.put(name);
+		for (int i = name.length; i < PLAYER_NAME_BYTES; i++) {
+			out.put((byte) 0);
+		}
+		CRC32 crc = new CRC32();
+		crc.update(out.array(), start, RECORD_CHECKSUM);
+		out.putInt((int) crc.getValue());
+	}
+
+/**	@return the name as UTF-8, cut to at most PLAYER_NAME_BYTES bytes without splitting a character */
+	private static byte[] playerName(String player) {
+		byte[] name = player.getBytes(StandardCharsets.UTF_8);
+		int length = name.length;
+		while (length > PLAYER_NAME_BYTES) {
+			player = player.substring(0, player.offsetByCodePoints(player.length(), -1));
+			name = player.getBytes(StandardCharsets.UTF_8);
+			length = name.length;
+		}
+		return name;
+	}
+
+/**	Reads a record of the log into the buffer
+ * @return false if the checksum of the record is wrong
+ */
+	private boolean readRecord(long number, ByteBuffer record) throws IOException {
+		record.clear();
+		long position = number * RECORD_SIZE;
+		while (record.hasRemaining()) {
+			if (log.read(record, position + record.position()) < 0) {
+				return false;
+			}
+		}
+		CRC32 crc = new CRC32();
+		crc.update(record.array(), 0, RECORD_CHECKSUM);
+		int length = record.getInt(32);
+		return (record.getInt(RECORD_CHECKSUM) == (int) crc.getValue()) && (length >= 0) && (length <= PLAYER_NAME_BYTES);
+	}
+
+/**	@return the 64 bit FNV-1a hash of the name in a record */
+	private static long nameHash(ByteBuffer record) {
+		long hash = 0xCBF29CE484222325L;
+		int length = record.getInt(32);
+		for (int i=0; i < length; i++) {
+			hash = (hash ^ (record.get(RECORD_NAME + i) & 0xFF)) * 0x100000001B3L;
+		}
+		return hash;
+	}
+
+/**	@return the game in a record */
+	private static Game toGame(long number, ByteBuffer record) {
+		String player = new String(record.array(), RECORD_NAME, record.getInt(32), StandardCharsets.UTF_8);
+		return new Game(number, player, record.getLong(16), record.getInt(24), record.getInt(28), record.getLong(8), record.getLong(0));
+	}
+
+/**	@return the best k scores recorded, best first, at most TOP_SIZE */
+	public synchronized List<Game> getTopScores(int k) throws IOException {
+		int count = Math.min(k, indexMap.getInt(HEADER_TOP_COUNT));
+		List<Game> top = new ArrayList<Game>(count);
+		ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+		for (int i=0; i < count; i++) {
+			long number = indexMap.getLong(topEntry(i) + 8);
+			readRecord(number, record);
+			top.add(toGame(number, record));
+		}
+		return top;
+	}
+
+/**	@return the last k games of the player, the latest first */
+	public synchronized List<Game> getPlayerHistory(String player, int k) throws IOException {
+		List<Game> history = new ArrayList<Game>();
+		ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+		byte[] name = playerName(player);
+		record.putInt(32, name.length);
+		System.arraycopy(name, 0, record.array(), RECORD_NAME, name.length);
+		long playerHash = nameHash(record);
+		int mask = playerSlots - 1;
+		for (int slot = (int) playerHash & mask; ; slot = (slot + 1) & mask) {
+			int entry = playerEntry(slot);
+			long last = indexMap.getLong(entry + 8);
+			if (last == 0) {
+				return history;
+			}
+			if (indexMap.getLong(entry) == playerHash) {
+				for (long next = last; (next != 0) && (history.size() < k); next = indexMap.getLong(gameEntry(next - 1))) {
+					readRecord(next - 1, record);
+					history.add(toGame(next - 1, record));
+				}
+				return history;
+			}
+		}
+	}
+
+/**	@return the number of games written and indexed */
+	public synchronized long getGameCount() {
+		return games;
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if ((args.length >= 3) && args[0].equals("fill")) {
+			HighScoreStore store = open(Paths.get(args[1]));
+			long count = Long.parseLong(args[2]);
+			int players = (args.length > 3) ? Integer.parseInt(args[3]) : 1000;
+			java.util.Random random = new java.util.Random();
+			long start = System.nanoTime();
+			for (long i=0; i < count; i++) {
+				store.submit("player" + random.nextInt(players), random.nextInt(1000000), random.nextInt(301),
+						30000 + random.nextInt(300000), random.nextLong());
+			}
+			store.flush();
+			System.out.println(String.format("recorded %d games in %.1f s, %d games in the store",
+					count, (System.nanoTime() - start) / 1e9, store.getGameCount()));
+			store.close();
+		}
+		else if ((args.length >= 2) && args[0].equals("top")) {
+			long start = System.nanoTime();
+			HighScoreStore store = open(Paths.get(args[1]));
+			long opened = System.nanoTime();
+			int k = (args.length > 2) ? Integer.parseInt(args[2]) : 10;
+			List<Game> top = store.getTopScores(k);
+			long queried = System.nanoTime();
+			store.getTopScores(k);
+			long again = System.nanoTime();
+			for (Game game : top) {
+				System.out.println(game);
+			}
+			System.out.println(String.format("%d games, opened in %.1f ms, top %d in %.3f ms, %.3f ms the second time",
+					store.getGameCount(), (opened - start) / 1e6, k, (queried - opened) / 1e6, (again - queried) / 1e6));
+			store.close();
+		}
+		else if ((args.length >= 3) && args[0].equals("history")) {
+			HighScoreStore store = open(Paths.get(args[1]));
+			int k = (args.length > 3) ? Integer.parseInt(args[3]) : 10;
+			long start = System.nanoTime();
+			List<Game> history = store.getPlayerHistory(args[2], k);
+			long queried = System.nanoTime();
+			for (Game game : history) {
+				System.out.println(game);
+			}
+			System.out.println(String.format("%d games, last %d of %s in %.3f ms",
+					store.getGameCount(), history.size(), args[2], (queried - start) / 1e6));
+			store.close();
+		}
+		else {
+			System.err.println("Usage: HighScoreStore fill <dir> <games> [players] | top <dir> [k] | history <dir> <player> [k]");
+			System.exit(1);
+		}
+	}
+
+
+/**
+ * 	INSTANCE VARIABLES
+ */
+
+/**	The log, and the number of games in it. games is only changed by the writer, holding the lock of the store */
+	private final FileChannel log;
+	private long games;
+
+/**	The index file and its mapping, and its size */
+	private final Path indexPath;
+	private FileChannel index;
+	private MappedByteBuffer indexMap;
+	private int playerSlots;
+	private long gameCapacity;
+
+/**	The results waiting to be written, and the writer thread */
+	private final LinkedBlockingQueue<Game> pending = new LinkedBlockingQueue<Game>();
+	private final Thread writer;
+
+/**	The number of results submitted and written, for flush, guarded by flushLock */
+	private final Object flushLock = new Object();
+	private long submitted, written;
+
+/**	The first error the writer had, thrown by close */
+	private volatile IOException writeError;
+
+}
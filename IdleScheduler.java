@@ -0,0 +1,123 @@
+/**
+ * File: IdleScheduler.java
+
+ * Parks the game thread while nothing in the game can change, and wakes it as soon as some input arrives.
+ * The game loop used to tick and redraw the board at the full rate all the time, also while the game was
+ * paused, the window was minimized or nobody had served the ball yet, so an idle game cost as much CPU
+ * as one being played. Now the game thread asks the scheduler to park while a condition holds (paused,
+ * minimized, waiting for a click), and whichever thread changes that condition (the AWT thread, on a key,
+ * a click or the window coming back) calls wake, which unparks the game thread straight away.
+ * The game thread then checks the condition again, and goes on if it no longer holds.
+
+ *	NOTES:
+ *	The condition is read from volatile fields set before wake is called, and the game thread is published
+ *	before the condition is checked, so a wake can not be lost between the check and the park. The game thread
+ *	still checks again every RECHECK_NANOS, in case a condition changes without anybody calling wake.
+ *	A Listener is told when the game goes idle and when it is running again, so the other threads of the game
+ *	(e.g. the consumers of the collision events) can sleep too while there is nothing for them to do.
+ *	The time from a wake to the game thread running again is recorded in LatencyStats.
+ *	Nothing is allocated by wake, or by parkWhile when the game is not idle.
+ */
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+public class IdleScheduler {
+
+/**	The longest the game thread stays parked before it checks the condition again */
+	private static final long RECHECK_NANOS = 1000000000L;
+
+/**	Told when the game goes idle and when it is running again, on the game thread */
+	public interface Listener {
+		void idleChanged(boolean idle);
+	}
+
+/**	Creates a scheduler
+ * @param wakeBudgetNanos The longest the time from a wake to the game thread running should be
+ */
+	public IdleScheduler(long wakeBudgetNanos) {
+		wakeStats = new LatencyStats("wake", wakeBudgetNanos);
+	}
+
+/**	Sets the listener told when the game goes idle and when it is running again
+ * @param listener The listener, or null for none
+ */
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+/**	Parks the calling thread for as long as the condition holds, returns straight away if it does not
+ * @param idle True while nothing in the game can change
+ * @return the nanoseconds the thread was parked for, 0 if the game was not idle
+ */
+	public long parkWhile(BooleanSupplier idle) {
+		if (!idle.getAsBoolean()) {
+			return 0;
+		}
+		long start = System.nanoTime();
+		parkedThread = Thread.currentThread();
+		idlePeriods++;
+		if (listener != null) {
+			listener.idleChanged(true);
+		}
+		while (idle.getAsBoolean()) {
+			LockSupport.parkNanos(this, RECHECK_NANOS);
+			wakeups++;
+		}
+		long now = System.nanoTime();
+		long wokenAt = wakeTime;
+		if (wokenAt - start > 0) {
+			wakeStats.record(now - wokenAt);
+		}
+		if (listener != null) {
+			listener.idleChanged(false);
+		}
+		idleNanos += now - start;
+		return now - start;
+	}
+
+/**	Wakes the parked game thread, called from any thread once it has changed the condition the game is parked on */
+	public void wake() {
+		wakeTime = System.nanoTime();
+		Thread thread = parkedThread;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+/**	@return the total nanoseconds the game thread has been parked */
+	public long getIdleNanos() {
+		return idleNanos;
+	}
+
+/**	@return the times from a wake to the game thread running again */
+	public LatencyStats getWakeStats() {
+		return wakeStats;
+	}
+
+/**	@return how long the game was idle, how often, and how quickly it woke up */
+	public String toString() {
+		return String.format("%s, idle %.1f s in %d periods, %d wakeups", wakeStats, idleNanos / 1e9, idlePeriods, wakeups);
+	}
+
+
+/**
+ * 	INSTANCE VARIABLES
+ */
+
+/**	The thread which last parked, unparked by wake */
+	private volatile Thread parkedThread;
+
+/**	The time of the latest wake */
+	private volatile long wakeTime;
+
+/**	Told when the game goes idle and when it runs again */
+	private Listener listener;
+
+/**	Counts of the parking, only written by the parked thread */
+	private long idleNanos, idlePeriods, wakeups;
+
+/**	The times from a wake to the game thread running again */
+	private final LatencyStats wakeStats;
+
+}
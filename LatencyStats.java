@@ -0,0 +1,140 @@
+/**
+ * File: LatencyStats.java
+
+ * Records durations (in nanoseconds) into a histogram and reports percentiles of them.
+ * The histogram has 16 buckets for every power of two, so a value is reported to within
+ * about 6% of what was recorded. The buckets are allocated once, recording a value
+ * is only an increment, so this can be used in the game loop on every tick.
+ 
+ * Not thread safe, each thread which records durations should have its own stats.
+ */
+public class LatencyStats {
+
+/**	The number of buckets for each power of two */
+	private static final int SUB_BUCKETS = 16;
+	private static final int SUB_BUCKET_BITS = 4;
+
+/**	Enough buckets for any value up to 2^62 nanoseconds */
+	private static final int NUM_BUCKETS = SUB_BUCKETS + (62 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+/**	Creates the stats
+ * @param name The name the stats are reported with
+ * @param budgetNanos The budget of each duration, the number of durations over it are counted.
+ */
+	public LatencyStats(String name, long budgetNanos) {
+		this.name = name;
+		this.budgetNanos = budgetNanos;
+	}
+
+/**	Records a single duration
+ * @param nanos The duration in nanoseconds, negative values are recorded as 0
+ */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		counts[bucketOf(nanos)]++;
+		count++;
+		if (nanos > max) {
+			max = nanos;
+		}
+		if (nanos > budgetNanos) {
+			overBudget++;
+		}
+	}
+
+/**	Gets the value below which the given percentage of the recorded durations fall
+ * @param percentile between 0 and 100
+ * @return the upper bound of the bucket the percentile is in, in nanoseconds, or 0 if nothing is recorded
+ */
+	public long getPercentile(double percentile) {
+		if (count == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil((percentile / 100.0) * count);
+		if (rank < 1) {
+			rank = 1;
+		}
+		long seen = 0;
+		for (int i=0; i < NUM_BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(bucketUpperBound(i), max);
+			}
+		}
+		return max;
+	}
+
+/**	Clears all the recorded durations */
+	public void reset() {
+		java.util.Arrays.fill(counts, 0);
+		count = 0;
+		max = 0;
+		overBudget = 0;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+/**	@return the number of durations which were longer than the budget */
+	public long getOverBudget() {
+		return overBudget;
+	}
+
+/**	@return A summary of the percentiles in milliseconds */
+	public String toString() {
+		return String.format("%s: n=%d p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms over %.2fms budget=%d",
+				name, count, millis(getPercentile(50)), millis(getPercentile(90)), millis(getPercentile(99)),
+				millis(max), millis(budgetNanos), overBudget);
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1e6;
+	}
+
+/**	Finds the bucket of a value. Values below 16 have a bucket each, above that each
+ * 	power of two is split into 16 buckets by the 4 bits after the highest bit.
+ */
+	private static int bucketOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int magnitude = 63 - Long.numberOfLeadingZeros(value);
+		int shift = magnitude - SUB_BUCKET_BITS;
+		int subBucket = (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+		return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+	}
+
+/**	@return the largest value which falls in the bucket */
+	private static long bucketUpperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+		int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+		return (((long) (SUB_BUCKETS + subBucket + 1)) << shift) - 1;
+	}
+
+	
+/**
+ * 	INSTANCE VARIABLES
+ */
+	
+/**	The name the stats are reported with */
+	private final String name;
+
+/**	Durations longer than this are counted in overBudget */
+	private final long budgetNanos;
+
+/**	The number of durations recorded in each bucket */
+	private final long[] counts = new long[NUM_BUCKETS];
+
+/**	The total number of durations, the longest one and the number over budget */
+	private long count, max, overBudget;
+
+}
@@ -0,0 +1,257 @@
+/**
+ * File: LevelPack.java
+
+ * A pack of breakout levels, in a compact binary file which is memory mapped.
+ * Opening a pack only reads its header, a level is a view onto the mapped file, and the cells of
+ * a level are read straight from the mapping when the simulation needs them. So a pack of hundreds
+ * of levels opens instantly, with nothing parsed or allocated for each level up front.
+ * The cells of a level are checked once, when the level is opened, so a damaged pack is reported then
+ * rather than read as bricks of a color which is not in the palette.
+ 
+ * File layout, big endian:
+ * 	magic "BRKL", version, number of colors, number of levels
+ * 	the palette, an RGB int for each color
+ * 	the index, for each level: offset of its cells, rows, columns, number of bricks
+ * 	the cells of each level, row by row, 2 bytes each:
+ * 		bits 0-7 the color (index into the palette), bits 8-11 the hit points (0 for no brick),
+ * 		bits 12-15 the type of brick (only TYPE_NORMAL is defined)
+ 
+ * Run with:  java -cp .:acm.jar LevelPack create <file> [levels]   - writes a pack of generated levels
+ *            java -cp .:acm.jar LevelPack info <file>              - opens a pack and prints its levels
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public class LevelPack {
+
+/**	Start of every level pack, "BRKL" */
+	private static final int MAGIC = 0x42524B4C;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	private static final int INDEX_ENTRY_SIZE = 20;
+
+/**	The types of brick */
+	public static final int TYPE_NORMAL = 0;
+
+/**	The most hit points a brick can have */
+	public static final int MAX_HIT_POINTS = 15;
+
+/**	Opens a pack, mapping the whole file
+ * @param path The pack file
+ * @return the pack
+ * @throws IOException if the file can not be read or is not a level pack
+ */
+	public static LevelPack open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new LevelPack(buffer, path);
+		}
+	}
+
+	private LevelPack(ByteBuffer buffer, Path path) throws IOException {
+		this.buffer = buffer;
+		this.path = path;
+		if ((buffer.capacity() < HEADER_SIZE) || (buffer.getInt(0) != MAGIC)) {
+			throw new IOException("Not a level pack: " + path);
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("Unsupported level pack version " + buffer.getInt(4) + ": " + path);
+		}
+		colorCount = buffer.getInt(8);
+		levelCount = buffer.getInt(12);
+		if ((colorCount < 0) || (colorCount > 256) || (levelCount < 0)) {
+			throw new IOException("Level pack has " + colorCount + " colors and " + levelCount + " levels: " + path);
+		}
+		indexOffset = HEADER_SIZE + colorCount * 4;
+		if (buffer.capacity() < indexOffset + (long) levelCount * INDEX_ENTRY_SIZE) {
+			throw new IOException("Level pack is truncated: " + path);
+		}
+	}
+
+	public int getLevelCount() {
+		return levelCount;
+	}
+
+/**	Opens a level, checking its cells against the palette and its number of bricks
+ * @return a view of the level, reading its cells from the mapped file
+ * @throws IOException if the level is damaged
+ */
+	public Level getLevel(int level) throws IOException {
+		if ((level < 0) || (level >= levelCount)) {
+			throw new IllegalArgumentException("No level " + level + " in a pack of " + levelCount);
+		}
+		int entry = indexOffset + level * INDEX_ENTRY_SIZE;
+		long offset = buffer.getLong(entry);
+		int rows = buffer.getInt(entry + 8);
+		int columns = buffer.getInt(entry + 12);
+		int brickCount = buffer.getInt(entry + 16);
+		if ((offset < 0) || (rows < 0) || (columns < 0) || (offset + (long) rows * columns * 2 > buffer.capacity())) {
+			throw new IOException("Level " + level + " runs past the end of the pack: " + path);
+		}
+		int bricks = 0;
+		for (int i=0; i < rows * columns; i++) {
+			int cell = buffer.getShort((int) offset + i * 2) & 0xFFFF;
+			if ((cell & 0xFF) >= colorCount) {
+				throw new IOException("Level " + level + " has color " + (cell & 0xFF) + " at cell " + i
+						+ ", the palette has " + colorCount + ": " + path);
+			}
+			if (((cell >>> 8) & 0xF) != 0) {
+				bricks++;
+			}
+		}
+		if (bricks != brickCount) {
+			throw new IOException("Level " + level + " has " + bricks + " bricks, its index says " + brickCount + ": " + path);
+		}
+		return new Level((int) offset, rows, columns, brickCount);
+	}
+
+/**	@return the RGB value of a color of the palette */
+	public int getColor(int color) {
+		return buffer.getInt(HEADER_SIZE + color * 4);
+	}
+
+/**	A level of the pack, its cells are read from the mapping when they are asked for */
+	public class Level {
+
+		Level(int offset, int rows, int columns, int brickCount) {
+			this.offset = offset;
+			this.rows = rows;
+			this.columns = columns;
+			this.brickCount = brickCount;
+		}
+
+		public int getRows() {
+			return rows;
+		}
+
+		public int getColumns() {
+			return columns;
+		}
+
+/**	@return the number of bricks in the level, the cells with hit points */
+		public int getBrickCount() {
+			return brickCount;
+		}
+
+/**	@return the hit points of the brick in the cell, 0 if there is no brick */
+		public int getHitPoints(int row, int column) {
+			return (cell(row, column) >>> 8) & 0xF;
+		}
+
+/**	@return the RGB color of the brick in the cell */
+		public int getColor(int row, int column) {
+			return LevelPack.this.getColor(cell(row, column) & 0xFF);
+		}
+
+/**	@return the type of the brick in the cell */
+		public int getType(int row, int column) {
+			return (cell(row, column) >>> 12) & 0xF;
+		}
+
+		private int cell(int row, int column) {
+			return buffer.getShort(offset + (row * columns + column) * 2) & 0xFFFF;
+		}
+
+		private final int offset, rows, columns, brickCount;
+	}
+
+/**	Writes a pack of levels
+ * @param path The file to write, it is replaced if it exists
+ * @param palette The RGB values of the colors, at most 256
+ * @param rows @param columns The size of each level, the same for all of them
+ * @param hitPoints For each level, the hit points of every cell row by row, 0 for no brick
+ * @param colors For each level, the palette index of the color of every cell row by row
+ */
+	public static void write(Path path, int[] palette, int rows, int columns, byte[][] hitPoints, byte[][] colors) throws IOException {
+		if (palette.length > 256) {
+			throw new IllegalArgumentException("A pack can have at most 256 colors");
+		}
+		int levels = hitPoints.length;
+		int cells = rows * columns;
+		int dataOffset = HEADER_SIZE + palette.length * 4 + levels * INDEX_ENTRY_SIZE;
+		ByteBuffer out = ByteBuffer.allocate(dataOffset + levels * cells * 2);
+		out.putInt(MAGIC).putInt(VERSION).putInt(palette.length).putInt(levels);
+		for (int color : palette) {
+			out.putInt(color);
+		}
+		for (int level=0; level < levels; level++) {
+			int bricks = 0;
+			for (int i=0; i < cells; i++) {
+				if (hitPoints[level][i] > 0) {
+					bricks++;
+				}
+			}
+			out.putLong(dataOffset + (long) level * cells * 2).putInt(rows).putInt(columns).putInt(bricks);
+		}
+		for (int level=0; level < levels; level++) {
+			for (int i=0; i < cells; i++) {
+				int points = hitPoints[level][i];
+				if ((points < 0) || (points > MAX_HIT_POINTS)) {
+					throw new IllegalArgumentException("Hit points must be between 0 and " + MAX_HIT_POINTS);
+				}
+				out.putShort((short) ((TYPE_NORMAL << 12) | (points << 8) | (colors[level][i] & 0xFF)));
+			}
+		}
+		Files.write(path, out.array());
+	}
+
+	public static void main(String[] args) throws IOException {
+		if ((args.length >= 2) && args[0].equals("create")) {
+			createSamplePack(Paths.get(args[1]), (args.length > 2) ? Integer.parseInt(args[2]) : 500);
+		}
+		else if ((args.length >= 2) && args[0].equals("info")) {
+			long start = System.nanoTime();
+			LevelPack pack = open(Paths.get(args[1]));
+			long bricks = 0;
+			for (int i=0; i < pack.getLevelCount(); i++) {
+				bricks += pack.getLevel(i).getBrickCount();
+			}
+			System.out.println(String.format("%d levels, %d bricks, opened in %.3f ms", 
+					pack.getLevelCount(), bricks, (System.nanoTime() - start) / 1e6));
+		}
+		else {
+			System.err.println("Usage: LevelPack create <file> [levels] | LevelPack info <file>");
+			System.exit(1);
+		}
+	}
+
+/**	Writes a pack of random levels the size of the normal board, with the colors of the normal rows */
+	private static void createSamplePack(Path path, int levels) throws IOException {
+		int[] palette = { java.awt.Color.RED.getRGB(), java.awt.Color.ORANGE.getRGB(), java.awt.Color.YELLOW.getRGB(),
+				java.awt.Color.GREEN.getRGB(), java.awt.Color.CYAN.getRGB() };
+		int rows = BreakoutSimulation.NBRICK_ROWS, columns = BreakoutSimulation.NBRICKS_PER_ROW;
+		java.util.Random random = new java.util.Random(levels);
+		byte[][] hitPoints = new byte[levels][rows * columns];
+		byte[][] colors = new byte[levels][rows * columns];
+		for (int level=0; level < levels; level++) {
+			for (int i=0; i < rows * columns; i++) {
+				hitPoints[level][i] = (byte) ((random.nextInt(5) == 0) ? 0 : 1 + random.nextInt(3));
+				colors[level][i] = (byte) (((i / columns) / 2) % palette.length);
+			}
+		}
+		write(path, palette, rows, columns, hitPoints, colors);
+	}
+
+	
+/**
+ * 	INSTANCE VARIABLES
+ */
+	
+/**	The mapped file, and where it is, for the errors */
+	private final ByteBuffer buffer;
+	private final Path path;
+
+/**	The number of colors in the palette and levels in the pack */
+	private final int colorCount, levelCount;
+
+/**	Where the index of the levels starts */
+	private final int indexOffset;
+
+}
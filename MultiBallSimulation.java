@@ -0,0 +1,376 @@
+/**
+ * File: MultiBallSimulation.java
+
+ * A multi-ball mode of the breakout game, for thousands of balls on the same board.
+ * The balls are stored as arrays of primitives, ball i has its location and velocity at index i.
+ * Each tick has three phases:
+ * 	1. Every ball is moved and bounced off the walls and paddle, and the brick it overlaps (if any) is found.
+ * 	   The balls are independent here, so with many balls this phase is split across the cores.
+ * 	2. The brick hits are resolved, in order of the balls, so that two balls hitting the same brick
+ * 	   in a tick is decided the same way every time.
+ * 	3. Balls which touch each other are bounced apart. The pairs are found by sweep and prune,
+ * 	   the balls are kept sorted by their left edge and only balls whose x ranges overlap are compared.
+ * 	   The order changes little from tick to tick, so an insertion sort keeps it sorted in close to linear time.
+ 
+ *	NOTES:
+ *	The bricks use the same layout, grid index and brick store as the single ball game.
+ *	Collisions here are found by overlap at the end of the move, not by sweeping like the single ball game,
+ *	the balls move at the normal speed so they can not pass through a brick in a tick.
+ *	Balls which go below the paddle are removed.
+ 
+ * Run with:  java -cp .:acm.jar MultiBallSimulation [balls] [seconds]
+ */
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class MultiBallSimulation {
+
+/**	Dimensions of the board, bricks, paddle and balls, same as the single ball game */
+	private static final int WIDTH = BreakoutSimulation.WIDTH;
+	private static final int HEIGHT = BreakoutSimulation.HEIGHT;
+	private static final int BALL_WIDTH = BreakoutSimulation.BALL_WIDTH;
+	private static final int PADDLE_WIDTH = BreakoutSimulation.PADDLE_WIDTH;
+	private static final int PADDLE_HEIGHT = BreakoutSimulation.PADDLE_HEIGHT;
+	private static final int BRICK_WIDTH = BreakoutSimulation.BRICK_WIDTH;
+	private static final int BRICK_HEIGHT = BreakoutSimulation.BRICK_HEIGHT;
+	private static final int NBRICKS_PER_ROW = BreakoutSimulation.NBRICKS_PER_ROW;
+	private static final int NBRICK_ROWS = BreakoutSimulation.NBRICK_ROWS;
+
+/**	With at least this many balls, the first phase of a tick is split across the cores */
+	private static final int PARALLEL_THRESHOLD = 2048;
+
+/**	The number of balls each task of the first phase moves */
+	private static final int BALLS_PER_TASK = 1024;
+
+/**	Value of hitBrick for a ball which did not hit a brick */
+	private static final int NO_BRICK = -1;
+
+/**	Creates an empty board with room for the given number of balls
+ * @param capacity The most balls the board can hold
+ */
+	public MultiBallSimulation(int capacity) {
+		this.capacity = capacity;
+		x = new double[capacity];
+		y = new double[capacity];
+		vx = new double[capacity];
+		vy = new double[capacity];
+		hitBrick = new int[capacity];
+		order = new int[capacity];
+		remap = new int[capacity];
+		int brick = 0;
+		for (int row = 0; row < NBRICK_ROWS; row++) {
+			for (int column = 0; column < NBRICKS_PER_ROW; column++) {
+				bricks.setBrick(brick, brickGrid.getBrickX(brick), brickGrid.getBrickY(brick), 0, 1);
+				brick++;
+			}
+		}
+		bricks.reset();
+		paddleX = (WIDTH - PADDLE_WIDTH) / 2;
+		paddleY = HEIGHT - BreakoutSimulation.PADDLE_Y_OFFSET - PADDLE_WIDTH;
+	}
+
+/**	Adds a ball to the board
+ * @param ballX @param ballY The top left corner of the ball
+ * @param ballVX @param ballVY The velocity of the ball, in pixels a tick
+ * @return false if the board is full
+ */
+	public boolean addBall(double ballX, double ballY, double ballVX, double ballVY) {
+		if (count == capacity) {
+			return false;
+		}
+		x[count] = ballX;
+		y[count] = ballY;
+		vx[count] = ballVX;
+		vy[count] = ballVY;
+		order[count] = count;
+		count++;
+		return true;
+	}
+
+/**	Advances all the balls by one tick
+ * @param paddleTargetX The x location of the paddle, it is kept within the walls
+ * @return the number of bricks removed in the tick
+ */
+	public int step(double paddleTargetX) {
+		paddleX = Math.max(0, Math.min(WIDTH - PADDLE_WIDTH, paddleTargetX));
+		if (count >= PARALLEL_THRESHOLD) {
+			pool.invoke(new MoveRange(0, count));
+		}
+		else {
+			moveBalls(0, count);
+		}
+		int removed = resolveBrickHits();
+		sortByX();
+		resolveBallCollisions();
+		removeLostBalls();
+		return removed;
+	}
+
+/**	Phase 1, moves the balls in the range and bounces them off the walls and the paddle, 
+ * 	and finds the brick each one overlaps. Only the arrays of the balls in the range are written.
+ */
+	private void moveBalls(int from, int to) {
+		for (int i = from; i < to; i++) {
+			double ballX = x[i] + vx[i];
+			double ballY = y[i] + vy[i];
+			if ((ballX <= 0) && (vx[i] < 0)) {
+				vx[i] = -vx[i];
+			}
+			else if ((ballX + BALL_WIDTH >= WIDTH) && (vx[i] > 0)) {
+				vx[i] = -vx[i];
+			}
+			if ((ballY <= 0) && (vy[i] < 0)) {
+				vy[i] = -vy[i];
+			}
+			/* Bouncing off the top of the paddle */
+			if ((vy[i] > 0) && (ballY + BALL_WIDTH >= paddleY) && (ballY < paddleY + PADDLE_HEIGHT) &&
+					(ballX + BALL_WIDTH > paddleX) && (ballX < paddleX + PADDLE_WIDTH)) {
+				vy[i] = -vy[i];
+			}
+			x[i] = ballX;
+			y[i] = ballY;
+			hitBrick[i] = findBrick(ballX, ballY);
+		}
+	}
+
+/**	Finds a live brick overlapped by the square of a ball, checking only the grid cells it covers
+ * @return the brick, or NO_BRICK
+ */
+	private int findBrick(double ballX, double ballY) {
+		int firstRow = Math.max(0, brickGrid.getRow(ballY));
+		int lastRow = Math.min(NBRICK_ROWS - 1, brickGrid.getRow(ballY + BALL_WIDTH));
+		if (firstRow > lastRow) {
+			return NO_BRICK;
+		}
+		int firstColumn = Math.max(0, brickGrid.getColumn(ballX));
+		int lastColumn = Math.min(NBRICKS_PER_ROW - 1, brickGrid.getColumn(ballX + BALL_WIDTH));
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				int brick = row * NBRICKS_PER_ROW + column;
+				if (bricks.isAlive(brick)) {
+					int brickX = bricks.getX(brick), brickY = bricks.getY(brick);
+					if ((ballX < brickX + BRICK_WIDTH) && (ballX + BALL_WIDTH > brickX) &&
+							(ballY < brickY + BRICK_HEIGHT) && (ballY + BALL_WIDTH > brickY)) {
+						return brick;
+					}
+				}
+			}
+		}
+		return NO_BRICK;
+	}
+
+/**	Phase 2, removes the bricks hit in the tick, in order of the balls. The ball bounces 
+ * 	even if an earlier ball in the same tick already removed the brick.
+ * @return the number of bricks removed
+ */
+	private int resolveBrickHits() {
+		int removed = 0;
+		for (int i=0; i < count; i++) {
+			int brick = hitBrick[i];
+			if (brick == NO_BRICK) {
+				continue;
+			}
+			vy[i] = -vy[i];
+			if (bricks.isAlive(brick) && bricks.hit(brick)) {
+				removed++;
+			}
+		}
+		return removed;
+	}
+
+/**	Keeps the order array sorted by the x location of the balls, with an insertion sort */
+	private void sortByX() {
+		for (int i=1; i < count; i++) {
+			int ball = order[i];
+			double ballX = x[ball];
+			int j = i - 1;
+			while ((j >= 0) && (x[order[j]] > ballX)) {
+				order[j + 1] = order[j];
+				j--;
+			}
+			order[j + 1] = ball;
+		}
+	}
+
+/**	Phase 3, sweep and prune. Going along the balls sorted by x, each ball is only compared
+ * 	with the balls after it which start before its right edge. Touching balls which are moving
+ * 	towards each other swap their velocities along the axis they overlap least on.
+ */
+	private void resolveBallCollisions() {
+		for (int i=0; i < count; i++) {
+			int a = order[i];
+			double right = x[a] + BALL_WIDTH;
+			for (int j = i + 1; (j < count) && (x[order[j]] < right); j++) {
+				int b = order[j];
+				double overlapY = BALL_WIDTH - Math.abs(y[a] - y[b]);
+				if (overlapY <= 0) {
+					continue;
+				}
+				double overlapX = BALL_WIDTH - Math.abs(x[a] - x[b]);
+				if (overlapX < overlapY) {
+					/* a is to the left of b, they are approaching if a is moving right faster than b */
+					if (vx[a] - vx[b] > 0) {
+						double swap = vx[a];
+						vx[a] = vx[b];
+						vx[b] = swap;
+						ballCollisions++;
+					}
+				}
+				else if ((y[a] - y[b]) * (vy[a] - vy[b]) < 0) {
+					double swap = vy[a];
+					vy[a] = vy[b];
+					vy[b] = swap;
+					ballCollisions++;
+				}
+			}
+		}
+	}
+
+/**	Removes the balls which went below the bottom of the board, moving the rest down
+ * 	so that the live balls are always the first count entries. The sorted order is kept.
+ */
+	private void removeLostBalls() {
+		int kept = 0;
+		for (int i=0; i < count; i++) {
+			if (y[i] + BALL_WIDTH >= HEIGHT) {
+				remap[i] = -1;
+				continue;
+			}
+			remap[i] = kept;
+			x[kept] = x[i];
+			y[kept] = y[i];
+			vx[kept] = vx[i];
+			vy[kept] = vy[i];
+			kept++;
+		}
+		if (kept == count) {
+			return;
+		}
+		int sorted = 0;
+		for (int i=0; i < count; i++) {
+			int ball = remap[order[i]];
+			if (ball >= 0) {
+				order[sorted++] = ball;
+			}
+		}
+		count = kept;
+	}
+
+/**	Puts all the bricks back on the board */
+	public void resetBricks() {
+		bricks.reset();
+	}
+
+	public int getBallCount() {
+		return count;
+	}
+
+	public double getBallX(int ball) {
+		return x[ball];
+	}
+
+	public double getBallY(int ball) {
+		return y[ball];
+	}
+
+	public int getBricksRemaining() {
+		return bricks.getLiveCount();
+	}
+
+/**	@return the number of times two balls have bounced off each other */
+	public long getBallCollisions() {
+		return ballCollisions;
+	}
+
+/**	Moves a range of balls, splitting the range in half until it is small enough */
+	private class MoveRange extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		MoveRange(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from > BALLS_PER_TASK) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new MoveRange(from, middle), new MoveRange(middle, to));
+			}
+			else {
+				moveBalls(from, to);
+			}
+		}
+
+		private final int from, to;
+	}
+
+/**	The stress scenario, thousands of balls on the normal board at 120 ticks a second.
+ * 	Balls which are lost are served again from the middle, so the count stays the same.
+ */
+	public static void main(String[] args) {
+		int balls = (args.length > 0) ? Integer.parseInt(args[0]) : 5000;
+		int seconds = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+		double ticksPerSecond = 120;
+		double speedScale = BreakoutSimulation.REFERENCE_TICKS_PER_SECOND / ticksPerSecond;
+		MultiBallSimulation simulation = new MultiBallSimulation(balls);
+		java.util.Random random = new java.util.Random(0);
+		LatencyStats tickStats = new LatencyStats("tick", (long) (1e9 / ticksPerSecond));
+		long bricksRemoved = 0;
+		for (int tick = 0; tick < seconds * ticksPerSecond; tick++) {
+			while (simulation.getBallCount() < balls) {
+				double speed = BreakoutSimulation.BALL_X_LOWER_VELOCITY +
+						random.nextDouble() * (BreakoutSimulation.BALL_X_UPPER_VELOCITY - BreakoutSimulation.BALL_X_LOWER_VELOCITY);
+				simulation.addBall(random.nextDouble() * (WIDTH - BALL_WIDTH), 200 + random.nextDouble() * 200,
+						(random.nextBoolean() ? speed : -speed) * speedScale,
+						-BreakoutSimulation.BALL_Y_VELOCITY * speedScale);
+			}
+			if (simulation.getBricksRemaining() == 0) {
+				simulation.resetBricks();
+			}
+			long start = System.nanoTime();
+			bricksRemoved += simulation.step(200 + 150 * Math.sin(tick / 60.0));
+			tickStats.record(System.nanoTime() - start);
+		}
+		System.out.println(String.format("%d balls on %d cores, %d bricks removed, %d ball collisions", 
+				balls, Runtime.getRuntime().availableProcessors(), bricksRemoved, simulation.getBallCollisions()));
+		System.out.println(tickStats);
+	}
+
+	
+/**
+ * 	INSTANCE VARIABLES
+ */
+	
+/**	The most balls the board holds, and the number on it now */
+	private final int capacity;
+	private int count;
+
+/**	The top left corner and velocity of each ball */
+	private final double[] x, y, vx, vy;
+
+/**	The brick each ball hit in the current tick */
+	private final int[] hitBrick;
+
+/**	The balls sorted by x, for sweep and prune */
+	private final int[] order;
+
+/**	Where each ball moved to when lost balls were removed */
+	private final int[] remap;
+
+/**	The top left corner of the paddle */
+	private double paddleX, paddleY;
+
+/**	The bricks and their grid */
+	private final BrickGrid brickGrid = new BrickGrid(BreakoutSimulation.brickRowStartingLocation(), BreakoutSimulation.BRICK_Y_OFFSET,
+			BRICK_WIDTH, BRICK_HEIGHT, BreakoutSimulation.BRICK_SEP, NBRICKS_PER_ROW, NBRICK_ROWS);
+	private final BrickStore bricks = new BrickStore(NBRICKS_PER_ROW * NBRICK_ROWS);
+
+/**	The pool the first phase is split across */
+	private final ForkJoinPool pool = ForkJoinPool.commonPool();
+
+/**	The number of times two balls have bounced off each other */
+	private long ballCollisions;
+
+}
@@ -0,0 +1,107 @@
+/**
+ * File: PaddleInput.java
+
+ * Hands the mouse location from the AWT event thread to the game loop, without locks.
+ * The AWT thread publishes the latest x location of the mouse, packed into a single long
+ * with the time of the event, so both are seen together. Events which arrive between ticks
+ * overwrite each other, the game loop only reads the latest one once a tick.
+ 
+ *	NOTES:
+ *	publish is only called by the AWT thread, the other methods only by the game thread.
+ *	The time of the event is kept as the low 32 bits of System.nanoTime, which wraps every 4 seconds, 
+ *	the difference to the time the paddle moved is still correct for any latency shorter than 2 seconds.
+ *	Nothing is allocated on either side.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class PaddleInput {
+
+/**	The value before any event has been published */
+	private static final long NO_EVENT = Long.MIN_VALUE;
+
+/**	Creates the input, the budget is used for the latency stats
+ * @param latencyBudgetNanos The longest the time from a mouse event to the paddle moving should be
+ */
+	public PaddleInput(long latencyBudgetNanos) {
+		latencyStats = new LatencyStats("input", latencyBudgetNanos);
+	}
+
+/**	Publishes the latest location of the mouse, called by the AWT thread on each mouse event
+ * @param mouseX The x location of the mouse
+ */
+	public void publish(int mouseX) {
+		latest.set(((long) mouseX << 32) | (System.nanoTime() & 0xFFFFFFFFL));
+		eventsPublished++;
+	}
+
+/**	Reads the latest location of the mouse, called by the game loop once a tick
+ * @return true if the mouse moved since the last poll, the location is then given by getMouseX
+ */
+	public boolean poll() {
+		long value = latest.get();
+		if ((value == polled) || (value == NO_EVENT)) {
+			return false;
+		}
+		polled = value;
+		pendingLatency = true;
+		eventsPolled++;
+		return true;
+	}
+
+/**	Called by the game loop once the paddle has been moved to the polled location,
+ * 	the time from the mouse event is recorded once for each polled event.
+ */
+	public void markApplied() {
+		if (pendingLatency) {
+			int eventTime = (int) polled;
+			latencyStats.record((int) System.nanoTime() - eventTime);
+			pendingLatency = false;
+		}
+	}
+
+/**	@return true if a mouse location has been polled */
+	public boolean hasMouseX() {
+		return polled != NO_EVENT;
+	}
+
+/**	@return the x location of the mouse when it was last polled */
+	public int getMouseX() {
+		return (int) (polled >> 32);
+	}
+
+/**	@return the times from a mouse event to the paddle moving */
+	public LatencyStats getLatencyStats() {
+		return latencyStats;
+	}
+
+/**	@return a summary of the latency and how many events were coalesced */
+	public String toString() {
+		long published = eventsPublished;
+		return String.format("%s, mouse events=%d applied=%d", latencyStats, published, eventsPolled);
+	}
+
+	
+/**
+ * 	INSTANCE VARIABLES
+ */
+	
+/**	The latest mouse location and the low bits of the time of its event */
+	private final AtomicLong latest = new AtomicLong(NO_EVENT);
+
+/**	The number of events published, only written by the AWT thread */
+	private volatile long eventsPublished;
+
+/**	The value read by the last poll */
+	private long polled = NO_EVENT;
+
+/**	Set when the polled event has not had its latency recorded */
+	private boolean pendingLatency;
+
+/**	The number of events read by the game loop */
+	private long eventsPolled;
+
+/**	The times from a mouse event to the paddle moving */
+	private final LatencyStats latencyStats;
+
+}
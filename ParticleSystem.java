@@ -0,0 +1,277 @@
+/**
+ * File: ParticleSystem.java
+
+ * Small sparks thrown off when the ball breaks a brick or bounces off the paddle.
+ * The particles are not acm objects and are not on the canvas, so the board the collisions are looked
+ * up in never sees them. They are kept in arrays of primitives, one array for each of the position,
+ * velocity, remaining life and color, sized once for the most particles there can be. The live particles
+ * are the first count entries, a particle which dies is replaced by the last live one.
+ * Once a frame all of them are moved in one loop over the arrays, and the BoardRenderer draws them
+ * all in one pass, straight into the pixels of its frame image.
+ * A large burst is moved by several threads: the live particles are split into equal chunks, the calling
+ * thread moves the first and the workers of a WorkerPool the others, then the dead ones are removed on the
+ * calling thread. close stops the workers.
+
+ *	NOTES:
+ *	Emitting, moving and drawing allocate nothing, when the arrays are full new particles are dropped.
+ *	The random directions come from a small generator kept in a long, like the one of the simulation.
+ *	The particles fall with GRAVITY and die when their life is over or they leave the board.
+ *	The box around the live particles is found while the dead ones are removed, the renderer
+ *	redraws that box (where they were and where they are) instead of a rectangle for each particle.
+
+ * Run with:  java -cp .:acm.jar ParticleSystem [particles] [frames] [threads]
+ * 		times moving a steady number of particles, with 1 thread and with the given threads
+ */
+
+public class ParticleSystem {
+
+/**	The most particles alive together, by default */
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+/**	The width and height of a drawn particle, in pixels */
+	public static final int PARTICLE_SIZE = 2;
+
+/**	How fast the particles fall, in pixels per second per second */
+	private static final float GRAVITY = 600;
+
+/**	Bursts smaller than this are moved on the calling thread only, splitting them costs more than it saves */
+	private static final int PARALLEL_MIN_PARTICLES = 8192;
+
+/**	Creates a particle system
+ * @param capacity The most particles alive together
+ * @param threads The number of threads moving a large burst, including the one calling update
+ * @param boardWidth @param boardHeight The size of the board, particles leaving it die
+ */
+	public ParticleSystem(int capacity, int threads, int boardWidth, int boardHeight) {
+		if ((capacity < 1) || (threads < 1)) {
+			throw new IllegalArgumentException("Need room for a particle and at least one thread");
+		}
+		this.boardWidth = boardWidth;
+		this.boardHeight = boardHeight;
+		x = new float[capacity];
+		y = new float[capacity];
+		vx = new float[capacity];
+		vy = new float[capacity];
+		life = new float[capacity];
+		color = new int[capacity];
+		workers = new WorkerPool("particle worker", threads, this::moveChunk);
+	}
+
+/**	Throws particles out from a point in every direction
+ * @param centerX @param centerY Where they start
+ * @param particles The number of particles, as many as there is room for are added
+ * @param rgb Their color
+ * @param speed The fastest they move, in pixels per second, each one is given a speed between a third of this and this
+ * @param lifetime The longest they live, in seconds, each one lives between half of this and this
+ */
+	public void emitBurst(double centerX, double centerY, int particles, int rgb, double speed, double lifetime) {
+		int end = Math.min(x.length, count + particles);
+		for (int i = count; i < end; i++) {
+			double angle = 2 * Math.PI * nextDouble();
+			double particleSpeed = speed * (1 + 2 * nextDouble()) / 3;
+			x[i] = (float) centerX;
+			y[i] = (float) centerY;
+			vx[i] = (float) (Math.cos(angle) * particleSpeed);
+			vy[i] = (float) (Math.sin(angle) * particleSpeed);
+			life[i] = (float) (lifetime * (1 + nextDouble()) / 2);
+			color[i] = rgb;
+		}
+		if (end > count) {
+			/* The new particles are drawn where they start, before the next update finds the box around them */
+			boundsMinX = Math.min(boundsMinX, (int) centerX);
+			boundsMinY = Math.min(boundsMinY, (int) centerY);
+			boundsMaxX = Math.max(boundsMaxX, (int) centerX);
+			boundsMaxY = Math.max(boundsMaxY, (int) centerY);
+		}
+		count = end;
+	}
+
+/**	Removes all the particles, the renderer still clears the box they were last drawn in */
+	public void clear() {
+		count = 0;
+		boundsMinX = Integer.MAX_VALUE;
+		boundsMinY = Integer.MAX_VALUE;
+		boundsMaxX = Integer.MIN_VALUE;
+		boundsMaxY = Integer.MIN_VALUE;
+	}
+
+/**	Moves the particles on, and removes the ones which died
+ * @param seconds The time since the last update
+ */
+	public void update(double seconds) {
+		dt = (float) seconds;
+		if ((workers.getThreadCount() == 1) || (count < PARALLEL_MIN_PARTICLES)) {
+			move(0, count);
+		}
+		else {
+			/* The pool publishes the count and dt to the workers */
+			workers.run();
+		}
+		removeDead();
+	}
+
+/**	Moves a range of the particles, the inner loop of the system */
+	private void move(int from, int to) {
+		float dt = this.dt;
+		float fall = GRAVITY * dt;
+		for (int i = from; i < to; i++) {
+			x[i] += vx[i] * dt;
+			y[i] += vy[i] * dt;
+			vy[i] += fall;
+			life[i] -= dt;
+		}
+	}
+
+/**	Replaces each dead particle with the last live one, and finds the box around the particles left */
+	private void removeDead() {
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+		int i = 0;
+		while (i < count) {
+			float px = x[i], py = y[i];
+			if ((life[i] <= 0) || (px < 0) || (py < 0) || (px >= boardWidth) || (py >= boardHeight)) {
+				count--;
+				x[i] = x[count];
+				y[i] = y[count];
+				vx[i] = vx[count];
+				vy[i] = vy[count];
+				life[i] = life[count];
+				color[i] = color[count];
+				continue;
+			}
+			int ix = (int) px, iy = (int) py;
+			minX = Math.min(minX, ix);
+			minY = Math.min(minY, iy);
+			maxX = Math.max(maxX, ix);
+			maxY = Math.max(maxY, iy);
+			i++;
+		}
+		boundsMinX = minX;
+		boundsMinY = minY;
+		boundsMaxX = maxX;
+		boundsMaxY = maxY;
+	}
+
+/**	Draws the particles into the pixels of an image, clipped to it
+ * @param pixels The RGB pixels of the image, row by row
+ * @param width @param height The size of the image
+ */
+	public void draw(int[] pixels, int width, int height) {
+		for (int i=0; i < count; i++) {
+			int px = (int) x[i], py = (int) y[i];
+			int right = Math.min(width, px + PARTICLE_SIZE), bottom = Math.min(height, py + PARTICLE_SIZE);
+			int rgb = color[i];
+			for (int row = Math.max(0, py); row < bottom; row++) {
+				int offset = row * width;
+				for (int column = Math.max(0, px); column < right; column++) {
+					pixels[offset + column] = rgb;
+				}
+			}
+		}
+	}
+
+/**	Moves one of the equal chunks of the live particles, run by the pool */
+	private void moveChunk(int chunk) {
+		int chunks = workers.getThreadCount();
+		move((int) ((long) count * chunk / chunks), (int) ((long) count * (chunk + 1) / chunks));
+	}
+
+/**	@return a random double between 0 and 1, from the SplitMix64 generator */
+	private double nextDouble() {
+		long z = (randomState += 0x9E3779B97F4A7C15L);
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return ((z ^ (z >>> 31)) >>> 11) * 0x1.0p-53;
+	}
+
+/**	Stops the worker threads, the particles can not be updated after this */
+	public void close() {
+		workers.close();
+	}
+
+/**	@return the number of live particles */
+	public int getCount() {
+		return count;
+	}
+
+/**	@return the box around the top left corners of the live particles, as of the last update,
+ * 	empty (min greater than max) if there are none
+ */
+	public int getMinX() {
+		return boundsMinX;
+	}
+
+	public int getMinY() {
+		return boundsMinY;
+	}
+
+	public int getMaxX() {
+		return boundsMaxX;
+	}
+
+	public int getMaxY() {
+		return boundsMaxY;
+	}
+
+	public static void main(String[] args) {
+		int particles = (args.length > 0) ? Integer.parseInt(args[0]) : 50000;
+		int frames = (args.length > 1) ? Integer.parseInt(args[1]) : 2000;
+		int threads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		int width = BreakoutSimulation.WIDTH, height = BreakoutSimulation.HEIGHT;
+		int[] pixels = new int[width * height];
+		for (int run : new int[] {1, threads}) {
+			ParticleSystem system = new ParticleSystem(Math.max(DEFAULT_CAPACITY, particles * 2), run, width, height);
+			double seconds = 1 / 60.0;
+			long moveNanos = 0, drawNanos = 0, allocated = 0, live = 0;
+			for (int frame = -frames; frame < frames; frame++) {
+				/* Keep about the number of particles alive, bursts of 100 at random places */
+				while (system.getCount() < particles) {
+					system.emitBurst(width * system.nextDouble(), height * system.nextDouble(), 100, 0xFF8000, 200, 1.0);
+				}
+				long startBytes = BreakoutBenchmark.allocatedBytes();
+				long start = System.nanoTime();
+				system.update(seconds);
+				long moved = System.nanoTime();
+				system.draw(pixels, width, height);
+				long drawn = System.nanoTime();
+				long bytes = BreakoutBenchmark.allocatedBytes() - startBytes;
+				/* The first half of the frames warm up the JIT */
+				if (frame >= 0) {
+					moveNanos += moved - start;
+					drawNanos += drawn - moved;
+					allocated += bytes;
+					live += system.getCount();
+				}
+			}
+			System.out.println(String.format("%d threads: %.0f particles, update %.1f us, draw %.1f us per frame, %d bytes allocated",
+					run, (double) live / frames, moveNanos / 1e3 / frames, drawNanos / 1e3 / frames, allocated));
+			system.close();
+		}
+	}
+
+
+/**
+ * 	INSTANCE VARIABLES
+ */
+
+/**	The size of the board */
+	private final int boardWidth, boardHeight;
+
+/**	The particles, the first count entries of each array are live */
+	private final float[] x, y, vx, vy, life;
+	private final int[] color;
+	private int count;
+
+/**	The time step of the update being run, read by the workers */
+	private float dt;
+
+/**	The box around the live particles */
+	private int boundsMinX = Integer.MAX_VALUE, boundsMinY = Integer.MAX_VALUE;
+	private int boundsMaxX = Integer.MIN_VALUE, boundsMaxY = Integer.MIN_VALUE;
+
+/**	The state of the random generator */
+	private long randomState = 0x5DEECE66DL;
+
+/**	The threads moving the chunks after the first */
+	private final WorkerPool workers;
+
+}
@@ -0,0 +1,156 @@
+/**
+ * File: ReplayLog.java
+
+ * A recorded game of breakout, everything needed to play it back exactly.
+ * The simulation is deterministic, so a game is the seed of its random generator, the tick rate
+ * and the location the paddle was moved to on every tick. 
+ 
+ * The paddle locations are stored as a stream of varints. Each token is either the change in the 
+ * location since the last tick (zigzag encoded so small negative changes are small too), or a run 
+ * of ticks in which the paddle did not move. The lowest bit of a token tells the two apart.
+ * Every keyframeInterval ticks a keyframe is stored: the full state of the simulation before that tick 
+ * and where in the stream the tick starts, so playback can jump to it without simulating from tick 0.
+ 
+ * File layout, big endian:
+ * 	magic, version, seed, ticks per second, keyframe interval, total ticks, 
+ * 	stream length, keyframe count, state size, the stream, then for each keyframe: 
+ * 	its stream offset, the last paddle location and the state of the simulation
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class ReplayLog {
+
+/**	Start of every replay file, "BRKR" */
+	private static final int MAGIC = 0x42524B52;
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 8 + 4 + 4 + 4;
+
+	ReplayLog(long seed, double ticksPerSecond, int keyframeInterval, long totalTicks, byte[] stream, int streamLength,
+			int stateSize, int keyframeCount, int[] keyframeOffsets, int[] keyframeTargets, byte[] keyframeStates) {
+		this.seed = seed;
+		this.ticksPerSecond = ticksPerSecond;
+		this.keyframeInterval = keyframeInterval;
+		this.totalTicks = totalTicks;
+		this.stream = stream;
+		this.streamLength = streamLength;
+		this.stateSize = stateSize;
+		this.keyframeCount = keyframeCount;
+		this.keyframeOffsets = keyframeOffsets;
+		this.keyframeTargets = keyframeTargets;
+		this.keyframeStates = keyframeStates;
+	}
+
+/**	Writes the replay to a file
+ * @param path The file to write, it is replaced if it exists
+ */
+	public void save(Path path) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + streamLength + keyframeCount * (8 + stateSize));
+		buffer.putInt(MAGIC).putInt(VERSION).putLong(seed).putDouble(ticksPerSecond).putInt(keyframeInterval);
+		buffer.putLong(totalTicks).putInt(streamLength).putInt(keyframeCount).putInt(stateSize);
+		buffer.put(stream, 0, streamLength);
+		for (int i=0; i < keyframeCount; i++) {
+			buffer.putInt(keyframeOffsets[i]).putInt(keyframeTargets[i]);
+			buffer.put(keyframeStates, i * stateSize, stateSize);
+		}
+		Files.write(path, buffer.array());
+	}
+
+/**	Reads a replay from a file
+ * @param path The file written by save
+ * @return the replay
+ * @throws IOException if the file can not be read or is not a replay
+ */
+	public static ReplayLog load(Path path) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+		if ((buffer.remaining() < HEADER_SIZE) || (buffer.getInt() != MAGIC)) {
+			throw new IOException("Not a replay file: " + path);
+		}
+		int version = buffer.getInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported replay version " + version + ": " + path);
+		}
+		long seed = buffer.getLong();
+		double ticksPerSecond = buffer.getDouble();
+		int keyframeInterval = buffer.getInt();
+		long totalTicks = buffer.getLong();
+		int streamLength = buffer.getInt();
+		int keyframeCount = buffer.getInt();
+		int stateSize = buffer.getInt();
+		if (buffer.remaining() != streamLength + (long) keyframeCount * (8 + stateSize)) {
+			throw new IOException("Replay file is truncated: " + path);
+		}
+		byte[] stream = new byte[streamLength];
+		buffer.get(stream);
+		int[] keyframeOffsets = new int[keyframeCount];
+		int[] keyframeTargets = new int[keyframeCount];
+		byte[] keyframeStates = new byte[keyframeCount * stateSize];
+		for (int i=0; i < keyframeCount; i++) {
+			keyframeOffsets[i] = buffer.getInt();
+			keyframeTargets[i] = buffer.getInt();
+			buffer.get(keyframeStates, i * stateSize, stateSize);
+		}
+		return new ReplayLog(seed, ticksPerSecond, keyframeInterval, totalTicks, stream, streamLength,
+				stateSize, keyframeCount, keyframeOffsets, keyframeTargets, keyframeStates);
+	}
+
+/**	Zigzag encoding, so that changes of -1, 1, -2, 2... become 1, 2, 3, 4... */
+	static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public double getTicksPerSecond() {
+		return ticksPerSecond;
+	}
+
+	public long getTotalTicks() {
+		return totalTicks;
+	}
+
+	public int getKeyframeInterval() {
+		return keyframeInterval;
+	}
+
+	public int getKeyframeCount() {
+		return keyframeCount;
+	}
+
+/**	@return the number of bytes of paddle locations */
+	public int getStreamLength() {
+		return streamLength;
+	}
+
+	
+/**
+ * 	INSTANCE VARIABLES
+ */
+	
+/**	The seed of the game and the tick rate it was played at */
+	final long seed;
+	final double ticksPerSecond;
+
+/**	The number of ticks between keyframes, and the number of ticks played */
+	final int keyframeInterval;
+	final long totalTicks;
+
+/**	The encoded paddle locations, the first streamLength bytes are valid */
+	final byte[] stream;
+	final int streamLength;
+
+/**	The keyframes, keyframe i is of tick i * keyframeInterval. The states are stateSize bytes each */
+	final int stateSize, keyframeCount;
+	final int[] keyframeOffsets, keyframeTargets;
+	final byte[] keyframeStates;
+
+}
@@ -0,0 +1,156 @@
+/**
+ * File: ReplayPlayer.java
+
+ * Plays back a recorded game, with no display, as fast as the simulation can run.
+ * The simulation is created with the seed of the replay and stepped with the recorded paddle
+ * locations, so it goes through exactly the same game that was played.
+ * seek jumps to any tick by restoring the keyframe before it and simulating only from there.
+ 
+ * Run with:  java -cp .:acm.jar ReplayPlayer <replay file> [tick to seek to]
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+
+public class ReplayPlayer {
+
+/**	Creates a player at the start of the replay
+ * @param log The replay to play
+ */
+	public ReplayPlayer(ReplayLog log) {
+		this.log = log;
+		simulation = new BreakoutSimulation(log.seed);
+		simulation.setTicksPerSecond(log.ticksPerSecond);
+		seek(0);
+	}
+
+/**	Plays the next tick of the replay
+ * @return the EVENT_ flags of the step, or -1 if the replay is over
+ */
+	public int step() {
+		if ((tick >= log.totalTicks) || simulation.isGameOver()) {
+			return -1;
+		}
+		if (unchangedRun > 0) {
+			unchangedRun--;
+		}
+		else {
+			long token = readVarint();
+			if ((token & 1) != 0) {
+				unchangedRun = (int) (token >>> 1) - 1;
+			}
+			else {
+				lastTarget += (int) ReplayLog.unzigzag(token >>> 1);
+			}
+		}
+		int events = simulation.step(lastTarget);
+		tick++;
+		if ((events & BreakoutSimulation.EVENT_TURN_OVER) != 0) {
+			simulation.endTurn();
+			if (!simulation.isGameOver()) {
+				simulation.serve();
+			}
+		}
+		return events;
+	}
+
+/**	Moves the replay to the start of the given tick.
+ * 	The latest keyframe at or before the tick is restored and the ticks after it are simulated.
+ * @param target The tick to move to, between 0 and the total ticks of the replay
+ */
+	public void seek(long target) {
+		if ((target < 0) || (target > log.totalTicks)) {
+			throw new IllegalArgumentException("Tick " + target + " is outside the replay");
+		}
+		int keyframe = (int) Math.min(target / log.keyframeInterval, log.keyframeCount - 1);
+		simulation.newGame();
+		simulation.serve();
+		if (keyframe >= 0) {
+			simulation.readState(ByteBuffer.wrap(log.keyframeStates, keyframe * log.stateSize, log.stateSize));
+			tick = (long) keyframe * log.keyframeInterval;
+			position = log.keyframeOffsets[keyframe];
+			lastTarget = log.keyframeTargets[keyframe];
+		}
+		else {
+			tick = 0;
+			position = 0;
+			lastTarget = 0;
+		}
+		unchangedRun = 0;
+		while (tick < target) {
+			step();
+		}
+	}
+
+/**	Plays the rest of the replay */
+	public void playToEnd() {
+		while (step() != -1) {
+		}
+	}
+
+/**	Reads a value written 7 bits at a time */
+	private long readVarint() {
+		long value = 0;
+		int shift = 0;
+		while (true) {
+			byte b = log.stream[position++];
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+			shift += 7;
+		}
+	}
+
+	public long getTick() {
+		return tick;
+	}
+
+	public BreakoutSimulation getSimulation() {
+		return simulation;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: ReplayPlayer <replay file> [tick to seek to]");
+			System.exit(1);
+		}
+		ReplayLog log = ReplayLog.load(Paths.get(args[0]));
+		System.out.println(String.format("seed=%d ticks=%d at %.0f/s, %d bytes of input, %d keyframes",
+				log.getSeed(), log.getTotalTicks(), log.getTicksPerSecond(), log.getStreamLength(), log.getKeyframeCount()));
+		long start = System.nanoTime();
+		ReplayPlayer player = new ReplayPlayer(log);
+		if (args.length > 1) {
+			player.seek(Long.parseLong(args[1]));
+			System.out.println(String.format("seeked to tick %d in %.2f ms", player.getTick(), (System.nanoTime() - start) / 1e6));
+		}
+		player.playToEnd();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		BreakoutSimulation simulation = player.getSimulation();
+		System.out.println(String.format("played to tick %d in %.2f s, turns=%d", 
+				player.getTick(), seconds, simulation.getTurnsPlayed()));
+	}
+
+	
+/**
+ * 	INSTANCE VARIABLES
+ */
+	
+/**	The replay being played */
+	private final ReplayLog log;
+
+/**	The simulation the replay is played on */
+	private final BreakoutSimulation simulation;
+
+/**	The next tick to play */
+	private long tick;
+
+/**	Where the next token is in the stream */
+	private int position;
+
+/**	The paddle location of the last tick, and the number of ticks left in which it does not move */
+	private int lastTarget;
+	private int unchangedRun;
+
+}
@@ -0,0 +1,132 @@
+/**
+ * File: ReplayRecorder.java
+
+ * Records a game as it is played, into a ReplayLog.
+ * recordTick has to be called before each step of the simulation, with the same paddle location
+ * that is given to the step. The game must be driven the same way the ReplayPlayer drives it:
+ * after a step which ends the turn, endTurn is called, and then serve if the game is not over.
+ 
+ *	NOTES:
+ *	The stream grows by doubling its buffer, so recording a tick does not allocate except for
+ *	the occasional growth, most ticks only add to a run of ticks where the paddle did not move.
+ */
+
+import java.nio.ByteBuffer;
+
+public class ReplayRecorder {
+
+/**	Starts recording a game
+ * @param simulation The simulation being played, after newGame and serve
+ * @param seed The seed the simulation was created with
+ * @param ticksPerSecond The tick rate of the simulation
+ * @param keyframeInterval The number of ticks between keyframes
+ */
+	public ReplayRecorder(BreakoutSimulation simulation, long seed, double ticksPerSecond, int keyframeInterval) {
+		if (keyframeInterval < 1) {
+			throw new IllegalArgumentException("Keyframe interval must be positive");
+		}
+		this.simulation = simulation;
+		this.seed = seed;
+		this.ticksPerSecond = ticksPerSecond;
+		this.keyframeInterval = keyframeInterval;
+		this.stateSize = simulation.getStateSize();
+		keyframeStates = new byte[stateSize * 16];
+	}
+
+/**	Records the paddle location of the next tick, called just before the simulation is stepped
+ * @param paddleTargetX The location given to the step
+ */
+	public void recordTick(int paddleTargetX) {
+		if (tick % keyframeInterval == 0) {
+			addKeyframe();
+		}
+		if (paddleTargetX == lastTarget) {
+			unchangedRun++;
+		}
+		else {
+			flushRun();
+			writeVarint(ReplayLog.zigzag((long) paddleTargetX - lastTarget) << 1);
+			lastTarget = paddleTargetX;
+		}
+		tick++;
+	}
+
+/**	Ends the recording
+ * @return the recorded game
+ */
+	public ReplayLog finish() {
+		flushRun();
+		return new ReplayLog(seed, ticksPerSecond, keyframeInterval, tick, stream, streamLength,
+				stateSize, keyframeCount, keyframeOffsets, keyframeTargets, keyframeStates);
+	}
+
+/**	Stores the state of the simulation before the current tick. The run is written first,
+ * 	so that the tick starts at a token of its own in the stream.
+ */
+	private void addKeyframe() {
+		flushRun();
+		if (keyframeCount == keyframeOffsets.length) {
+			keyframeOffsets = java.util.Arrays.copyOf(keyframeOffsets, keyframeCount * 2);
+			keyframeTargets = java.util.Arrays.copyOf(keyframeTargets, keyframeCount * 2);
+		}
+		if ((keyframeCount + 1) * stateSize > keyframeStates.length) {
+			keyframeStates = java.util.Arrays.copyOf(keyframeStates, keyframeStates.length * 2);
+		}
+		keyframeOffsets[keyframeCount] = streamLength;
+		keyframeTargets[keyframeCount] = lastTarget;
+		simulation.writeState(ByteBuffer.wrap(keyframeStates, keyframeCount * stateSize, stateSize));
+		keyframeCount++;
+	}
+
+/**	Writes the run of ticks where the paddle did not move, if there is one */
+	private void flushRun() {
+		if (unchangedRun > 0) {
+			writeVarint(((long) unchangedRun << 1) | 1);
+			unchangedRun = 0;
+		}
+	}
+
+/**	Writes a value 7 bits at a time, the high bit of each byte is set if more bytes follow */
+	private void writeVarint(long value) {
+		if (streamLength + 10 > stream.length) {
+			stream = java.util.Arrays.copyOf(stream, stream.length * 2);
+		}
+		while ((value & ~0x7FL) != 0) {
+			stream[streamLength++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		stream[streamLength++] = (byte) value;
+	}
+
+	
+/**
+ * 	INSTANCE VARIABLES
+ */
+	
+/**	The simulation being recorded */
+	private final BreakoutSimulation simulation;
+
+/**	The seed and tick rate of the game */
+	private final long seed;
+	private final double ticksPerSecond;
+
+/**	The number of ticks between keyframes, and the size of a keyframe state */
+	private final int keyframeInterval, stateSize;
+
+/**	The number of ticks recorded */
+	private long tick;
+
+/**	The paddle location of the last tick, and the number of ticks since it changed which are not yet written */
+	private int lastTarget;
+	private int unchangedRun;
+
+/**	The encoded paddle locations */
+	private byte[] stream = new byte[4096];
+	private int streamLength;
+
+/**	The keyframes */
+	private int keyframeCount;
+	private int[] keyframeOffsets = new int[16], keyframeTargets = new int[16];
+	private byte[] keyframeStates;
+
+}
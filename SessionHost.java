@@ -0,0 +1,633 @@
+/**
+ * File: SessionHost.java
+
+ * Hosts many headless games of breakout in one JVM, e.g. for attract mode screens fed from one machine,
+ * or for tournaments between simulated players.
+ * Each session is a BreakoutSimulation played by an Autopilot, started again when its game is over.
+ * The sessions are not given a thread each. A few worker threads (one per core) share a fixed tick, in
+ * every tick period each worker steps each of its sessions exactly once, so every session runs at the
+ * same rate however many there are, as long as the workers keep up.
+ * A client can watch a session by connecting to the host on a local socket and sending the number of
+ * the session (as an int). The host then streams the state of the session to it: a keyframe with the
+ * whole state, followed by a delta of what changed in each tick.
+
+ *	NOTES:
+ *	Stream format, each frame is a 2 byte length followed by a tag byte:
+ *		KEYFRAME - tick, ball x, ball y, paddle x, turns played, number of bricks, then a bit per brick
+ *		DELTA - events of the step, change in ball x, ball y, paddle x, number of bricks hit, then each brick hit
+ *	The numbers are varints, the locations are whole pixels, and the changes are zigzag encoded.
+ *	The socket of a session is written without blocking, by its worker. Each session has a small buffer
+ *	of frames not yet taken by the client, when a client can not keep up the deltas are dropped
+ *	and a keyframe is sent once it catches up. So the memory of a session is bounded whatever the clients do.
+ *	Java 17 has no virtual threads, the shared tick does the same job without a thread per session.
+
+ * Run with:  java -cp .:acm.jar SessionHost host <sessions> [seconds] [port]
+ *            java -cp .:acm.jar SessionHost watch <port> <session> [seconds]
+ */
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+public class SessionHost {
+
+/**	The rate the sessions are stepped at */
+	private static final double TICKS_PER_SECOND = 60;
+
+/**	The default port the host listens on, on the loopback address */
+	private static final int DEFAULT_PORT = 7420;
+
+/**	The tags of the frames of the stream */
+	public static final int FRAME_KEYFRAME = 1;
+	public static final int FRAME_DELTA = 2;
+
+/**	The size of the buffer of frames each watched session keeps for its client */
+	private static final int OUTPUT_BUFFER_SIZE = 1024;
+
+/**	A frame is only started if this much room is left in the buffer, a keyframe or a delta always fits */
+	private static final int MAX_FRAME_SIZE = 64 + BreakoutSimulation.NBRICKS / 8;
+
+/**	How long a client has to send the number of its session after connecting, and how often the acceptor checks */
+	private static final long REQUEST_TIMEOUT_NANOS = 5000000000L;
+	private static final long SELECT_MILLIS = 100;
+
+/**	The number of pixels the autopilot can move the paddle in a tick */
+	private static final double PADDLE_SPEED = 8.0;
+
+/**	Creates a host
+ * @param sessionCount The number of sessions, they are numbered from 0
+ * @param workerCount The number of worker threads stepping the sessions
+ * @param seed The seed of the first session, the others get the following seeds
+ */
+	public SessionHost(int sessionCount, int workerCount, long seed) {
+		if ((sessionCount < 1) || (workerCount < 1)) {
+			throw new IllegalArgumentException("Need at least one session and one worker");
+		}
+		sessions = new Session[sessionCount];
+		for (int i=0; i < sessionCount; i++) {
+			sessions[i] = new Session(seed + i);
+		}
+		workers = new Worker[workerCount];
+		for (int i=0; i < workerCount; i++) {
+			workers[i] = new Worker(i);
+		}
+		tickNanos = (long) (1e9 / TICKS_PER_SECOND);
+	}
+
+/**	Starts the workers, and listens for clients on the port of the loopback address */
+	public void start(int port) throws IOException {
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+		running = true;
+		long firstTick = System.nanoTime();
+		for (Worker worker : workers) {
+			worker.nextTick = firstTick;
+			worker.thread = new Thread(worker, "session worker " + worker.index);
+			worker.thread.start();
+		}
+		acceptor = new Thread(this::acceptClients, "session acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+/**	Stops the acceptor and the workers and closes the sockets, including those handed over but not taken yet */
+	public void stop() throws IOException {
+		running = false;
+		server.close();
+		try {
+			acceptor.join();
+			for (Worker worker : workers) {
+				worker.thread.join();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (Session session : sessions) {
+			session.closeClient();
+			closeQuietly(session.pendingClient.getAndSet(null));
+		}
+	}
+
+/**	A client which has connected and not sent the number of its session yet */
+	private static class PendingRequest {
+
+		PendingRequest(long deadline) {
+			this.deadline = deadline;
+		}
+
+		final ByteBuffer request = ByteBuffer.allocate(4);
+		final long deadline;
+	}
+
+/**	Accepts clients until the host is stopped. The sockets are never blocked on, a selector tells which clients
+ * 	can be accepted and which have sent some of their request, so a client which connects and sends nothing
+ * 	does not hold up the others, it is closed once REQUEST_TIMEOUT_NANOS have passed.
+ * 	Once the number of the session has been read, the socket is handed to the worker of the session.
+ */
+	private void acceptClients() {
+		try (Selector selector = Selector.open()) {
+			server.configureBlocking(false);
+			server.register(selector, SelectionKey.OP_ACCEPT);
+			try {
+				while (running) {
+					selector.select(SELECT_MILLIS);
+					for (java.util.Iterator<SelectionKey> keys = selector.selectedKeys().iterator(); keys.hasNext(); ) {
+						SelectionKey key = keys.next();
+						keys.remove();
+						if (!key.isValid()) {
+							continue;
+						}
+						if (key.isAcceptable()) {
+							acceptClient(selector);
+						}
+						else if (key.isReadable()) {
+							readRequest(key);
+						}
+					}
+					closeLateClients(selector);
+				}
+			}
+			finally {
+				/* The clients still sending their request are closed, however the loop ended */
+				for (SelectionKey key : selector.keys()) {
+					if (key.attachment() != null) {
+						closeQuietly(key.channel());
+					}
+				}
+			}
+		}
+		catch (IOException e) {
+			/* The server socket is closed when the host stops */
+		}
+	}
+
+/**	Accepts a client, and waits for its request without blocking */
+	private void acceptClient(Selector selector) {
+		SocketChannel client = null;
+		try {
+			client = server.accept();
+			if (client == null) {
+				return;
+			}
+			client.configureBlocking(false);
+			client.register(selector, SelectionKey.OP_READ, new PendingRequest(System.nanoTime() + REQUEST_TIMEOUT_NANOS));
+		}
+		catch (IOException e) {
+			closeQuietly(client);
+		}
+	}
+
+/**	Reads what a client has sent of its request, and hands the client to its session once all of it has come */
+	private void readRequest(SelectionKey key) {
+		SocketChannel client = (SocketChannel) key.channel();
+		PendingRequest pending = (PendingRequest) key.attachment();
+		try {
+			if (client.read(pending.request) < 0) {
+				key.cancel();
+				client.close();
+				return;
+			}
+			if (pending.request.hasRemaining()) {
+				return;
+			}
+			/* The worker writes the socket from now on, the selector is done with it */
+			key.cancel();
+			int session = pending.request.getInt(0);
+			if ((session < 0) || (session >= sessions.length)) {
+				client.close();
+				return;
+			}
+			client.socket().setTcpNoDelay(true);
+			/* A client handed over before which the worker has not taken yet is replaced, and closed */
+			closeQuietly(sessions[session].pendingClient.getAndSet(client));
+		}
+		catch (IOException e) {
+			key.cancel();
+			closeQuietly(client);
+		}
+	}
+
+/**	Closes the clients which have not sent their request in time */
+	private void closeLateClients(Selector selector) {
+		long now = System.nanoTime();
+		for (SelectionKey key : selector.keys()) {
+			PendingRequest pending = (PendingRequest) key.attachment();
+			if ((pending != null) && key.isValid() && (now - pending.deadline > 0)) {
+				key.cancel();
+				closeQuietly(key.channel());
+				requestsTimedOut++;
+			}
+		}
+	}
+
+	private static void closeQuietly(java.nio.channels.Channel channel) {
+		if (channel != null) {
+			try {
+				channel.close();
+			}
+			catch (IOException e) {
+				/* Nothing more can be done with it */
+			}
+		}
+	}
+
+/**	@return the number of clients closed because they did not send their request in time */
+	public long getRequestsTimedOut() {
+		return requestsTimedOut;
+	}
+
+/**	@return the number of sessions stepped in all, by all the workers */
+	public long getTicksRun() {
+		long ticks = 0;
+		for (Worker worker : workers) {
+			ticks += worker.ticksRun;
+		}
+		return ticks;
+	}
+
+/**	@return the number of tick periods the workers ran late, over all the workers */
+	public long getLatePeriods() {
+		long late = 0;
+		for (Worker worker : workers) {
+			late += worker.periodStats.getOverBudget();
+		}
+		return late;
+	}
+
+/**	@return the number of sessions */
+	public int getSessionCount() {
+		return sessions.length;
+	}
+
+/**	@return the stats of how long each worker took for a tick period */
+	public String getPeriodStats() {
+		StringBuilder stats = new StringBuilder();
+		for (Worker worker : workers) {
+			stats.append(worker.periodStats).append('\n');
+		}
+		return stats.toString();
+	}
+
+/**	Writes a varint to the buffer, 7 bits a byte with the high bit set on all but the last byte */
+	static void putVarint(ByteBuffer buffer, long value) {
+		while ((value & ~0x7FL) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+/**	Reads a varint from the buffer */
+	static long getVarint(ByteBuffer buffer) {
+		long value = 0;
+		for (int shift = 0; ; shift += 7) {
+			byte b = buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+	}
+
+
+/**	A worker thread, it steps every session whose number mod the number of workers is its index */
+	private class Worker implements Runnable {
+
+		Worker(int index) {
+			this.index = index;
+			periodStats = new LatencyStats("worker " + index, (long) (1e9 / TICKS_PER_SECOND));
+		}
+
+/**	Steps the sessions of the worker once every tick period. The session started with is moved along
+ * 	each period, so the same sessions are not always stepped (and streamed) last.
+ * 	If a period runs late the next one starts straight away, the ticks missed are not caught up.
+ */
+		public void run() {
+			int count = (sessions.length - index + workers.length - 1) / workers.length;
+			int start = 0;
+			while (running) {
+				long periodStart = System.nanoTime();
+				for (int i=0; i < count; i++) {
+					int slot = start + i;
+					if (slot >= count) {
+						slot -= count;
+					}
+					sessions[index + slot * workers.length].tick();
+				}
+				ticksRun += count;
+				start = (start + 1 == count) ? 0 : start + 1;
+				long now = System.nanoTime();
+				periodStats.record(now - periodStart);
+				nextTick += tickNanos;
+				if (nextTick - now > 0) {
+					LockSupport.parkNanos(nextTick - now);
+				}
+				else {
+					nextTick = now;
+				}
+			}
+		}
+
+		final int index;
+		final LatencyStats periodStats;
+		Thread thread;
+		long nextTick;
+		volatile long ticksRun;
+	}
+
+
+/**	A single game, played by an autopilot, and the client watching it if there is one */
+	private static class Session {
+
+		Session(long seed) {
+			simulation = new BreakoutSimulation(seed);
+			simulation.setTicksPerSecond(TICKS_PER_SECOND);
+			simulation.newGame();
+			simulation.serve();
+		}
+
+/**	Steps the game, ending the turn or starting a new game when needed, and streams the step */
+		void tick() {
+			if (pendingClient.get() != null) {
+				attachClient();
+			}
+			int events = simulation.step(autopilot.getPaddleTargetX(simulation));
+			tick++;
+			if (client == null) {
+				if ((events & BreakoutSimulation.EVENT_TURN_OVER) != 0) {
+					nextTurn();
+				}
+				return;
+			}
+			writeDelta(events);
+			if ((events & BreakoutSimulation.EVENT_TURN_OVER) != 0) {
+				nextTurn();
+				/* The bricks are put back for the next turn, the client is sent all of them again */
+				needsKeyframe = true;
+			}
+			flush();
+		}
+
+/**	Serves the next turn, or starts a new game if the game is over */
+		private void nextTurn() {
+			simulation.endTurn();
+			if (simulation.isGameOver()) {
+				gamesPlayed++;
+				simulation.newGame();
+			}
+			simulation.serve();
+		}
+
+/**	Takes over the client handed over by the acceptor, replacing the one before */
+		private void attachClient() {
+			closeClient();
+			client = pendingClient.getAndSet(null);
+			if (output == null) {
+				output = ByteBuffer.allocate(OUTPUT_BUFFER_SIZE);
+			}
+			output.clear();
+			needsKeyframe = true;
+		}
+
+/**	Writes the changes of the step, or a keyframe if the client has to be sent the whole state.
+ * 	If there is no room for a frame the client has fallen behind, it is sent a keyframe once there is.
+ */
+		private void writeDelta(int events) {
+			if (output.remaining() < MAX_FRAME_SIZE) {
+				needsKeyframe = true;
+				framesDropped++;
+				return;
+			}
+			if (needsKeyframe) {
+				writeKeyframe();
+				return;
+			}
+			int ballX = (int) Math.round(simulation.getBallX()), ballY = (int) Math.round(simulation.getBallY());
+			int paddleX = (int) Math.round(simulation.getPaddleX());
+			int lengthAt = startFrame(FRAME_DELTA);
+			putVarint(output, events);
+			putVarint(output, ReplayLog.zigzag(ballX - sentBallX));
+			putVarint(output, ReplayLog.zigzag(ballY - sentBallY));
+			putVarint(output, ReplayLog.zigzag(paddleX - sentPaddleX));
+			putVarint(output, simulation.getBricksHitInStep());
+			for (int i=0; i < simulation.getBricksHitInStep(); i++) {
+				putVarint(output, simulation.getBrickHitInStep(i));
+			}
+			endFrame(lengthAt);
+			sentBallX = ballX;
+			sentBallY = ballY;
+			sentPaddleX = paddleX;
+		}
+
+/**	Writes the whole state of the game, the deltas which follow are from this state */
+		private void writeKeyframe() {
+			sentBallX = (int) Math.round(simulation.getBallX());
+			sentBallY = (int) Math.round(simulation.getBallY());
+			sentPaddleX = (int) Math.round(simulation.getPaddleX());
+			int lengthAt = startFrame(FRAME_KEYFRAME);
+			putVarint(output, tick);
+			putVarint(output, ReplayLog.zigzag(sentBallX));
+			putVarint(output, ReplayLog.zigzag(sentBallY));
+			putVarint(output, ReplayLog.zigzag(sentPaddleX));
+			putVarint(output, simulation.getTurnsPlayed());
+			putVarint(output, BreakoutSimulation.NBRICKS);
+			int bits = 0;
+			for (int brick = 0; brick < BreakoutSimulation.NBRICKS; brick++) {
+				if (simulation.isBrickAlive(brick)) {
+					bits |= 1 << (brick & 7);
+				}
+				if (((brick & 7) == 7) || (brick == BreakoutSimulation.NBRICKS - 1)) {
+					output.put((byte) bits);
+					bits = 0;
+				}
+			}
+			endFrame(lengthAt);
+			needsKeyframe = false;
+		}
+
+/**	Starts a frame, leaving room for its length
+ * @return where the length is to be written
+ */
+		private int startFrame(int tag) {
+			int lengthAt = output.position();
+			output.putShort((short) 0);
+			output.put((byte) tag);
+			return lengthAt;
+		}
+
+		private void endFrame(int lengthAt) {
+			output.putShort(lengthAt, (short) (output.position() - lengthAt - 2));
+			framesWritten++;
+		}
+
+/**	Writes what the socket takes without blocking, keeping the rest for the next tick */
+		private void flush() {
+			output.flip();
+			try {
+				client.write(output);
+			}
+			catch (IOException e) {
+				/* The client has gone */
+				closeClient();
+				return;
+			}
+			output.compact();
+		}
+
+		void closeClient() {
+			if (client != null) {
+				try {
+					client.close();
+				}
+				catch (IOException e) {
+					/* Nothing more to do with it */
+				}
+				client = null;
+			}
+		}
+
+		final BreakoutSimulation simulation;
+		final Autopilot autopilot = new Autopilot(PADDLE_SPEED);
+		long tick, gamesPlayed;
+
+/**	A client handed over by the acceptor thread, taken over by the worker at the next tick */
+		final AtomicReference<SocketChannel> pendingClient = new AtomicReference<SocketChannel>();
+
+/**	The client watching the session, and the frames it has not taken yet, only used by the worker */
+		SocketChannel client;
+		ByteBuffer output;
+		boolean needsKeyframe;
+		int sentBallX, sentBallY, sentPaddleX;
+		long framesWritten, framesDropped;
+	}
+
+
+/**	Runs a host with the given number of sessions, printing the rate they are stepped at every second,
+ * 	or watches a session of a host, printing what it is sent
+ */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if ((args.length >= 2) && args[0].equals("host")) {
+			int sessionCount = Integer.parseInt(args[1]);
+			int seconds = (args.length > 2) ? Integer.parseInt(args[2]) : 10;
+			int port = (args.length > 3) ? Integer.parseInt(args[3]) : DEFAULT_PORT;
+			host(sessionCount, seconds, port);
+		}
+		else if ((args.length >= 3) && args[0].equals("watch")) {
+			int seconds = (args.length > 3) ? Integer.parseInt(args[3]) : 10;
+			watch(Integer.parseInt(args[1]), Integer.parseInt(args[2]), seconds);
+		}
+		else {
+			System.out.println("Usage: SessionHost host <sessions> [seconds] [port]");
+			System.out.println("       SessionHost watch <port> <session> [seconds]");
+		}
+	}
+
+	private static void host(int sessionCount, int seconds, int port) throws IOException, InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+		SessionHost host = new SessionHost(sessionCount, runtime.availableProcessors(), 1);
+		System.gc();
+		long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+		System.out.println(String.format("%d sessions, %d workers, %.0f bytes per session, listening on %d",
+				sessionCount, host.workers.length, (double) (heapAfter - heapBefore) / sessionCount, port));
+		host.start(port);
+		long lastTicks = 0;
+		for (int s = 0; s < seconds; s++) {
+			Thread.sleep(1000);
+			long ticks = host.getTicksRun();
+			System.out.println(String.format("%d session ticks/s (%.1f per session), %d late periods",
+					ticks - lastTicks, (double) (ticks - lastTicks) / sessionCount, host.getLatePeriods()));
+			lastTicks = ticks;
+		}
+		host.stop();
+		System.out.print(host.getPeriodStats());
+	}
+
+/**	Connects to a session and decodes its stream, keeping the state the way a viewer would */
+	private static void watch(int port, int session, int seconds) throws IOException {
+		try (SocketChannel channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port))) {
+			channel.write(ByteBuffer.allocate(4).putInt(session).flip());
+			ByteBuffer input = ByteBuffer.allocate(1 << 16);
+			boolean[] bricks = new boolean[0];
+			int ballX = 0, ballY = 0, paddleX = 0;
+			long keyframes = 0, deltas = 0, bytes = 0;
+			long end = System.nanoTime() + seconds * 1000000000L, nextReport = System.nanoTime() + 1000000000L;
+			while ((System.nanoTime() < end) && (channel.read(input) >= 0)) {
+				input.flip();
+				bytes += input.remaining();
+				while ((input.remaining() >= 2) && (input.remaining() >= 2 + input.getShort(input.position()))) {
+					int frameEnd = input.position() + 2 + input.getShort();
+					int tag = input.get();
+					if (tag == FRAME_KEYFRAME) {
+						getVarint(input);
+						ballX = (int) ReplayLog.unzigzag(getVarint(input));
+						ballY = (int) ReplayLog.unzigzag(getVarint(input));
+						paddleX = (int) ReplayLog.unzigzag(getVarint(input));
+						getVarint(input);
+						bricks = new boolean[(int) getVarint(input)];
+						for (int brick = 0; brick < bricks.length; brick += 8) {
+							int bits = input.get();
+							for (int b = 0; (b < 8) && (brick + b < bricks.length); b++) {
+								bricks[brick + b] = (bits & (1 << b)) != 0;
+							}
+						}
+						keyframes++;
+					}
+					else {
+						getVarint(input);
+						ballX += (int) ReplayLog.unzigzag(getVarint(input));
+						ballY += (int) ReplayLog.unzigzag(getVarint(input));
+						paddleX += (int) ReplayLog.unzigzag(getVarint(input));
+						for (int hits = (int) getVarint(input); hits > 0; hits--) {
+							bricks[(int) getVarint(input)] = false;
+						}
+						deltas++;
+					}
+					input.position(frameEnd);
+				}
+				input.compact();
+				if (System.nanoTime() - nextReport > 0) {
+					int alive = 0;
+					for (boolean brick : bricks) {
+						alive += brick ? 1 : 0;
+					}
+					System.out.println(String.format("%d keyframes, %d deltas, %.1f bytes/frame, ball (%d,%d), paddle %d, %d bricks",
+							keyframes, deltas, (double) bytes / Math.max(1, keyframes + deltas), ballX, ballY, paddleX, alive));
+					nextReport += 1000000000L;
+				}
+			}
+		}
+	}
+
+
+/**
+ * 	INSTANCE VARIABLES
+ */
+
+/**	The sessions, and the workers which step them */
+	private final Session[] sessions;
+	private final Worker[] workers;
+
+/**	The length of a tick period */
+	private final long tickNanos;
+
+/**	The socket clients connect to, and the thread accepting them */
+	private ServerSocketChannel server;
+	private Thread acceptor;
+
+/**	Cleared to stop the workers and acceptor */
+	private volatile boolean running;
+
+/**	The number of clients which did not send their request in time, only written by the acceptor */
+	private volatile long requestsTimedOut;
+
+}
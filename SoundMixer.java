@@ -0,0 +1,372 @@
+/**
+ * File: SoundMixer.java
+
+ * Plays the collision sounds of the game, mixed on a thread of its own.
+ * The sound (bounce.au) is decoded once, when the mixer is created, into an array of samples.
+ * The sounds are only triggered by putting them in a lock free queue, which never blocks.
+ * The mixer thread takes the triggers off the queue, starts a voice for each one, and mixes the
+ * playing voices into small blocks which are written to the sound card.
+
+ *	NOTES:
+ *	trigger is only called by one thread (the sound consumer of the game's event bus), everything else
+ *	happens on the mixer thread.
+ *	The queue is a ring of longs, holding the sound and the low 32 bits of the System.nanoTime of the event,
+ *	if it is full the trigger is dropped (and counted), it is never waited on.
+ *	There are at most MAX_VOICES sounds playing together. When all voices are playing,
+ *	a new sound takes the voice which has played the longest (voice stealing).
+ *	The latency of a sound is from the collision (when it was published on the event bus, so the time the
+ *	event waited on the bus is included) to when it is heard, which is when the block it starts in
+ *	has got through what the sound card still has buffered. The blocks and the line buffer are small
+ *	so this stays under one frame.
+ *	If there is no sound card (or it can not be opened), the blocks are mixed and timed as if there was one,
+ *	so the game behaves the same, it is just silent.
+ *	When nothing is playing, once the end of the last sound has been written out the mixer thread parks
+ *	instead of mixing blocks of silence, and the next trigger unparks it, so a paused or idle game costs nothing here.
+ *	Nothing is allocated once the mixer is running.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.sampled.*;
+
+public class SoundMixer implements Runnable {
+
+/**	The sounds which can be triggered, they are all the bounce sound played at a different pitch and volume */
+	public static final int SOUND_PADDLE = 0;
+	public static final int SOUND_WALL = 1;
+	public static final int SOUND_BRICK = 2;
+
+/**	The pitch (as a playback rate) and volume of each sound */
+	private static final double[] SOUND_RATE = {1.0, 0.75, 1.5};
+	private static final double[] SOUND_GAIN = {0.8, 0.5, 0.7};
+
+/**	The sample rate the sounds are mixed and played at */
+	private static final float SAMPLE_RATE = 44100;
+
+/**	The number of samples mixed at a time, 128 samples are 2.9 ms */
+	private static final int BLOCK_SAMPLES = 128;
+
+/**	The number of blocks the sound card buffers, the fewer the lower the latency */
+	private static final int LINE_BLOCKS = 2;
+
+/**	The most sounds played together */
+	private static final int MAX_VOICES = 8;
+
+/**	The number of triggers the queue holds, a power of 2 */
+	private static final int QUEUE_SIZE = 64;
+
+/**	The positions of the voices are fixed point, with this many bits after the point */
+	private static final int FRACTION_BITS = 16;
+
+/**	Creates a mixer for the sound in the file, the sound is decoded here
+ * @param soundFile The sound played on every collision
+ * @param latencyBudgetNanos The longest the time from a trigger to the sound being heard should be
+ */
+	public SoundMixer(File soundFile, long latencyBudgetNanos) throws IOException, UnsupportedAudioFileException {
+		samples = decode(soundFile);
+		latencyStats = new LatencyStats("sound", latencyBudgetNanos);
+		for (int i=0; i < SOUND_RATE.length; i++) {
+			soundStep[i] = (int) Math.round(SOUND_RATE[i] * sourceRate / SAMPLE_RATE * (1 << FRACTION_BITS));
+			soundGain[i] = (int) Math.round(SOUND_GAIN[i] * 256);
+		}
+	}
+
+/**	Decodes the sound into 16 bit mono samples, at the sample rate of the file */
+	private short[] decode(File soundFile) throws IOException, UnsupportedAudioFileException {
+		AudioInputStream stream = AudioSystem.getAudioInputStream(soundFile);
+		AudioFormat format = stream.getFormat();
+		AudioFormat pcm = new AudioFormat(format.getSampleRate(), 16, 1, true, true);
+		sourceRate = format.getSampleRate();
+		try (AudioInputStream decoded = AudioSystem.getAudioInputStream(pcm, stream)) {
+			byte[] bytes = decoded.readAllBytes();
+			short[] decodedSamples = new short[bytes.length / 2];
+			for (int i=0; i < decodedSamples.length; i++) {
+				decodedSamples[i] = (short) ((bytes[2 * i] << 8) | (bytes[2 * i + 1] & 0xFF));
+			}
+			return decodedSamples;
+		}
+	}
+
+/**	Starts the mixer thread, and opens the sound card if there is one */
+	public void start() {
+		AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 1, true, true);
+		try {
+			line = AudioSystem.getSourceDataLine(format);
+			line.open(format, BLOCK_SAMPLES * 2 * LINE_BLOCKS);
+			line.start();
+		}
+		catch (LineUnavailableException | IllegalArgumentException e) {
+			/* No sound card, the mixer still runs so the sounds are timed the same */
+			line = null;
+		}
+		running = true;
+		thread = new Thread(this, "sound mixer");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MAX_PRIORITY);
+		thread.start();
+	}
+
+/**	Stops the mixer thread and closes the sound card */
+	public void stop() {
+		running = false;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+			try {
+				thread.join();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (line != null) {
+			line.close();
+		}
+	}
+
+/**	Triggers a sound now, called by one thread only. This never blocks,
+ * 	if the mixer has fallen so far behind that the queue is full the sound is dropped.
+ * @param sound One of the SOUND_ constants
+ */
+	public void trigger(int sound) {
+		trigger(sound, System.nanoTime());
+	}
+
+/**	Triggers a sound for something which happened earlier, e.g. a collision handed over on the event bus,
+ * 	the latency of the sound is measured from then
+ * @param sound One of the SOUND_ constants
+ * @param eventNanos The System.nanoTime of what the sound is for
+ */
+	public void trigger(int sound, long eventNanos) {
+		long tail = queueTail.get();
+		if (tail - queueHead.get() == QUEUE_SIZE) {
+			triggersDropped++;
+			return;
+		}
+		queue[(int) tail & (QUEUE_SIZE - 1)] = ((long) sound << 32) | (eventNanos & 0xFFFFFFFFL);
+		/* The trigger is written before the tail is moved past it, so the mixer never reads it half written.
+		 * A full volatile write, so the mixer either sees the trigger before it parks or is seen sleeping here */
+		queueTail.set(tail + 1);
+		if (sleeping) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+/**	Triggers the sounds for the events of a step of the simulation,
+ * 	one sound per kind of event, as the step may have several of them in the same instant
+ * @param events The events returned by BreakoutSimulation.step
+ */
+	public void triggerEvents(int events) {
+		triggerEvents(events, System.nanoTime());
+	}
+
+/**	Triggers the sounds for events which happened earlier
+ * @param events The events, as BreakoutSimulation.EVENT_ flags
+ * @param eventNanos The System.nanoTime of the events, e.g. when they were published on the event bus
+ */
+	public void triggerEvents(int events, long eventNanos) {
+		if ((events & BreakoutSimulation.EVENT_BRICK) != 0) {
+			trigger(SOUND_BRICK, eventNanos);
+		}
+		if ((events & BreakoutSimulation.EVENT_PADDLE) != 0) {
+			trigger(SOUND_PADDLE, eventNanos);
+		}
+		if ((events & BreakoutSimulation.EVENT_WALL) != 0) {
+			trigger(SOUND_WALL, eventNanos);
+		}
+	}
+
+/**	The mixer thread, mixes a block at a time until the mixer is stopped */
+	public void run() {
+		long blockNanos = (long) (1e9 * BLOCK_SAMPLES / SAMPLE_RATE);
+		long nextBlock = System.nanoTime();
+		while (running) {
+			startTriggeredVoices();
+			silentBlocks = isPlaying() ? 0 : silentBlocks + 1;
+			if (silentBlocks > LINE_BLOCKS) {
+				sleepUntilTriggered();
+				nextBlock = System.nanoTime();
+				continue;
+			}
+			mixBlock();
+			if (line != null) {
+				/* Blocks until the sound card has room, which is what paces the mixer */
+				line.write(blockBytes, 0, blockBytes.length);
+			}
+			else {
+				nextBlock += blockNanos;
+				long wait = nextBlock - System.nanoTime();
+				if (wait > 0) {
+					LockSupport.parkNanos(wait);
+				}
+			}
+			blocksMixed++;
+		}
+	}
+
+/**	@return true if a voice is playing */
+	private boolean isPlaying() {
+		for (int v=0; v < MAX_VOICES; v++) {
+			if (voicePlaying[v]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+/**	Parks the mixer thread until a sound is triggered or the mixer is stopped */
+	private void sleepUntilTriggered() {
+		sleeping = true;
+		while (running && (queueHead.get() == queueTail.get())) {
+			LockSupport.park(this);
+		}
+		sleeping = false;
+		silentBlocks = 0;
+		sleeps++;
+	}
+
+/**	Takes the triggers off the queue and starts a voice for each one.
+ * 	The time from the trigger to when the sound is heard is recorded, that is the time until now,
+ * 	plus what the sound card still has to play before this block.
+ */
+	private void startTriggeredVoices() {
+		long head = queueHead.get();
+		long tail = queueTail.get();
+		if (head == tail) {
+			return;
+		}
+		long now = System.nanoTime();
+		long bufferedNanos = getBufferedNanos();
+		for (; head != tail; head++) {
+			long entry = queue[(int) head & (QUEUE_SIZE - 1)];
+			startVoice((int) (entry >>> 32));
+			long latency = ((now - entry) & 0xFFFFFFFFL) + bufferedNanos;
+			latencyStats.record(latency);
+		}
+		queueHead.lazySet(head);
+	}
+
+/**	@return how long the sound card takes to play what it has buffered,
+ * 	without a sound card a full line buffer is assumed
+ */
+	private long getBufferedNanos() {
+		int bufferedBytes = (line != null) ? line.getBufferSize() - line.available() : BLOCK_SAMPLES * 2 * LINE_BLOCKS;
+		return (long) (1e9 * (bufferedBytes / 2) / SAMPLE_RATE);
+	}
+
+/**	Starts a sound on a free voice, or on the voice which has played the longest if none are free */
+	private void startVoice(int sound) {
+		int voice = -1;
+		int oldest = 0;
+		for (int i=0; i < MAX_VOICES; i++) {
+			if (!voicePlaying[i]) {
+				voice = i;
+				break;
+			}
+			if (voiceStarted[i] < voiceStarted[oldest]) {
+				oldest = i;
+			}
+		}
+		if (voice < 0) {
+			voice = oldest;
+			voicesStolen++;
+		}
+		voicePlaying[voice] = true;
+		voicePosition[voice] = 0;
+		voiceStep[voice] = soundStep[sound];
+		voiceGain[voice] = soundGain[sound];
+		voiceStarted[voice] = voicesStarted++;
+	}
+
+/**	Mixes the playing voices into the next block, clipping the sum to 16 bits */
+	private void mixBlock() {
+		java.util.Arrays.fill(mix, 0);
+		long end = (long) samples.length << FRACTION_BITS;
+		for (int v=0; v < MAX_VOICES; v++) {
+			if (!voicePlaying[v]) {
+				continue;
+			}
+			long position = voicePosition[v];
+			int step = voiceStep[v], gain = voiceGain[v];
+			int i = 0;
+			for (; (i < BLOCK_SAMPLES) && (position < end); i++) {
+				mix[i] += (samples[(int) (position >>> FRACTION_BITS)] * gain) >> 8;
+				position += step;
+			}
+			voicePosition[v] = position;
+			if (position >= end) {
+				voicePlaying[v] = false;
+			}
+		}
+		for (int i=0; i < BLOCK_SAMPLES; i++) {
+			int sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, mix[i]));
+			blockBytes[2 * i] = (byte) (sample >> 8);
+			blockBytes[2 * i + 1] = (byte) sample;
+		}
+	}
+
+/**	@return the stats of the time from a trigger to the sound being heard */
+	public LatencyStats getLatencyStats() {
+		return latencyStats;
+	}
+
+/**	@return true if the sounds are played on a sound card, false if the mixer is silent */
+	public boolean isAudible() {
+		return line != null;
+	}
+
+/**	@return the latency stats, with the voices stolen and triggers dropped */
+	public String toString() {
+		return latencyStats + String.format(", %d blocks mixed, %d sleeps, %d voices stolen, %d triggers dropped%s",
+				blocksMixed, sleeps, voicesStolen, triggersDropped, (line != null) ? "" : " (silent, no sound card)");
+	}
+
+
+/**
+ * 	INSTANCE VARIABLES
+ */
+
+/**	The decoded sound, and the sample rate of the file */
+	private final short[] samples;
+	private float sourceRate;
+
+/**	For each sound, the fixed point step through the samples per mixed sample, and the gain out of 256 */
+	private final int[] soundStep = new int[SOUND_RATE.length], soundGain = new int[SOUND_RATE.length];
+
+/**	The queue of triggers, written by the triggering thread at the tail and read by the mixer thread at the head */
+	private final long[] queue = new long[QUEUE_SIZE];
+	private final AtomicLong queueHead = new AtomicLong(), queueTail = new AtomicLong();
+
+/**	The voices, whether each is playing, its fixed point position in the samples, step, gain,
+ * 	and the order it was started in, to find the one which has played the longest
+ */
+	private final boolean[] voicePlaying = new boolean[MAX_VOICES];
+	private final long[] voicePosition = new long[MAX_VOICES];
+	private final int[] voiceStep = new int[MAX_VOICES], voiceGain = new int[MAX_VOICES];
+	private final long[] voiceStarted = new long[MAX_VOICES];
+	private long voicesStarted;
+
+/**	The block being mixed, as ints so the sum can go past 16 bits before it is clipped, and as bytes for the line */
+	private final int[] mix = new int[BLOCK_SAMPLES];
+	private final byte[] blockBytes = new byte[BLOCK_SAMPLES * 2];
+
+/**	The sound card, null if there is none */
+	private SourceDataLine line;
+
+/**	The mixer thread, and whether it should keep running */
+	private Thread thread;
+	private volatile boolean running;
+
+/**	Set while the mixer thread is parked with nothing to play, and the number of silent blocks mixed since a sound ended */
+	private volatile boolean sleeping;
+	private int silentBlocks;
+
+/**	The stats of the time from a trigger to the sound being heard */
+	private final LatencyStats latencyStats;
+
+/**	Counts of what the mixer has done, triggersDropped is only written by the triggering thread */
+	private long blocksMixed, sleeps, voicesStolen, triggersDropped;
+
+}
@@ -0,0 +1,282 @@
+/**
+ * File: VectorEnv.java
+
+ * A vectorized environment for training agents on breakout, in the style of a gym vector env.
+ * It holds K independent games which are stepped in lockstep: step takes an action for every game and
+ * writes the observation, reward and done flag of every game into arrays (or direct buffers) the caller
+ * allocated once, laid out game after game.
+ * An episode is a turn: it ends (done) when the ball is lost or the bricks are cleared, as checked by the
+ * simulation at the end of a step, or is cut off after MAX_EPISODE_STEPS. A game which is done is reset
+ * straight away with the next seed of its own sequence, so the observation written for it is the first
+ * of the new episode (the done flag tells the caller the episode changed).
+
+ *	NOTES:
+ *	Actions: ACTION_STAY, ACTION_LEFT, ACTION_RIGHT move the paddle by PADDLE_SPEED pixels.
+ *	Observation of a game, OBSERVATION_SIZE floats: ball x, ball y, ball x velocity, ball y velocity,
+ *	paddle x (the locations divided by the size of the board, the velocities by the y speed of the ball),
+ *	then 1 or 0 for each brick on or off the board.
+ *	Reward: the number of bricks removed in the step.
+ *	Done: DONE_TERMINATED when the turn is over, DONE_TRUNCATED when the episode was cut off, otherwise 0.
+ *	The games are split over the threads of a WorkerPool, which wait for the next step by spinning briefly and then
+ *	parking, so a step creates no objects, neither on the calling thread nor on the workers.
+ *	Resetting a game reuses its simulation, nothing is rebuilt.
+ *	close stops the worker threads, an environment which is no longer used should be closed.
+
+ * Run with:  java -cp .:acm.jar VectorEnv [games] [steps] [threads]
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+public class VectorEnv {
+
+/**	The actions */
+	public static final int ACTION_STAY = 0;
+	public static final int ACTION_LEFT = 1;
+	public static final int ACTION_RIGHT = 2;
+	public static final int ACTION_COUNT = 3;
+
+/**	The values of the done flags */
+	public static final byte DONE_TERMINATED = 1;
+	public static final byte DONE_TRUNCATED = 2;
+
+/**	The number of floats of the observation of a game */
+	public static final int OBSERVATION_SIZE = 5 + BreakoutSimulation.NBRICKS;
+
+/**	The number of pixels an action moves the paddle in a step */
+	public static final double PADDLE_SPEED = 8;
+
+/**	An episode is cut off after this many steps */
+	public static final int MAX_EPISODE_STEPS = 100000;
+
+/**	The rate the games are stepped at, a step of the environment is a tick of this length */
+	private static final double TICKS_PER_SECOND = 60;
+
+/**	Creates the environment, the games have to be reset before the first step
+ * @param games The number of games, K
+ * @param threads The number of threads stepping the games, including the one calling step
+ */
+	public VectorEnv(int games, int threads) {
+		if ((games < 1) || (threads < 1)) {
+			throw new IllegalArgumentException("Need at least one game and one thread");
+		}
+		simulations = new BreakoutSimulation[games];
+		for (int i=0; i < games; i++) {
+			simulations[i] = new BreakoutSimulation(i);
+			simulations[i].setTicksPerSecond(TICKS_PER_SECOND);
+		}
+		seeds = new long[games];
+		episodeSteps = new int[games];
+		threads = Math.min(threads, games);
+		chunkStart = new int[threads + 1];
+		for (int i=0; i <= threads; i++) {
+			chunkStart[i] = (int) ((long) games * i / threads);
+		}
+		workers = new WorkerPool("env worker", threads, this::runChunk);
+	}
+
+/**	Resets every game, game i is seeded with seed + i and then with the seeds following
+ * 	in its own sequence each time it is reset after an episode
+ * @param seed The base seed
+ * @param observations Filled with the first observation of every game, games * OBSERVATION_SIZE floats
+ */
+	public void reset(long seed, float[] observations) {
+		for (int i=0; i < simulations.length; i++) {
+			reset(i, seed + i);
+			writeObservation(i, observations, i * OBSERVATION_SIZE);
+		}
+	}
+
+/**	Resets every game as reset(long, float[]) does, into a direct buffer shared with native code.
+ * 	The buffer is written at absolute indexes, its position is not changed.
+ * @param seed The base seed
+ * @param observations Filled with the first observation of every game, games * OBSERVATION_SIZE floats
+ */
+	public void reset(long seed, FloatBuffer observations) {
+		for (int i=0; i < simulations.length; i++) {
+			reset(i, seed + i);
+			writeObservation(i, observations, i * OBSERVATION_SIZE);
+		}
+	}
+
+/**	Resets a game with the given seed, starting a new episode.
+ * 	The episode plays the same as a new simulation with that seed.
+ */
+	public void reset(int game, long seed) {
+		seeds[game] = seed;
+		episodeSteps[game] = 0;
+		BreakoutSimulation simulation = simulations[game];
+		simulation.setSeed(seed);
+		simulation.newGame();
+		simulation.serve();
+	}
+
+/**	Steps every game once, in lockstep
+ * @param actions The action of each game
+ * @param observations Written with the observation of each game, games * OBSERVATION_SIZE floats
+ * @param rewards Written with the reward of each game
+ * @param dones Written with the done flag of each game
+ */
+	public void step(int[] actions, float[] observations, float[] rewards, byte[] dones) {
+		arrayActions = actions;
+		arrayObservations = observations;
+		arrayRewards = rewards;
+		arrayDones = dones;
+		directActions = null;
+		workers.run();
+	}
+
+/**	Steps every game once, in lockstep, with direct buffers shared with native code.
+ * 	The buffers are read and written at absolute indexes, their positions are not changed.
+ * @param actions The action of each game, an int each
+ * @param observations Written with the observation of each game, games * OBSERVATION_SIZE floats
+ * @param rewards Written with the reward of each game, a float each
+ * @param dones Written with the done flag of each game, a byte each
+ */
+	public void step(IntBuffer actions, FloatBuffer observations, FloatBuffer rewards, ByteBuffer dones) {
+		directActions = actions;
+		directObservations = observations;
+		directRewards = rewards;
+		directDones = dones;
+		arrayActions = null;
+		workers.run();
+	}
+
+/**	Steps the games of a chunk, writing into the arrays or buffers of the step */
+	private void runChunk(int chunk) {
+		boolean direct = (arrayActions == null);
+		for (int game = chunkStart[chunk]; game < chunkStart[chunk + 1]; game++) {
+			int action = direct ? directActions.get(game) : arrayActions[game];
+			BreakoutSimulation simulation = simulations[game];
+			double paddleX = simulation.getPaddleX();
+			double target = (action == ACTION_LEFT) ? paddleX - PADDLE_SPEED : (action == ACTION_RIGHT) ? paddleX + PADDLE_SPEED : paddleX;
+			int events = simulation.step(target);
+			float reward = simulation.getBricksHitInStep();
+			byte done = 0;
+			if ((events & BreakoutSimulation.EVENT_TURN_OVER) != 0) {
+				done = DONE_TERMINATED;
+			}
+			else if (++episodeSteps[game] >= MAX_EPISODE_STEPS) {
+				done = DONE_TRUNCATED;
+			}
+			if (done != 0) {
+				reset(game, nextSeed(seeds[game]));
+			}
+			if (direct) {
+				writeObservation(game, directObservations, game * OBSERVATION_SIZE);
+				directRewards.put(game, reward);
+				directDones.put(game, done);
+			}
+			else {
+				writeObservation(game, arrayObservations, game * OBSERVATION_SIZE);
+				arrayRewards[game] = reward;
+				arrayDones[game] = done;
+			}
+		}
+	}
+
+/**	@return the seed of the next episode of a game, the seeds of each game follow their own sequence */
+	private static long nextSeed(long seed) {
+		long z = seed + 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		return z ^ (z >>> 27);
+	}
+
+	private void writeObservation(int game, float[] observations, int offset) {
+		BreakoutSimulation simulation = simulations[game];
+		observations[offset] = (float) (simulation.getBallX() / BreakoutSimulation.WIDTH);
+		observations[offset + 1] = (float) (simulation.getBallY() / BreakoutSimulation.HEIGHT);
+		observations[offset + 2] = (float) (simulation.getBallVX() / BreakoutSimulation.BALL_Y_VELOCITY);
+		observations[offset + 3] = (float) (simulation.getBallVY() / BreakoutSimulation.BALL_Y_VELOCITY);
+		observations[offset + 4] = (float) (simulation.getPaddleX() / BreakoutSimulation.WIDTH);
+		for (int brick = 0; brick < BreakoutSimulation.NBRICKS; brick++) {
+			observations[offset + 5 + brick] = simulation.isBrickAlive(brick) ? 1f : 0f;
+		}
+	}
+
+	private void writeObservation(int game, FloatBuffer observations, int offset) {
+		BreakoutSimulation simulation = simulations[game];
+		observations.put(offset, (float) (simulation.getBallX() / BreakoutSimulation.WIDTH));
+		observations.put(offset + 1, (float) (simulation.getBallY() / BreakoutSimulation.HEIGHT));
+		observations.put(offset + 2, (float) (simulation.getBallVX() / BreakoutSimulation.BALL_Y_VELOCITY));
+		observations.put(offset + 3, (float) (simulation.getBallVY() / BreakoutSimulation.BALL_Y_VELOCITY));
+		observations.put(offset + 4, (float) (simulation.getPaddleX() / BreakoutSimulation.WIDTH));
+		for (int brick = 0; brick < BreakoutSimulation.NBRICKS; brick++) {
+			observations.put(offset + 5 + brick, simulation.isBrickAlive(brick) ? 1f : 0f);
+		}
+	}
+
+/**	Stops the worker threads and waits for them, the environment can not be stepped after this */
+	public void close() {
+		workers.close();
+	}
+
+/**	@return the number of games */
+	public int getGameCount() {
+		return simulations.length;
+	}
+
+/**	Steps a number of games with random actions, printing the environment steps per second
+ * 	and the bytes allocated per step by the calling thread
+ */
+	public static void main(String[] args) {
+		int games = (args.length > 0) ? Integer.parseInt(args[0]) : 1024;
+		int steps = (args.length > 1) ? Integer.parseInt(args[1]) : 5000;
+		int threads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		VectorEnv env = new VectorEnv(games, threads);
+		int[] actions = new int[games];
+		float[] observations = new float[games * OBSERVATION_SIZE];
+		float[] rewards = new float[games];
+		byte[] dones = new byte[games];
+		env.reset(1, observations);
+		java.util.SplittableRandom random = new java.util.SplittableRandom(1);
+		long episodes = 0;
+		double totalReward = 0;
+		/* The first tenth of the steps is the warmup */
+		long start = 0, allocatedBefore = 0;
+		for (int step = 0; step < steps; step++) {
+			if (step == steps / 10) {
+				start = System.nanoTime();
+				allocatedBefore = BreakoutBenchmark.allocatedBytes();
+			}
+			for (int i=0; i < games; i++) {
+				actions[i] = random.nextInt(ACTION_COUNT);
+			}
+			env.step(actions, observations, rewards, dones);
+			for (int i=0; i < games; i++) {
+				totalReward += rewards[i];
+				episodes += (dones[i] != 0) ? 1 : 0;
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+		long allocated = BreakoutBenchmark.allocatedBytes() - allocatedBefore;
+		long measuredSteps = (long) (steps - steps / 10) * games;
+		System.out.println(String.format("%d games, %d threads: %.2f M env-steps/s, %.3f B/step allocated, %d episodes, %.0f reward",
+				games, env.chunkStart.length - 1, measuredSteps / (elapsed / 1e3), (double) allocated / measuredSteps, episodes, totalReward));
+		env.close();
+	}
+
+
+/**
+ * 	INSTANCE VARIABLES
+ */
+
+/**	The games, the seed of the current episode of each, and the steps taken in the episode */
+	private final BreakoutSimulation[] simulations;
+	private final long[] seeds;
+	private final int[] episodeSteps;
+
+/**	Chunk i is the games from chunkStart[i] up to chunkStart[i + 1], chunk 0 is run by the calling thread */
+	private final int[] chunkStart;
+	private final WorkerPool workers;
+
+/**	The arrays or buffers of the step being run, set by the calling thread before the workers are started */
+	private int[] arrayActions;
+	private float[] arrayObservations, arrayRewards;
+	private byte[] arrayDones;
+	private IntBuffer directActions;
+	private FloatBuffer directObservations, directRewards;
+	private ByteBuffer directDones;
+
+}
@@ -0,0 +1,142 @@
+/**
+ * File: WorkerPool.java
+
+ * A few threads which run the chunks of a job together with the thread asking for it, e.g. the games of
+ * a VectorEnv step or the particles of a large burst. The work is split into as many chunks as there are
+ * threads, the calling thread runs chunk 0 and each worker one of the others, then the calling thread waits
+ * until all of them are done. The same job is run again and again, so it is given once, when the pool is created.
+
+ *	NOTES:
+ *	The workers wait for the next run by spinning for a little while and then parking, and the calling
+ *	thread waits for the workers the same way, so a run creates no objects on any thread.
+ *	A run is started by moving on a volatile generation, which also publishes to the workers everything the
+ *	calling thread wrote before it (e.g. the arrays of the step). Only one thread may call run at a time.
+ *	close stops the workers, a pool which is no longer used should be closed, otherwise its threads stay parked.
+ */
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+public class WorkerPool {
+
+/**	The number of times a waiting thread checks for its work before parking */
+	private static final int SPINS_BEFORE_PARK = 1000;
+
+/**	The job run by the pool, called once for each chunk on the thread running it */
+	public interface Job {
+		void runChunk(int chunk);
+	}
+
+/**	Creates the pool and starts its workers, as daemon threads
+ * @param name The name of the workers, they are numbered after it
+ * @param threads The number of threads running a job, including the one calling run
+ * @param job The job, run in chunks 0 to threads - 1
+ */
+	public WorkerPool(String name, int threads, Job job) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Need at least one thread");
+		}
+		this.job = job;
+		workers = new Thread[threads - 1];
+		for (int i=0; i < workers.length; i++) {
+			int chunk = i + 1;
+			workers[i] = new Thread(() -> runWorker(chunk), name + " " + chunk);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+
+/**	Runs chunk 0 on the calling thread and the others on the workers, and waits for all of them */
+	public void run() {
+		if (closed) {
+			throw new IllegalStateException("The pool has been closed");
+		}
+		if (workers.length == 0) {
+			job.runChunk(0);
+			return;
+		}
+		pendingChunks.set(workers.length);
+		caller = Thread.currentThread();
+		/* The volatile write publishes what the calling thread set up for the run to the workers */
+		runGeneration++;
+		for (Thread worker : workers) {
+			LockSupport.unpark(worker);
+		}
+		job.runChunk(0);
+		for (int spins = 0; pendingChunks.get() != 0; spins++) {
+			if (spins < SPINS_BEFORE_PARK) {
+				Thread.onSpinWait();
+			}
+			else {
+				LockSupport.park(this);
+			}
+		}
+	}
+
+/**	The loop of a worker thread, it runs its chunk each time the run generation moves on, until the pool is closed */
+	private void runWorker(int chunk) {
+		long seenGeneration = 0;
+		while (true) {
+			for (int spins = 0; (runGeneration == seenGeneration) && !closed; spins++) {
+				if (spins < SPINS_BEFORE_PARK) {
+					Thread.onSpinWait();
+				}
+				else {
+					LockSupport.park(this);
+				}
+			}
+			if (closed) {
+				return;
+			}
+			seenGeneration++;
+			job.runChunk(chunk);
+			if (pendingChunks.decrementAndGet() == 0) {
+				LockSupport.unpark(caller);
+			}
+		}
+	}
+
+/**	@return the number of threads running a job, including the calling thread, which is the number of chunks */
+	public int getThreadCount() {
+		return workers.length + 1;
+	}
+
+/**	Stops the workers and waits for them, the pool can not be run after this */
+	public void close() {
+		closed = true;
+		for (Thread worker : workers) {
+			LockSupport.unpark(worker);
+		}
+		for (Thread worker : workers) {
+			try {
+				worker.join();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+
+/**
+ * 	INSTANCE VARIABLES
+ */
+
+/**	The job run in chunks */
+	private final Job job;
+
+/**	The threads running the chunks after the first */
+	private final Thread[] workers;
+
+/**	Moved on by the calling thread to start a run on the workers */
+	private volatile long runGeneration;
+
+/**	The number of worker chunks of the run not finished yet, and the thread waiting for them */
+	private final AtomicInteger pendingChunks = new AtomicInteger();
+	private volatile Thread caller;
+
+/**	Set by close to stop the workers */
+	private volatile boolean closed;
+
+}
@@ -0,0 +1,100 @@
+/**
+ * File: SimulationBenchmark.java
+
+ * The JMH benchmarks of the hot paths of the game: a tick of the simulation and a whole turn for each
+ * ball speed, and a lookup in the brick grid for each board size. The workloads are in BreakoutBenchmark,
+ * JMH only runs benchmarks in a named package, which can not name the classes of the game in the default
+ * package, so they are looked up by name when a trial is set up.
+ * Run with -prof gc (the default of gradle jmh) the bytes allocated per operation are reported as
+ * gc.alloc.rate.norm, which should be 0 for all of them.
+
+ * Run with:  gradle jmh
+ */
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SimulationBenchmark {
+
+/**	A game stepped a tick at a time, at a multiple of the normal ball speed */
+	@State(Scope.Thread)
+	public static class Step {
+
+		@Param({"1", "4", "16"})
+		public int speed;
+
+		@Setup(Level.Trial)
+		public void setUp() throws ReflectiveOperationException {
+			workload = workload("stepWorkload", speed);
+		}
+
+		IntSupplier workload;
+	}
+
+/**	A game played a turn at a time, at a multiple of the normal ball speed */
+	@State(Scope.Thread)
+	public static class Turn {
+
+		@Param({"1", "4", "16"})
+		public int speed;
+
+		@Setup(Level.Trial)
+		public void setUp() throws ReflectiveOperationException {
+			workload = workload("turnWorkload", speed);
+		}
+
+		IntSupplier workload;
+	}
+
+/**	A square board of about the given number of bricks, looked up at random points */
+	@State(Scope.Thread)
+	public static class BrickAt {
+
+		@Param({"100", "10000", "1000000"})
+		public int bricks;
+
+		@Setup(Level.Trial)
+		public void setUp() throws ReflectiveOperationException {
+			workload = workload("brickAtWorkload", bricks);
+		}
+
+		IntSupplier workload;
+	}
+
+/**	One tick of the simulation: moving the paddle and ball and sweeping for collisions, a new turn when one ends */
+	@Benchmark
+	public int step(Step state) {
+		return state.workload.getAsInt();
+	}
+
+/**	A whole turn, from the serve to the ball reaching the lower wall or the bricks running out */
+	@Benchmark
+	public int turn(Turn state) {
+		return state.workload.getAsInt();
+	}
+
+/**	A lookup of the brick under a point in the brick grid */
+	@Benchmark
+	public int brickAt(BrickAt state) {
+		return state.workload.getAsInt();
+	}
+
+/**	@return the workload made by the given factory method of BreakoutBenchmark */
+	private static IntSupplier workload(String factory, int param) throws ReflectiveOperationException {
+		return (IntSupplier) Class.forName("BreakoutBenchmark").getMethod(factory, int.class).invoke(null, param);
+	}
+
+}
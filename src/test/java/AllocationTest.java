@@ -0,0 +1,42 @@
+/**
+ * File: AllocationTest.java
+
+ * Runs the whole per-tick path of the game the way Breakout does (BreakoutBenchmark.SteadyStateGame: the
+ * game loop, mouse input, simulation, sounds, metrics and drawing the board offscreen), and fails if the
+ * game thread allocates a single byte over a long window once it is warmed up.
+
+ *	NOTES:
+ *	The warmup is long enough for the JIT to have compiled the whole tick path at its top tier, so the
+ *	window is measured once, a byte allocated in it is a byte allocated by the game.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class AllocationTest {
+
+/**	The number of ticks run before the window, and in it */
+	private static final int WARMUP_TICKS = 1000000;
+	private static final int MEASURED_TICKS = 2000000;
+
+	@Test
+	void tickPathAllocatesNothing() {
+		BreakoutBenchmark.SteadyStateGame game = new BreakoutBenchmark.SteadyStateGame();
+		/* The loop runs as fast as it can, a frame every 8 ticks */
+		GameLoop loop = new GameLoop(1e7, 1e7 / 8, 8);
+		try {
+			game.ticksLeft = WARMUP_TICKS;
+			loop.run(game);
+			long allocatedBefore = BreakoutBenchmark.allocatedBytes();
+			game.ticksLeft = MEASURED_TICKS;
+			loop.run(game);
+			long allocated = BreakoutBenchmark.allocatedBytes() - allocatedBefore;
+			assertEquals(0, allocated, "bytes allocated by the game thread in " + MEASURED_TICKS + " ticks");
+		}
+		finally {
+			game.stop();
+		}
+	}
+
+}
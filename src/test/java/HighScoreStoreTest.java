@@ -0,0 +1,52 @@
+/**
+ * File: HighScoreStoreTest.java
+
+ * Records enough games by different players for the table of players in the index to be rebuilt with more
+ * slots, and checks that the high score table and the histories hold every game, before and after the store
+ * is opened again.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HighScoreStoreTest {
+
+/**	More players than fit in the table of players the index starts with, at its load factor */
+	private static final int PLAYERS = 3000;
+
+	@Test
+	void keepsEveryGameAcrossARebuild(@TempDir Path directory) throws IOException, InterruptedException {
+		HighScoreStore store = HighScoreStore.open(directory);
+		for (int i=0; i < PLAYERS; i++) {
+			store.submit("player" + i, i, 0, 1000, i);
+		}
+		store.flush();
+		checkGames(store);
+		store.close();
+		store = HighScoreStore.open(directory);
+		checkGames(store);
+		store.close();
+	}
+
+/**	Checks that the best scores are those of the last TOP_SIZE games, best first, and each player has their game */
+	private static void checkGames(HighScoreStore store) throws IOException {
+		assertEquals(PLAYERS, store.getGameCount());
+		List<HighScoreStore.Game> top = store.getTopScores(HighScoreStore.TOP_SIZE);
+		assertEquals(HighScoreStore.TOP_SIZE, top.size());
+		for (int i=0; i < top.size(); i++) {
+			assertEquals(PLAYERS - 1 - i, top.get(i).score, "score at position " + i);
+		}
+		for (int i=0; i < PLAYERS; i++) {
+			List<HighScoreStore.Game> history = store.getPlayerHistory("player" + i, 10);
+			assertEquals(1, history.size(), "games of player" + i);
+			assertEquals(i, history.get(0).number);
+		}
+	}
+
+}
@@ -0,0 +1,75 @@
+/**
+ * File: LevelPackTest.java
+
+ * Writes a small pack, damages one of its levels, and checks that opening that level fails naming it,
+ * while the other levels still open.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LevelPackTest {
+
+	private static final int[] PALETTE = { 0xFF0000, 0x00FF00 };
+	private static final int ROWS = 2, COLUMNS = 3, LEVELS = 3;
+
+/**	The damaged level, and where its index entry is in the file */
+	private static final int DAMAGED = 1;
+	private static final int DAMAGED_ENTRY = 16 + PALETTE.length * 4 + DAMAGED * 20;
+
+	@Test
+	void rejectsAColorOutsideThePalette(@TempDir Path directory) throws IOException {
+		ByteBuffer pack = writePack(directory);
+		int cells = (int) pack.getLong(DAMAGED_ENTRY);
+		pack.put(cells + 1, (byte) PALETTE.length);
+		checkDamaged(directory, pack, "color " + PALETTE.length);
+	}
+
+	@Test
+	void rejectsAWrongBrickCount(@TempDir Path directory) throws IOException {
+		ByteBuffer pack = writePack(directory);
+		pack.putInt(DAMAGED_ENTRY + 16, ROWS * COLUMNS + 1);
+		checkDamaged(directory, pack, "bricks");
+	}
+
+/**	Writes a pack where every cell is a brick of one hit point, and returns the bytes of the file */
+	private static ByteBuffer writePack(Path directory) throws IOException {
+		byte[][] hitPoints = new byte[LEVELS][ROWS * COLUMNS];
+		byte[][] colors = new byte[LEVELS][ROWS * COLUMNS];
+		for (int level=0; level < LEVELS; level++) {
+			for (int i=0; i < ROWS * COLUMNS; i++) {
+				hitPoints[level][i] = 1;
+				colors[level][i] = (byte) (i % PALETTE.length);
+			}
+		}
+		Path path = directory.resolve("levels.pack");
+		LevelPack.write(path, PALETTE, ROWS, COLUMNS, hitPoints, colors);
+		LevelPack pack = LevelPack.open(path);
+		for (int level=0; level < LEVELS; level++) {
+			assertEquals(ROWS * COLUMNS, pack.getLevel(level).getBrickCount());
+		}
+		return ByteBuffer.wrap(Files.readAllBytes(path));
+	}
+
+/**	Writes the damaged pack, and checks that only the damaged level fails to open, with an error naming it */
+	private static void checkDamaged(Path directory, ByteBuffer bytes, String problem) throws IOException {
+		Path path = directory.resolve("damaged.pack");
+		Files.write(path, bytes.array());
+		LevelPack pack = LevelPack.open(path);
+		IOException e = assertThrows(IOException.class, () -> pack.getLevel(DAMAGED));
+		assertTrue(e.getMessage().startsWith("Level " + DAMAGED + " "), e.getMessage());
+		assertTrue(e.getMessage().contains(problem), e.getMessage());
+		pack.getLevel(DAMAGED - 1);
+		pack.getLevel(DAMAGED + 1);
+	}
+
+}